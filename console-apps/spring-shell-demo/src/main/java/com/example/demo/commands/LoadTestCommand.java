@@ -0,0 +1,56 @@
+package com.example.demo.commands;
+
+import com.example.demo.loadtest.LoadGenerator;
+import com.example.demo.loadtest.LoadTestResult;
+import com.example.demo.loadtest.OperationMix;
+import org.springframework.shell.command.annotation.Command;
+import org.springframework.shell.command.annotation.Option;
+
+import java.io.IOException;
+import java.time.Duration;
+
+@Command(command = "loadtest", group = "Load Test Commands")
+public class LoadTestCommand {
+
+    @Command(command = "run", description = "Send list/download/upload/delete requests to file server at fixed rate")
+    public String run(@Option(longNames = {"url"}, defaultValue = "http://localhost:8888",
+                              description = "File server base URL") String url,
+                      @Option(longNames = {"rate"}, defaultValue = "100",
+                              description = "Requests started per second") double rate,
+                      @Option(longNames = {"duration"}, defaultValue = "30",
+                              description = "Seconds requests are started for") int duration,
+                      @Option(longNames = {"mix"}, defaultValue = "list=50,download=40,upload=5,delete=5",
+                              description = "Operation weights") String mix,
+                      @Option(longNames = {"files"}, defaultValue = "100",
+                              description = "Files uploaded before the run and downloaded by it") int files,
+                      @Option(longNames = {"file-size"}, defaultValue = "4096",
+                              description = "Size of downloaded and uploaded files in bytes") int fileSize,
+                      @Option(longNames = {"max-in-flight"}, defaultValue = "10000",
+                              description = "Requests not started while this many are unanswered") int maxInFlight,
+                      @Option(longNames = {"seed"}, defaultValue = "1",
+                              description = "Seed of the request sequence") long seed,
+                      @Option(longNames = {"distribution"}, defaultValue = "true",
+                              description = "Print HdrHistogram percentile distribution") boolean distribution,
+                      @Option(longNames = {"keep"}, defaultValue = "false",
+                              description = "Keep uploaded files on the server") boolean keep)
+            throws IOException, InterruptedException {
+        LoadGenerator generator = new LoadGenerator(url, OperationMix.parse(mix), files, fileSize, maxInFlight);
+        generator.prepare();
+        try {
+            LoadTestResult result = generator.run(rate, Duration.ofSeconds(duration), seed);
+            return result.format(distribution);
+        } finally {
+            if (!keep) {
+                generator.cleanup();
+            }
+        }
+    }
+
+    @Command(command = "cleanup", description = "Delete files left on file server by loadtest run --keep")
+    public String cleanup(@Option(longNames = {"url"}, defaultValue = "http://localhost:8888",
+                                  description = "File server base URL") String url)
+            throws IOException, InterruptedException {
+        new LoadGenerator(url, OperationMix.parse("list=1"), 0, 0, 1).cleanup();
+        return "Deleted " + LoadGenerator.DIRECTORY;
+    }
+}
@@ -0,0 +1,211 @@
+package com.example.demo.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramIterationValue;
+import org.HdrHistogram.Recorder;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open model load against {@code /services/files} of a file server: requests start at fixed rate whether or not
+ * earlier requests have been answered, so a slow server builds up queue instead of slowing the load down.
+ * Latency is measured from the time a request was scheduled to start, not from the time it was sent. Requests
+ * skipped because too many are in flight count as errors with the latency they would have had at least: from their
+ * scheduled start to the end of the run.
+ */
+public class LoadGenerator {
+
+    public static final String DIRECTORY = "loadtest";
+    private static final String URI_PREFIX = "/services/files";
+    private static final Duration DRAIN_TIMEOUT = Duration.ofSeconds(30);
+
+    private final HttpClient client;
+    private final String baseUrl;
+    private final OperationMix mix;
+    private final int files;
+    private final byte[] content;
+    private final int maxInFlight;
+
+    public LoadGenerator(String baseUrl, OperationMix mix, int files, int fileSize, int maxInFlight) {
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        this.mix = mix;
+        this.files = files;
+        this.content = new byte[fileSize];
+        new SplittableRandom(fileSize).nextBytes(content);
+        this.maxInFlight = maxInFlight;
+        // responses are handled asynchronously, one sending thread keeps any number of requests in flight
+        client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+    }
+
+    /**
+     * Creates {@link #DIRECTORY} with files read by download requests.
+     */
+    public void prepare() throws IOException, InterruptedException {
+        send(HttpRequest.newBuilder(uri("createdir", DIRECTORY)).POST(HttpRequest.BodyPublishers.noBody()).build());
+        for (int i = 0; i < files; i++) {
+            send(upload(DIRECTORY + "/file-" + i));
+        }
+    }
+
+    /**
+     * Deletes {@link #DIRECTORY} with everything uploaded into it.
+     */
+    public void cleanup() throws IOException, InterruptedException {
+        send(HttpRequest.newBuilder(uri("delete", DIRECTORY)).DELETE().build());
+    }
+
+    /**
+     * @param rate requests started per second.
+     * @param duration time requests are started for, the run takes longer until answers of the last ones arrive.
+     * @param seed seed of operation and file choice, the same seed sends the same sequence of requests.
+     */
+    public LoadTestResult run(double rate, Duration duration, long seed) throws InterruptedException {
+        if (rate <= 0) {
+            throw new IllegalArgumentException("Rate must be positive");
+        }
+        Map<Operation, Recorder> recorders = new EnumMap<>(Operation.class);
+        Map<Operation, LongAdder> errors = new EnumMap<>(Operation.class);
+        // time left to the end of sending per skipped request, only the sending thread records
+        Map<Operation, Histogram> skipped = new EnumMap<>(Operation.class);
+        for (Operation operation : Operation.values()) {
+            recorders.put(operation, new Recorder(3));
+            errors.put(operation, new LongAdder());
+            skipped.put(operation, new Histogram(3));
+        }
+        Map<String, LongAdder> errorCauses = new ConcurrentHashMap<>();
+        Queue<String> uploaded = new ConcurrentLinkedQueue<>();
+        AtomicLong uploadCounter = new AtomicLong();
+        long rewritten = 0;
+        Semaphore permits = new Semaphore(maxInFlight);
+        SplittableRandom random = new SplittableRandom(seed);
+
+        double intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        long start = System.nanoTime();
+        long end = start + duration.toNanos();
+        long sent = 0;
+        for (long i = 0; ; i++) {
+            long intended = start + (long) (i * intervalNanos);
+            if (intended >= end) {
+                break;
+            }
+            long wait = intended - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            Operation operation = mix.choose(random.nextDouble());
+            if (!permits.tryAcquire()) {
+                // server is too far behind, keep memory bounded instead of queueing without limit, the request
+                // is still recorded once the run ends so overload does not hide from the percentiles
+                skipped.get(operation).recordValue(TimeUnit.NANOSECONDS.toMicros(end - intended));
+                continue;
+            }
+            String path;
+            if (operation == Operation.DELETE) {
+                path = uploaded.poll();
+                if (path == null) {
+                    // nothing uploaded to delete yet, reported since it shifts the mix towards uploads
+                    operation = Operation.UPLOAD;
+                    rewritten++;
+                }
+            } else {
+                path = null;
+            }
+            HttpRequest request = switch (operation) {
+                case LIST -> HttpRequest.newBuilder(uri("list", DIRECTORY)).GET().build();
+                case DOWNLOAD -> HttpRequest.newBuilder(uri("download", DIRECTORY + "/file-" + random.nextInt(files)))
+                        .GET().build();
+                case UPLOAD -> upload(path = DIRECTORY + "/upload-" + uploadCounter.incrementAndGet());
+                case DELETE -> HttpRequest.newBuilder(uri("delete", path)).DELETE().build();
+            };
+            Operation requestOperation = operation;
+            String requestPath = path;
+            sent++;
+            client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, error) -> {
+                long latency = System.nanoTime() - intended;
+                recorders.get(requestOperation).recordValue(TimeUnit.NANOSECONDS.toMicros(latency));
+                if (error != null || response.statusCode() >= 400) {
+                    errors.get(requestOperation).increment();
+                    String cause = error != null ? rootCause(error).getClass().getSimpleName() : "HTTP " + response.statusCode();
+                    errorCauses.computeIfAbsent(requestOperation.getName() + " " + cause, key -> new LongAdder())
+                            .increment();
+                } else if (requestOperation == Operation.UPLOAD) {
+                    uploaded.add(requestPath);
+                }
+                permits.release();
+            });
+        }
+        boolean drained = permits.tryAcquire(maxInFlight, DRAIN_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+        long finished = System.nanoTime();
+        long elapsed = finished - start;
+        long drainMicros = TimeUnit.NANOSECONDS.toMicros(finished - end);
+
+        Map<Operation, Histogram> histograms = new EnumMap<>(Operation.class);
+        Map<Operation, Long> errorCounts = new EnumMap<>(Operation.class);
+        long skippedCount = 0;
+        for (Operation operation : Operation.values()) {
+            Histogram histogram = recorders.get(operation).getIntervalHistogram();
+            Histogram skippedLatencies = skipped.get(operation);
+            for (HistogramIterationValue value : skippedLatencies.recordedValues()) {
+                // never answered, so at least as slow as waiting until the end of the run
+                histogram.recordValueWithCount(value.getValueIteratedTo() + drainMicros, value.getCountAtValueIteratedTo());
+            }
+            long skippedOperations = skippedLatencies.getTotalCount();
+            if (skippedOperations > 0) {
+                errorCauses.computeIfAbsent(operation.getName() + " skipped over in-flight limit", key -> new LongAdder())
+                        .add(skippedOperations);
+            }
+            skippedCount += skippedOperations;
+            histograms.put(operation, histogram);
+            errorCounts.put(operation, errors.get(operation).sum() + skippedOperations);
+        }
+        Map<String, Long> causes = new TreeMap<>();
+        errorCauses.forEach((cause, count) -> causes.put(cause, count.sum()));
+        return new LoadTestResult(rate, sent, skippedCount, rewritten,
+                drained ? 0 : maxInFlight - permits.availablePermits(), Duration.ofNanos(elapsed), histograms,
+                errorCounts, causes);
+    }
+
+    private HttpRequest upload(String path) {
+        // raw upload, streamed to the file without multipart parsing
+        return HttpRequest.newBuilder(uri("upload", path)).PUT(HttpRequest.BodyPublishers.ofByteArray(content)).build();
+    }
+
+    private static Throwable rootCause(Throwable error) {
+        // async failures arrive wrapped in CompletionException
+        while (error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error;
+    }
+
+    private void send(HttpRequest request) throws IOException, InterruptedException {
+        HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+        if (response.statusCode() >= 400) {
+            throw new IOException(request.method() + " " + request.uri() + " failed with HTTP " + response.statusCode());
+        }
+    }
+
+    private URI uri(String operation, String path) {
+        return URI.create(baseUrl + URI_PREFIX + "/" + operation + "/" + path);
+    }
+}
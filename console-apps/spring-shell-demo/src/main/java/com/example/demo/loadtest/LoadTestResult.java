@@ -0,0 +1,122 @@
+package com.example.demo.loadtest;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Latency histograms in microseconds and error counts of one {@link LoadGenerator} run. Histograms and error counts
+ * include requests skipped over the in-flight limit.
+ */
+public class LoadTestResult {
+
+    private static final double MICROS_PER_MILLI = 1000.0;
+
+    private final double rate;
+    private final long sent;
+    private final long skipped;
+    private final long rewritten;
+    private final long unfinished;
+    private final Duration elapsed;
+    private final Map<Operation, Histogram> histograms;
+    private final Map<Operation, Long> errors;
+    private final Map<String, Long> errorCauses;
+
+    public LoadTestResult(double rate, long sent, long skipped, long rewritten, long unfinished, Duration elapsed,
+                          Map<Operation, Histogram> histograms, Map<Operation, Long> errors, Map<String, Long> errorCauses) {
+        this.rate = rate;
+        this.sent = sent;
+        this.skipped = skipped;
+        this.rewritten = rewritten;
+        this.unfinished = unfinished;
+        this.elapsed = elapsed;
+        this.histograms = histograms;
+        this.errors = errors;
+        this.errorCauses = errorCauses;
+    }
+
+    public long getSent() {
+        return sent;
+    }
+
+    /**
+     * @return requests not sent because too many were in flight.
+     */
+    public long getSkipped() {
+        return skipped;
+    }
+
+    /**
+     * @return deletes sent as uploads because no uploaded file was left to delete.
+     */
+    public long getRewritten() {
+        return rewritten;
+    }
+
+    public long getUnfinished() {
+        return unfinished;
+    }
+
+    public Histogram getHistogram(Operation operation) {
+        return histograms.get(operation);
+    }
+
+    public long getErrors(Operation operation) {
+        return errors.get(operation);
+    }
+
+    /**
+     * @return histogram of all operations together.
+     */
+    public Histogram getTotalHistogram() {
+        Histogram total = new Histogram(3);
+        histograms.values().forEach(total::add);
+        return total;
+    }
+
+    /**
+     * @param distribution whether HdrHistogram percentile distribution of all operations is appended.
+     * @return summary with throughput and p50/p99/p999 latency in milliseconds of every operation.
+     */
+    public String format(boolean distribution) {
+        StringBuilder report = new StringBuilder();
+        Histogram total = getTotalHistogram();
+        double seconds = elapsed.toNanos() / 1e9;
+        long completed = total.getTotalCount() - skipped;
+        report.append(String.format("target rate %.1f req/s, sent %d, completed %d in %.1f s, throughput %.1f req/s%n",
+                rate, sent, completed, seconds, completed / seconds));
+        if (skipped > 0 || unfinished > 0) {
+            report.append(String.format("skipped %d over in-flight limit, recorded as errors lasting until the end, "
+                    + "%d unanswered at the end%n", skipped, unfinished));
+        }
+        if (rewritten > 0) {
+            report.append(String.format("%d deletes sent as uploads, nothing uploaded was left to delete%n", rewritten));
+        }
+        report.append(String.format("%-10s %10s %8s %10s %10s %10s %10s%n",
+                "operation", "requests", "errors", "p50 ms", "p99 ms", "p999 ms", "max ms"));
+        histograms.forEach((operation, histogram) -> appendRow(report, operation.getName(), histogram, errors.get(operation)));
+        appendRow(report, "total", total, errors.values().stream().mapToLong(Long::longValue).sum());
+        errorCauses.forEach((cause, count) -> report.append(String.format("error %s: %d%n", cause, count)));
+        if (distribution && total.getTotalCount() > 0) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try (PrintStream printStream = new PrintStream(out, true, StandardCharsets.UTF_8)) {
+                // values are recorded in microseconds, printed in milliseconds
+                total.outputPercentileDistribution(printStream, 5, MICROS_PER_MILLI);
+            }
+            report.append(System.lineSeparator()).append(out.toString(StandardCharsets.UTF_8));
+        }
+        return report.toString();
+    }
+
+    private static void appendRow(StringBuilder report, String name, Histogram histogram, long errors) {
+        report.append(String.format("%-10s %10d %8d %10.3f %10.3f %10.3f %10.3f%n", name, histogram.getTotalCount(), errors,
+                histogram.getValueAtPercentile(50) / MICROS_PER_MILLI,
+                histogram.getValueAtPercentile(99) / MICROS_PER_MILLI,
+                histogram.getValueAtPercentile(99.9) / MICROS_PER_MILLI,
+                histogram.getMaxValue() / MICROS_PER_MILLI));
+    }
+}
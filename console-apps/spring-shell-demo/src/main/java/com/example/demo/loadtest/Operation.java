@@ -0,0 +1,25 @@
+package com.example.demo.loadtest;
+
+import java.util.Locale;
+
+/**
+ * File server requests sent by {@link LoadGenerator}.
+ */
+public enum Operation {
+    LIST,
+    DOWNLOAD,
+    UPLOAD,
+    DELETE;
+
+    public static Operation fromName(String name) {
+        try {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown operation " + name + ", expected list, download, upload or delete");
+        }
+    }
+
+    public String getName() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+}
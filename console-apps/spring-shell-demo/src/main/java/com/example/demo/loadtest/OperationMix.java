@@ -0,0 +1,74 @@
+package com.example.demo.loadtest;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Weighted choice of operations, parsed from {@code list=50,download=40,upload=5,delete=5}.
+ */
+public class OperationMix {
+
+    private final Map<Operation, Integer> weights;
+    private final int totalWeight;
+
+    public OperationMix(Map<Operation, Integer> weights) {
+        this.weights = new EnumMap<>(weights);
+        this.totalWeight = weights.values().stream().mapToInt(Integer::intValue).sum();
+        if (totalWeight <= 0) {
+            throw new IllegalArgumentException("Operation mix has no positive weight");
+        }
+    }
+
+    public static OperationMix parse(String mix) {
+        Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+        for (String part : mix.split(",")) {
+            String[] nameAndWeight = part.split("=");
+            if (nameAndWeight.length != 2) {
+                throw new IllegalArgumentException("Expected operation=weight, got " + part);
+            }
+            int weight;
+            try {
+                weight = Integer.parseInt(nameAndWeight[1].trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Weight is not a number " + part);
+            }
+            if (weight < 0) {
+                throw new IllegalArgumentException("Weight is negative " + part);
+            }
+            weights.merge(Operation.fromName(nameAndWeight[0]), weight, Integer::sum);
+        }
+        return new OperationMix(weights);
+    }
+
+    /**
+     * @param random uniformly distributed value in [0, 1).
+     * @return operation chosen with probability proportional to its weight.
+     */
+    public Operation choose(double random) {
+        int point = (int) (random * totalWeight);
+        for (Map.Entry<Operation, Integer> entry : weights.entrySet()) {
+            point -= entry.getValue();
+            if (point < 0) {
+                return entry.getKey();
+            }
+        }
+        // only reached by rounding when random is close to 1
+        return weights.keySet().stream().filter(operation -> weights.get(operation) > 0).reduce((a, b) -> b).orElseThrow();
+    }
+
+    public int getWeight(Operation operation) {
+        return weights.getOrDefault(operation, 0);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        weights.forEach((operation, weight) -> {
+            if (builder.length() > 0) {
+                builder.append(',');
+            }
+            builder.append(operation.getName()).append('=').append(weight);
+        });
+        return builder.toString();
+    }
+}
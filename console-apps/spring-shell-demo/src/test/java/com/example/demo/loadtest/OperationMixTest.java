@@ -0,0 +1,36 @@
+package com.example.demo.loadtest;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class OperationMixTest {
+
+	@Test
+	void chooseFollowsWeights() {
+		OperationMix mix = OperationMix.parse("list=50, download=40,upload=10,delete=0");
+
+		Map<Operation, Integer> counts = new EnumMap<>(Operation.class);
+		for (int i = 0; i < 1000; i++) {
+			counts.merge(mix.choose(i / 1000.0), 1, Integer::sum);
+		}
+
+		assertEquals(500, counts.get(Operation.LIST));
+		assertEquals(400, counts.get(Operation.DOWNLOAD));
+		assertEquals(100, counts.get(Operation.UPLOAD));
+		assertEquals(null, counts.get(Operation.DELETE));
+		assertEquals("list=50,download=40,upload=10,delete=0", mix.toString());
+	}
+
+	@Test
+	void parseRejectsInvalidMix() {
+		assertThrows(IllegalArgumentException.class, () -> OperationMix.parse("list"));
+		assertThrows(IllegalArgumentException.class, () -> OperationMix.parse("rename=1"));
+		assertThrows(IllegalArgumentException.class, () -> OperationMix.parse("list=0"));
+	}
+
+}
@@ -0,0 +1,61 @@
+package swapan.springboot.downloadserver.benchmarks;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import swapan.springboot.downloadserver.dto.DirectoryInfo;
+import swapan.springboot.downloadserver.dto.FileInfo;
+import swapan.springboot.downloadserver.dto.FileList;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON serialization of listing response, by object mapper configured the way spring configures it for controllers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1g")
+public class FileListJsonBenchmark {
+
+    @Param({"10", "10000"})
+    private int entries;
+
+    private ObjectMapper objectMapper;
+    private FileList fileList;
+
+    @Setup
+    public void setUp() {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        fileList = new FileList("path/to/dir");
+        Instant lastModified = Instant.parse("2024-03-01T12:00:00Z");
+        for (int i = 0; i < entries; i++) {
+            if (i % 100 == 0) {
+                fileList.add(new DirectoryInfo(String.format("dir-%07d", i), lastModified, "rwxr-xr-x"));
+            } else {
+                fileList.add(new FileInfo(String.format("file-%07d.txt", i), 1024L * i, lastModified, "rw-r--r--"));
+            }
+        }
+    }
+
+    @Benchmark
+    public byte[] serialize() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(fileList);
+    }
+
+}
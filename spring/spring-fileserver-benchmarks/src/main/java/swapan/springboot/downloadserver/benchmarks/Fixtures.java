@@ -0,0 +1,50 @@
+package swapan.springboot.downloadserver.benchmarks;
+
+import org.springframework.util.FileSystemUtils;
+
+import swapan.springboot.downloadserver.config.FileServerConfigImpl;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Base directories of benchmarks. They are created on tmpfs {@code /dev/shm} when it exists, so results measure
+ * the server code and the kernel, not the disk. {@code -Dfixture.dir=...} picks another location.
+ */
+final class Fixtures {
+
+    private static final Path SHM = Paths.get("/dev/shm");
+
+    private Fixtures() {
+    }
+
+    /**
+     * @return configuration with a new empty base directory, caches and background jobs of the server are off.
+     */
+    static FileServerConfigImpl createConfig() throws IOException {
+        FileServerConfigImpl config = new FileServerConfigImpl();
+        config.setHome(Files.createTempDirectory(root(), "fileserver-bench").toString());
+        // repeated calls would be answered from memory instead of the file system
+        config.setListCacheSize(0);
+        config.setHotCacheSize(0);
+        return config;
+    }
+
+    static void delete(FileServerConfigImpl config) throws IOException {
+        FileSystemUtils.deleteRecursively(Paths.get(config.getHome()));
+    }
+
+    private static Path root() {
+        String dir = System.getProperty("fixture.dir");
+        if (dir != null) {
+            return Paths.get(dir);
+        }
+        if (Files.isDirectory(SHM) && Files.isWritable(SHM)) {
+            return SHM;
+        }
+        return Paths.get(System.getProperty("java.io.tmpdir"));
+    }
+
+}
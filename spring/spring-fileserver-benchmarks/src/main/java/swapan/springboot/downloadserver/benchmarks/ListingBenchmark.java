@@ -0,0 +1,76 @@
+package swapan.springboot.downloadserver.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import swapan.springboot.downloadserver.config.FileServerConfigImpl;
+import swapan.springboot.downloadserver.dto.FileList;
+import swapan.springboot.downloadserver.services.FileServiceImpl;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link FileServiceImpl#getFilesInfo} of one directory, full listing and first page.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class ListingBenchmark {
+
+    private static final Path DIRECTORY = Paths.get("dir");
+
+    @Param({"10", "10000", "1000000"})
+    private int entries;
+
+    private FileServerConfigImpl config;
+    private FileServiceImpl fileService;
+
+    @Setup
+    public void setUp() throws IOException {
+        config = Fixtures.createConfig();
+        fileService = new FileServiceImpl(config);
+        Path directory = Files.createDirectory(fileService.getBasePath().resolve(DIRECTORY));
+        for (int i = 0; i < entries; i++) {
+            // every 100th entry is a directory, the rest are empty files
+            if (i % 100 == 0) {
+                Files.createDirectory(directory.resolve(String.format("dir-%07d", i)));
+            } else {
+                Files.createFile(directory.resolve(String.format("file-%07d.txt", i)));
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        fileService.shutdown();
+        Fixtures.delete(config);
+    }
+
+    @Benchmark
+    public FileList list() throws IOException {
+        return fileService.getFilesInfo(DIRECTORY);
+    }
+
+    @Benchmark
+    public FileList listFirstPage() throws IOException {
+        return fileService.getFilesInfo(DIRECTORY, null, 1000);
+    }
+
+}
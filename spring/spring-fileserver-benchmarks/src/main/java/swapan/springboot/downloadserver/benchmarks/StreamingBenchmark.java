@@ -0,0 +1,80 @@
+package swapan.springboot.downloadserver.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.Resource;
+
+import swapan.springboot.downloadserver.config.FileServerConfigImpl;
+import swapan.springboot.downloadserver.services.FileServiceImpl;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Upload by {@link FileServiceImpl#saveFile} and download through {@link FileServiceImpl#loadFileAsResource},
+ * content of small and large files is streamed through the service as it is by the controller.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1g")
+public class StreamingBenchmark {
+
+    private static final Path UPLOAD = Paths.get("upload.bin");
+    private static final Path DOWNLOAD = Paths.get("download.bin");
+
+    @Param({"4096", "67108864"})
+    private int size;
+
+    private FileServerConfigImpl config;
+    private FileServiceImpl fileService;
+    private byte[] content;
+
+    @Setup
+    public void setUp() throws IOException {
+        config = Fixtures.createConfig();
+        fileService = new FileServiceImpl(config);
+        content = new byte[size];
+        new Random(size).nextBytes(content);
+        Files.write(fileService.getBasePath().resolve(DOWNLOAD), content);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        fileService.shutdown();
+        Fixtures.delete(config);
+    }
+
+    @Benchmark
+    public void saveFile() throws IOException {
+        fileService.saveFile(UPLOAD, new ByteArrayInputStream(content), size);
+    }
+
+    @Benchmark
+    public long loadFileAsResource() throws IOException {
+        Resource resource = fileService.loadFileAsResource(DOWNLOAD);
+        try (InputStream inputStream = resource.getInputStream()) {
+            return inputStream.transferTo(OutputStream.nullOutputStream());
+        }
+    }
+
+}
@@ -23,6 +23,10 @@ curl -X GET "http://localhost:8888/services/files/list/path/to"
 echo "Uploading file..."
 curl -F "file=@/tmp/file.txt" "http://localhost:8888/services/files/upload/path/to/file.txt"
 
+# Upload the test file as raw request body
+echo "Uploading file as raw body..."
+curl -T /tmp/file.txt "http://localhost:8888/services/files/upload/path/to/file-raw.txt"
+
 # List contents again to verify upload
 echo "Listing directory contents after upload..."
 curl -X GET "http://localhost:8888/services/files/list/path/to"
@@ -1,6 +1,61 @@
 package swapan.springboot.downloadserver.config;
 
+import java.time.Duration;
+import java.util.Map;
+
 public interface FileServerConfig {
     String getHome();
     void setHome(String home);
+    int getBufferSize();
+    void setBufferSize(int bufferSize);
+    Duration getUploadSessionTimeout();
+    void setUploadSessionTimeout(Duration uploadSessionTimeout);
+    boolean isListPermissions();
+    void setListPermissions(boolean listPermissions);
+    int getListCacheSize();
+    void setListCacheSize(int listCacheSize);
+    String getCacheControl();
+    void setCacheControl(String cacheControl);
+    boolean isCompressionEnabled();
+    void setCompressionEnabled(boolean compressionEnabled);
+    long getCompressionMinSize();
+    void setCompressionMinSize(long compressionMinSize);
+    Duration getSidecarInterval();
+    void setSidecarInterval(Duration sidecarInterval);
+    int getSidecarMinHits();
+    void setSidecarMinHits(int sidecarMinHits);
+    int getArchiveParallelism();
+    void setArchiveParallelism(int archiveParallelism);
+    int getDeleteParallelism();
+    void setDeleteParallelism(int deleteParallelism);
+    int getSearchParallelism();
+    void setSearchParallelism(int searchParallelism);
+    long getHotCacheSize();
+    void setHotCacheSize(long hotCacheSize);
+    long getHotCacheMaxEntrySize();
+    void setHotCacheMaxEntrySize(long hotCacheMaxEntrySize);
+    int getHotCacheMinHits();
+    void setHotCacheMinHits(int hotCacheMinHits);
+    boolean isDedup();
+    void setDedup(boolean dedup);
+    int getBatchParallelism();
+    void setBatchParallelism(int batchParallelism);
+    boolean isCopyReflink();
+    void setCopyReflink(boolean copyReflink);
+    int getMetricsPrefixDepth();
+    void setMetricsPrefixDepth(int metricsPrefixDepth);
+    int getMetricsPrefixMaxValues();
+    void setMetricsPrefixMaxValues(int metricsPrefixMaxValues);
+    long getBandwidthLimit();
+    void setBandwidthLimit(long bandwidthLimit);
+    long getBandwidthClientLimit();
+    void setBandwidthClientLimit(long bandwidthClientLimit);
+    Map<String, Long> getBandwidthPrefixLimits();
+    void setBandwidthPrefixLimits(Map<String, Long> bandwidthPrefixLimits);
+    Map<String, Integer> getBandwidthClientWeights();
+    void setBandwidthClientWeights(Map<String, Integer> bandwidthClientWeights);
+    boolean isMetadataIndex();
+    void setMetadataIndex(boolean metadataIndex);
+    Duration getMetadataIndexReconcileInterval();
+    void setMetadataIndexReconcileInterval(Duration metadataIndexReconcileInterval);
 }
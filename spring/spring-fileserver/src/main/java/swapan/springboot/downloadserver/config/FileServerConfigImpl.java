@@ -3,10 +3,40 @@ package swapan.springboot.downloadserver.config;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
 @Configuration
 @ConfigurationProperties("file.server")
 public class FileServerConfigImpl implements FileServerConfig {
     private String home;
+    private int bufferSize = 64 * 1024;
+    private Duration uploadSessionTimeout = Duration.ofHours(1);
+    private boolean listPermissions;
+    private int listCacheSize = 256;
+    private String cacheControl = "";
+    private boolean compressionEnabled = true;
+    private long compressionMinSize = 1024;
+    private Duration sidecarInterval = Duration.ZERO;
+    private int sidecarMinHits = 10;
+    private int archiveParallelism = Runtime.getRuntime().availableProcessors();
+    private int deleteParallelism = Runtime.getRuntime().availableProcessors();
+    private int searchParallelism = Runtime.getRuntime().availableProcessors();
+    private long hotCacheSize = 64 * 1024 * 1024;
+    private long hotCacheMaxEntrySize = 1024 * 1024;
+    private int hotCacheMinHits = 2;
+    private boolean dedup;
+    private int batchParallelism = Runtime.getRuntime().availableProcessors();
+    private boolean copyReflink;
+    private int metricsPrefixDepth;
+    private int metricsPrefixMaxValues = 100;
+    private long bandwidthLimit;
+    private long bandwidthClientLimit;
+    private Map<String, Long> bandwidthPrefixLimits = new HashMap<>();
+    private Map<String, Integer> bandwidthClientWeights = new HashMap<>();
+    private boolean metadataIndex;
+    private Duration metadataIndexReconcileInterval = Duration.ofHours(1);
 
     @Override
     public String getHome() {
@@ -17,4 +47,264 @@ public class FileServerConfigImpl implements FileServerConfig {
     public void setHome(String home) {
         this.home = home;
     }
-} 
\ No newline at end of file
+
+    @Override
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    @Override
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    @Override
+    public Duration getUploadSessionTimeout() {
+        return uploadSessionTimeout;
+    }
+
+    @Override
+    public void setUploadSessionTimeout(Duration uploadSessionTimeout) {
+        this.uploadSessionTimeout = uploadSessionTimeout;
+    }
+
+    @Override
+    public boolean isListPermissions() {
+        return listPermissions;
+    }
+
+    @Override
+    public void setListPermissions(boolean listPermissions) {
+        this.listPermissions = listPermissions;
+    }
+
+    @Override
+    public int getListCacheSize() {
+        return listCacheSize;
+    }
+
+    @Override
+    public void setListCacheSize(int listCacheSize) {
+        this.listCacheSize = listCacheSize;
+    }
+
+    @Override
+    public String getCacheControl() {
+        return cacheControl;
+    }
+
+    @Override
+    public void setCacheControl(String cacheControl) {
+        this.cacheControl = cacheControl;
+    }
+
+    @Override
+    public boolean isCompressionEnabled() {
+        return compressionEnabled;
+    }
+
+    @Override
+    public void setCompressionEnabled(boolean compressionEnabled) {
+        this.compressionEnabled = compressionEnabled;
+    }
+
+    @Override
+    public long getCompressionMinSize() {
+        return compressionMinSize;
+    }
+
+    @Override
+    public void setCompressionMinSize(long compressionMinSize) {
+        this.compressionMinSize = compressionMinSize;
+    }
+
+    @Override
+    public Duration getSidecarInterval() {
+        return sidecarInterval;
+    }
+
+    @Override
+    public void setSidecarInterval(Duration sidecarInterval) {
+        this.sidecarInterval = sidecarInterval;
+    }
+
+    @Override
+    public int getSidecarMinHits() {
+        return sidecarMinHits;
+    }
+
+    @Override
+    public void setSidecarMinHits(int sidecarMinHits) {
+        this.sidecarMinHits = sidecarMinHits;
+    }
+
+    @Override
+    public int getArchiveParallelism() {
+        return archiveParallelism;
+    }
+
+    @Override
+    public void setArchiveParallelism(int archiveParallelism) {
+        this.archiveParallelism = archiveParallelism;
+    }
+
+    @Override
+    public int getDeleteParallelism() {
+        return deleteParallelism;
+    }
+
+    @Override
+    public void setDeleteParallelism(int deleteParallelism) {
+        this.deleteParallelism = deleteParallelism;
+    }
+
+    @Override
+    public int getSearchParallelism() {
+        return searchParallelism;
+    }
+
+    @Override
+    public void setSearchParallelism(int searchParallelism) {
+        this.searchParallelism = searchParallelism;
+    }
+
+    @Override
+    public long getHotCacheSize() {
+        return hotCacheSize;
+    }
+
+    @Override
+    public void setHotCacheSize(long hotCacheSize) {
+        this.hotCacheSize = hotCacheSize;
+    }
+
+    @Override
+    public long getHotCacheMaxEntrySize() {
+        return hotCacheMaxEntrySize;
+    }
+
+    @Override
+    public void setHotCacheMaxEntrySize(long hotCacheMaxEntrySize) {
+        this.hotCacheMaxEntrySize = hotCacheMaxEntrySize;
+    }
+
+    @Override
+    public int getHotCacheMinHits() {
+        return hotCacheMinHits;
+    }
+
+    @Override
+    public void setHotCacheMinHits(int hotCacheMinHits) {
+        this.hotCacheMinHits = hotCacheMinHits;
+    }
+
+    @Override
+    public boolean isDedup() {
+        return dedup;
+    }
+
+    @Override
+    public void setDedup(boolean dedup) {
+        this.dedup = dedup;
+    }
+
+    @Override
+    public int getBatchParallelism() {
+        return batchParallelism;
+    }
+
+    @Override
+    public void setBatchParallelism(int batchParallelism) {
+        this.batchParallelism = batchParallelism;
+    }
+
+    @Override
+    public boolean isCopyReflink() {
+        return copyReflink;
+    }
+
+    @Override
+    public void setCopyReflink(boolean copyReflink) {
+        this.copyReflink = copyReflink;
+    }
+
+    @Override
+    public int getMetricsPrefixDepth() {
+        return metricsPrefixDepth;
+    }
+
+    @Override
+    public void setMetricsPrefixDepth(int metricsPrefixDepth) {
+        this.metricsPrefixDepth = metricsPrefixDepth;
+    }
+
+    @Override
+    public int getMetricsPrefixMaxValues() {
+        return metricsPrefixMaxValues;
+    }
+
+    @Override
+    public void setMetricsPrefixMaxValues(int metricsPrefixMaxValues) {
+        this.metricsPrefixMaxValues = metricsPrefixMaxValues;
+    }
+
+    @Override
+    public long getBandwidthLimit() {
+        return bandwidthLimit;
+    }
+
+    @Override
+    public void setBandwidthLimit(long bandwidthLimit) {
+        this.bandwidthLimit = bandwidthLimit;
+    }
+
+    @Override
+    public long getBandwidthClientLimit() {
+        return bandwidthClientLimit;
+    }
+
+    @Override
+    public void setBandwidthClientLimit(long bandwidthClientLimit) {
+        this.bandwidthClientLimit = bandwidthClientLimit;
+    }
+
+    @Override
+    public Map<String, Long> getBandwidthPrefixLimits() {
+        return bandwidthPrefixLimits;
+    }
+
+    @Override
+    public void setBandwidthPrefixLimits(Map<String, Long> bandwidthPrefixLimits) {
+        this.bandwidthPrefixLimits = bandwidthPrefixLimits;
+    }
+
+    @Override
+    public Map<String, Integer> getBandwidthClientWeights() {
+        return bandwidthClientWeights;
+    }
+
+    @Override
+    public void setBandwidthClientWeights(Map<String, Integer> bandwidthClientWeights) {
+        this.bandwidthClientWeights = bandwidthClientWeights;
+    }
+
+    @Override
+    public boolean isMetadataIndex() {
+        return metadataIndex;
+    }
+
+    @Override
+    public void setMetadataIndex(boolean metadataIndex) {
+        this.metadataIndex = metadataIndex;
+    }
+
+    @Override
+    public Duration getMetadataIndexReconcileInterval() {
+        return metadataIndexReconcileInterval;
+    }
+
+    @Override
+    public void setMetadataIndexReconcileInterval(Duration metadataIndexReconcileInterval) {
+        this.metadataIndexReconcileInterval = metadataIndexReconcileInterval;
+    }
+}
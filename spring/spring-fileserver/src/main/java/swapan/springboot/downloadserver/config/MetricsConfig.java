@@ -0,0 +1,20 @@
+package swapan.springboot.downloadserver.config;
+
+import swapan.springboot.downloadserver.rest.FileServerMetricsFilter;
+
+import io.micrometer.core.instrument.config.MeterFilter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Meter filters, spring boot applies them to every meter registry it creates.
+ */
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public MeterFilter fileServerPrefixLimit(FileServerConfig fileServerConfig) {
+        return FileServerMetricsFilter.prefixLimit(fileServerConfig.getMetricsPrefixMaxValues());
+    }
+
+}
@@ -0,0 +1,49 @@
+package swapan.springboot.downloadserver.dto;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * One operation of batch request, paths are relative to base directory.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BatchOperation {
+
+    public enum Type {
+        @JsonProperty("createdir") CREATEDIR,
+        @JsonProperty("delete") DELETE,
+        @JsonProperty("move") MOVE,
+        @JsonProperty("copy") COPY
+    }
+
+    private final Type op;
+    private final String path;
+    private final String target;
+
+    /**
+     * @param op operation.
+     * @param path file or directory the operation works on.
+     * @param target destination of move and copy.
+     */
+    @JsonCreator
+    public BatchOperation(@JsonProperty("op") Type op, @JsonProperty("path") String path,
+                          @JsonProperty("target") String target) {
+        this.op = op;
+        this.path = path;
+        this.target = target;
+    }
+
+    public Type getOp() {
+        return op;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getTarget() {
+        return target;
+    }
+
+}
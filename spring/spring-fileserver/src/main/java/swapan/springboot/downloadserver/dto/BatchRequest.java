@@ -0,0 +1,33 @@
+package swapan.springboot.downloadserver.dto;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+public class BatchRequest {
+
+    private final List<BatchOperation> operations;
+    private final boolean stopOnError;
+
+    /**
+     * @param operations operations to run.
+     * @param stopOnError run operations one by one in given order and skip the rest after first failure,
+     *                    otherwise they run in parallel and failures do not affect other operations.
+     */
+    @JsonCreator
+    public BatchRequest(@JsonProperty("operations") List<BatchOperation> operations,
+                        @JsonProperty("stopOnError") boolean stopOnError) {
+        this.operations = operations;
+        this.stopOnError = stopOnError;
+    }
+
+    public List<BatchOperation> getOperations() {
+        return operations;
+    }
+
+    public boolean isStopOnError() {
+        return stopOnError;
+    }
+
+}
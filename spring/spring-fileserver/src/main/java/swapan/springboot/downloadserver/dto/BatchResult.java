@@ -0,0 +1,56 @@
+package swapan.springboot.downloadserver.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Outcome of one operation of batch request.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BatchResult {
+
+    public enum Status {
+        OK, FAILED, SKIPPED
+    }
+
+    private final int index;
+    private final BatchOperation.Type op;
+    private final String path;
+    private final Status status;
+    private final String error;
+
+    /**
+     * @param index position of the operation in the request.
+     * @param op operation.
+     * @param path file or directory the operation worked on.
+     * @param status outcome, skipped operations were not started because an earlier one failed.
+     * @param error reason of failure.
+     */
+    public BatchResult(int index, BatchOperation.Type op, String path, Status status, String error) {
+        this.index = index;
+        this.op = op;
+        this.path = path;
+        this.status = status;
+        this.error = error;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public BatchOperation.Type getOp() {
+        return op;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+}
@@ -0,0 +1,52 @@
+package swapan.springboot.downloadserver.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class DeleteJobInfo {
+
+    public enum State {
+        RUNNING, COMPLETED, CANCELLED, FAILED
+    }
+
+    private final String id;
+    private final String filePath;
+    private final State state;
+    private final long deletedFiles;
+    private final long deletedDirectories;
+    private final String error;
+
+    public DeleteJobInfo(String id, String filePath, State state, long deletedFiles, long deletedDirectories, String error) {
+        this.id = id;
+        this.filePath = filePath;
+        this.state = state;
+        this.deletedFiles = deletedFiles;
+        this.deletedDirectories = deletedDirectories;
+        this.error = error;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getFilePath() {
+        return filePath;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public long getDeletedFiles() {
+        return deletedFiles;
+    }
+
+    public long getDeletedDirectories() {
+        return deletedDirectories;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+}
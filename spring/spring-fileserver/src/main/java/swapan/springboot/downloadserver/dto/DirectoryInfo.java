@@ -1,15 +1,44 @@
 package swapan.springboot.downloadserver.dto;
 
-public class DirectoryInfo {
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.time.Instant;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class DirectoryInfo implements FileEntry {
 
     private final String filePath;
+    private final Instant lastModified;
+    private final String permissions;
 
     public DirectoryInfo(String filePath) {
+        this(filePath, null, null);
+    }
+
+    public DirectoryInfo(String filePath, Instant lastModified, String permissions) {
         this.filePath = filePath;
+        this.lastModified = lastModified;
+        this.permissions = permissions;
     }
 
+    @Override
     public String getFilePath() {
         return filePath;
     }
 
+    @Override
+    public String getType() {
+        return "directory";
+    }
+
+    @Override
+    public Instant getLastModified() {
+        return lastModified;
+    }
+
+    @Override
+    public String getPermissions() {
+        return permissions;
+    }
+
 }
@@ -0,0 +1,39 @@
+package swapan.springboot.downloadserver.dto;
+
+public class DiskUsage {
+
+    private final String path;
+    private final long size;
+    private final long files;
+    private final long directories;
+
+    /**
+     * @param path relative path of file or directory.
+     * @param size total size of files in bytes.
+     * @param files number of files, including subdirectories.
+     * @param directories number of subdirectories at any depth.
+     */
+    public DiskUsage(String path, long size, long files, long directories) {
+        this.path = path;
+        this.size = size;
+        this.files = files;
+        this.directories = directories;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getFiles() {
+        return files;
+    }
+
+    public long getDirectories() {
+        return directories;
+    }
+
+}
@@ -0,0 +1,21 @@
+package swapan.springboot.downloadserver.dto;
+
+import java.time.Instant;
+
+/**
+ * Single entry of directory listing, either {@link FileInfo} or {@link DirectoryInfo}.
+ */
+public interface FileEntry {
+
+    String getFilePath();
+
+    String getType();
+
+    Instant getLastModified();
+
+    /**
+     * POSIX permissions like rwxr-x---, null when not listed.
+     */
+    String getPermissions();
+
+}
@@ -1,15 +1,63 @@
 package swapan.springboot.downloadserver.dto;
 
-public class FileInfo {
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.time.Instant;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class FileInfo implements FileEntry {
 
     private final String filePath;
+    private final Long size;
+    private final Instant lastModified;
+    private final String permissions;
+    private final String sha256;
 
     public FileInfo(String filePath) {
+        this(filePath, null, null, null);
+    }
+
+    public FileInfo(String filePath, Long size, Instant lastModified, String permissions) {
+        this(filePath, size, lastModified, permissions, null);
+    }
+
+    public FileInfo(String filePath, Long size, Instant lastModified, String permissions, String sha256) {
         this.filePath = filePath;
+        this.size = size;
+        this.lastModified = lastModified;
+        this.permissions = permissions;
+        this.sha256 = sha256;
     }
 
+    @Override
     public String getFilePath() {
         return filePath;
     }
 
+    @Override
+    public String getType() {
+        return "file";
+    }
+
+    public Long getSize() {
+        return size;
+    }
+
+    @Override
+    public Instant getLastModified() {
+        return lastModified;
+    }
+
+    @Override
+    public String getPermissions() {
+        return permissions;
+    }
+
+    /**
+     * Lower case hex SHA-256 of content, known for files uploaded while metadata index is enabled, null otherwise.
+     */
+    public String getSha256() {
+        return sha256;
+    }
+
 }
@@ -1,5 +1,6 @@
 package swapan.springboot.downloadserver.dto;
 
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -7,6 +8,8 @@ public class FileList {
     private final String path;
     private final List<FileInfo> fileInfo;
     private final List<DirectoryInfo> directoryInfo;
+    private String nextCursor;
+    private Instant lastModified;
 
     public FileList(String path) {
         this.path = path;
@@ -26,6 +29,36 @@ public class FileList {
         return directoryInfo;
     }
 
+    /**
+     * Opaque cursor to request next page of paginated listing, null on last page.
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * Newest modification time of the directory itself and of the listed entries.
+     */
+    public Instant getLastModified() {
+        return lastModified;
+    }
+
+    public void setLastModified(Instant lastModified) {
+        this.lastModified = lastModified;
+    }
+
+    public void add(FileEntry fileEntry) {
+        if (fileEntry instanceof DirectoryInfo directory) {
+            add(directory);
+        } else {
+            add((FileInfo) fileEntry);
+        }
+    }
+
     public void add(FileInfo fileInfo) {
         this.fileInfo.add(fileInfo);
     }
@@ -0,0 +1,58 @@
+package swapan.springboot.downloadserver.dto;
+
+public class HotCacheStats {
+
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final long size;
+    private final long bytes;
+    private final long bytesSaved;
+
+    public HotCacheStats(long hits, long misses, long evictions, long size, long bytes, long bytesSaved) {
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.size = size;
+        this.bytes = bytes;
+        this.bytesSaved = bytesSaved;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Number of cached files.
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Heap bytes held by cached files.
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Bytes served from memory instead of reading files.
+     */
+    public long getBytesSaved() {
+        return bytesSaved;
+    }
+
+    public double getHitRatio() {
+        return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+    }
+
+}
@@ -0,0 +1,45 @@
+package swapan.springboot.downloadserver.dto;
+
+public class RebalanceStats {
+
+    private final int roots;
+    private final boolean running;
+    private final long scannedFiles;
+    private final long movedFiles;
+    private final long movedBytes;
+    private final long failedFiles;
+
+    public RebalanceStats(int roots, boolean running, long scannedFiles, long movedFiles, long movedBytes, long failedFiles) {
+        this.roots = roots;
+        this.running = running;
+        this.scannedFiles = scannedFiles;
+        this.movedFiles = movedFiles;
+        this.movedBytes = movedBytes;
+        this.failedFiles = failedFiles;
+    }
+
+    public int getRoots() {
+        return roots;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public long getScannedFiles() {
+        return scannedFiles;
+    }
+
+    public long getMovedFiles() {
+        return movedFiles;
+    }
+
+    public long getMovedBytes() {
+        return movedBytes;
+    }
+
+    public long getFailedFiles() {
+        return failedFiles;
+    }
+
+}
@@ -0,0 +1,80 @@
+package swapan.springboot.downloadserver.dto;
+
+import java.time.Instant;
+
+/**
+ * Filters of recursive search, null means not restricted.
+ */
+public class SearchQuery {
+
+    private final String glob;
+    private final String regex;
+    private final String type;
+    private final Long minSize;
+    private final Long maxSize;
+    private final Instant modifiedAfter;
+    private final Instant modifiedBefore;
+    private final int maxDepth;
+    private final int limit;
+
+    /**
+     * @param glob glob matched against file name, e.g. {@code *.jar}.
+     * @param regex regular expression matched against path relative to searched directory.
+     * @param type file or directory.
+     * @param minSize minimal size of files in bytes.
+     * @param maxSize maximal size of files in bytes.
+     * @param modifiedAfter entries modified at or after this time.
+     * @param modifiedBefore entries modified before this time.
+     * @param maxDepth levels of subdirectories to descend, 1 searches only the directory itself.
+     * @param limit search stops after this number of matches.
+     */
+    public SearchQuery(String glob, String regex, String type, Long minSize, Long maxSize,
+                       Instant modifiedAfter, Instant modifiedBefore, int maxDepth, int limit) {
+        this.glob = glob;
+        this.regex = regex;
+        this.type = type;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.modifiedAfter = modifiedAfter;
+        this.modifiedBefore = modifiedBefore;
+        this.maxDepth = maxDepth;
+        this.limit = limit;
+    }
+
+    public String getGlob() {
+        return glob;
+    }
+
+    public String getRegex() {
+        return regex;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public Long getMinSize() {
+        return minSize;
+    }
+
+    public Long getMaxSize() {
+        return maxSize;
+    }
+
+    public Instant getModifiedAfter() {
+        return modifiedAfter;
+    }
+
+    public Instant getModifiedBefore() {
+        return modifiedBefore;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+}
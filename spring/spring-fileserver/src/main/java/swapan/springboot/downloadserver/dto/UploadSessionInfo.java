@@ -0,0 +1,51 @@
+package swapan.springboot.downloadserver.dto;
+
+import java.util.List;
+
+public class UploadSessionInfo {
+
+    private final String id;
+    private final String filePath;
+    private final long size;
+    private final long chunkSize;
+    private final int chunkCount;
+    private final List<Integer> receivedChunks;
+
+    public UploadSessionInfo(String id, String filePath, long size, long chunkSize, int chunkCount, List<Integer> receivedChunks) {
+        this.id = id;
+        this.filePath = filePath;
+        this.size = size;
+        this.chunkSize = chunkSize;
+        this.chunkCount = chunkCount;
+        this.receivedChunks = receivedChunks;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getFilePath() {
+        return filePath;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getChunkSize() {
+        return chunkSize;
+    }
+
+    public int getChunkCount() {
+        return chunkCount;
+    }
+
+    public List<Integer> getReceivedChunks() {
+        return receivedChunks;
+    }
+
+    public boolean isComplete() {
+        return receivedChunks.size() == chunkCount;
+    }
+
+}
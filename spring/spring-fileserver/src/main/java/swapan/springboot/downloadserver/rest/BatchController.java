@@ -0,0 +1,45 @@
+package swapan.springboot.downloadserver.rest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import swapan.springboot.downloadserver.dto.BatchRequest;
+import swapan.springboot.downloadserver.dto.BatchResult;
+import swapan.springboot.downloadserver.services.BatchService;
+
+import java.util.List;
+
+@RestController
+@RequestMapping(path = FileServerController.URI_PREFIX + BatchController.BATCH_PREFIX)
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class BatchController {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BatchController.class);
+
+    public static final String BATCH_PREFIX = "/batch";
+
+    @Autowired
+    private BatchService batchService;
+
+    @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<BatchResult>> run(@RequestBody BatchRequest request) {
+        LOG.info("batch: stopOnError={}", request.isStopOnError());
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(batchService.run(request));
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<Void> handleBadRequest() {
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+    }
+
+}
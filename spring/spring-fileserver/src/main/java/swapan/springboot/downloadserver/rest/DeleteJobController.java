@@ -0,0 +1,80 @@
+package swapan.springboot.downloadserver.rest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import jakarta.servlet.http.HttpServletRequest;
+import swapan.springboot.downloadserver.dto.DeleteJobInfo;
+import swapan.springboot.downloadserver.services.DeleteJobService;
+
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.NoSuchElementException;
+
+@RestController
+@RequestMapping(path = FileServerController.URI_PREFIX + DeleteJobController.DELETE_JOBS_PREFIX)
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class DeleteJobController {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DeleteJobController.class);
+
+    public static final String DELETE_JOBS_PREFIX = "/delete-jobs";
+    public static final String START_PREFIX = "/start/";
+
+    @Autowired
+    private DeleteJobService deleteJobService;
+
+    @Autowired
+    private HttpServletRequest httpServletRequest;
+
+    @PostMapping(START_PREFIX + "**")
+    public ResponseEntity<DeleteJobInfo> start() throws IOException {
+        String contextPath = httpServletRequest.getRequestURI();
+        Path filePath = Paths.get(contextPath.substring((FileServerController.URI_PREFIX + DELETE_JOBS_PREFIX + START_PREFIX).length()));
+        LOG.info("start: {}", filePath);
+        DeleteJobInfo job = deleteJobService.start(filePath);
+        return ResponseEntity.status(HttpStatus.ACCEPTED).contentType(MediaType.APPLICATION_JSON).body(job);
+    }
+
+    @GetMapping("/{jobId}")
+    public ResponseEntity<DeleteJobInfo> getJob(@PathVariable String jobId) {
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(deleteJobService.getJob(jobId));
+    }
+
+    @DeleteMapping("/{jobId}")
+    public ResponseEntity<DeleteJobInfo> cancel(@PathVariable String jobId) {
+        LOG.info("cancel: {}", jobId);
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(deleteJobService.cancel(jobId));
+    }
+
+    @ExceptionHandler({NoSuchElementException.class, NoSuchFileException.class})
+    public ResponseEntity<Void> handleNotFound() {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<Void> handleBadRequest() {
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+    }
+
+    @ExceptionHandler(IOException.class)
+    public ResponseEntity<Void> handleIOException(IOException e, HttpServletRequest request) {
+        FileServerMetricsFilter.recordError(request, e);
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+    }
+
+}
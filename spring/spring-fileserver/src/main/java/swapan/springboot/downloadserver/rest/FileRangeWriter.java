@@ -0,0 +1,534 @@
+package swapan.springboot.downloadserver.rest;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.MediaType;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.util.StringUtils;
+import org.springframework.web.context.request.ServletWebRequest;
+import swapan.springboot.downloadserver.services.BandwidthLimiter;
+import swapan.springboot.downloadserver.services.MediaTypes;
+import swapan.springboot.downloadserver.services.SidecarCompressor;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterInputStream;
+
+/**
+ * Writes file content into servlet response honoring conditional, Range, If-Range and Accept-Encoding headers.
+ * Whole files, single ranges and sidecars are handed over to Tomcat sendfile when the connector supports it, only
+ * then do the bytes skip the heap. Otherwise they are written by {@link FileChannel#transferTo} into a channel over
+ * the servlet stream, which copies them through a heap buffer. Multipart ranges and content gzipped on the fly are
+ * read into heap buffers too. Content of hot files cached in memory is written from the cache buffer, only sidecars
+ * are still read from disk. Limited downloads are read chunk by chunk as the bandwidth limiter allows and are sent
+ * in async mode when the request supports it.
+ * <p>
+ * Overlapping and adjacent ranges are merged. More ranges than {@link #MAX_RANGES} are ignored and the whole
+ * content is sent, so a request cannot multiply the size of the response.
+ */
+final class FileRangeWriter {
+
+    static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    static final String GZIP = "gzip";
+
+    /**
+     * Precompressed sidecar suffix per content coding, in order of preference when qualities are equal.
+     */
+    private static final Map<String, String> SIDECARS = new LinkedHashMap<>();
+
+    static {
+        SIDECARS.put("br", SidecarCompressor.BROTLI_SUFFIX);
+        SIDECARS.put("zstd", SidecarCompressor.ZSTD_SUFFIX);
+        SIDECARS.put(GZIP, SidecarCompressor.GZIP_SUFFIX);
+    }
+
+    /**
+     * Largest number of distinct ranges served as multipart response.
+     */
+    static final int MAX_RANGES = 16;
+
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+    private static final byte[] GZIP_HEADER = { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0 };
+    private static final String CRLF = "\r\n";
+
+    private FileRangeWriter() {
+    }
+
+    /**
+     * Response settings of the controller.
+     * @param cacheControl value of Cache-Control header, empty for none.
+     * @param compression whether Accept-Encoding is honored.
+     * @param compressionMinSize smallest file compressed on the fly.
+     * @param lastModified whether modification time is a validator; deduplicated files have the time their content
+     *                     was first stored, which may go back when a file is replaced, so they are validated by
+     *                     entity tag only.
+     * @param throttle bandwidth limit of this download, or null when it is not limited.
+     */
+    record Options(String cacheControl, boolean compression, long compressionMinSize, boolean lastModified,
+                   BandwidthLimiter.Transfer throttle) {
+    }
+
+    static void write(HttpServletRequest request, HttpServletResponse response, Path file, String fileName,
+                      Options options) throws IOException {
+        write(request, response, file, fileName, options, null, Files.readAttributes(file, BasicFileAttributes.class));
+    }
+
+    /**
+     * @param content whole file content held in memory, or null to read the file.
+     * @param attributes attributes of file the content belongs to.
+     */
+    static void write(HttpServletRequest request, HttpServletResponse response, Path file, String fileName,
+                      Options options, ByteBuffer content, BasicFileAttributes attributes) throws IOException {
+        // negative time is ignored by validation and If-Range dates never match it
+        long lastModified = options.lastModified() ? attributes.lastModifiedTime().toMillis() : -1;
+        MediaType contentType = MediaTypes.detect(file);
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        boolean head = "HEAD".equals(request.getMethod());
+        BandwidthLimiter.Transfer throttle = options.throttle();
+
+        if (StringUtils.hasText(options.cacheControl())) {
+            response.setHeader(HttpHeaders.CACHE_CONTROL, options.cacheControl());
+        }
+        // ranges always address the identity representation
+        String contentEncoding = null;
+        Path body = file;
+        if (options.compression()) {
+            response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            if (rangeHeader == null) {
+                Map<String, Double> accepted = parseAcceptEncoding(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+                double bestQuality = 0;
+                for (Map.Entry<String, String> sidecar : SIDECARS.entrySet()) {
+                    double quality = quality(accepted, sidecar.getKey());
+                    Path sidecarFile = file.resolveSibling(file.getFileName() + sidecar.getValue());
+                    if (quality > bestQuality && isFresh(sidecarFile, attributes)) {
+                        bestQuality = quality;
+                        contentEncoding = sidecar.getKey();
+                        body = sidecarFile;
+                    }
+                }
+                if (contentEncoding == null && quality(accepted, GZIP) > 0
+                        && attributes.size() >= options.compressionMinSize() && MediaTypes.isCompressible(contentType)) {
+                    contentEncoding = GZIP;
+                }
+            }
+        }
+        String eTag = eTag(attributes);
+        if (contentEncoding != null) {
+            eTag = eTag.substring(0, eTag.length() - 1) + "-" + contentEncoding + "\"";
+        }
+
+        // validators come from attributes alone, file is not opened for 304 or 412
+        if (new ServletWebRequest(request, response).checkNotModified(eTag, lastModified)) {
+            return;
+        }
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setHeader(HttpHeaders.ETAG, eTag);
+        if (lastModified >= 0) {
+            response.setDateHeader(HttpHeaders.LAST_MODIFIED, lastModified);
+        }
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"");
+
+        if (contentEncoding != null) {
+            response.setStatus(HttpServletResponse.SC_OK);
+            response.setContentType(contentType.toString());
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, contentEncoding);
+            if (body != file) {
+                long length = Files.size(body);
+                response.setContentLengthLong(length);
+                if (!head) {
+                    transfer(request, response, body, null, 0, length, throttle);
+                }
+            } else if (!head) {
+                // streaming encoder, length is unknown and response is chunked
+                InputStream in = content != null ? new RangeInputStream(content, 0, attributes.size())
+                        : Files.newInputStream(file);
+                send(request, response, gzip(in), throttle);
+            }
+            return;
+        }
+
+        long length = attributes.size();
+        List<long[]> ranges = null;
+        if (rangeHeader != null && isIfRangeSatisfied(request, eTag, lastModified)) {
+            try {
+                ranges = toRanges(HttpRange.parseRanges(rangeHeader), length);
+            } catch (IllegalArgumentException e) {
+                // malformed Range header is ignored and full content is sent
+            }
+        }
+
+        if (ranges == null) {
+            response.setStatus(HttpServletResponse.SC_OK);
+            response.setContentType(contentType.toString());
+            response.setContentLengthLong(length);
+            if (!head) {
+                transfer(request, response, file, content, 0, length, throttle);
+            }
+        } else if (ranges.isEmpty()) {
+            response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+        } else if (ranges.size() == 1) {
+            long[] range = ranges.get(0);
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setContentType(contentType.toString());
+            response.setHeader(HttpHeaders.CONTENT_RANGE, contentRange(range, length));
+            response.setContentLengthLong(range[1] - range[0] + 1);
+            if (!head) {
+                transfer(request, response, file, content, range[0], range[1] - range[0] + 1, throttle);
+            }
+        } else {
+            String boundary = MimeTypeUtils.generateMultipartBoundaryString();
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setContentType("multipart/byteranges; boundary=" + boundary);
+            if (!head) {
+                send(request, response, multipart(file, content, contentType, ranges, length, boundary), throttle);
+            }
+        }
+    }
+
+    /**
+     * Parses Accept-Encoding into coding to quality map, codings are lower case.
+     */
+    static Map<String, Double> parseAcceptEncoding(String acceptEncoding) {
+        Map<String, Double> accepted = new HashMap<>();
+        if (acceptEncoding == null) {
+            return accepted;
+        }
+        for (String element : acceptEncoding.split(",")) {
+            String[] parts = element.split(";");
+            String coding = parts[0].trim().toLowerCase(Locale.ROOT);
+            double quality = 1;
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        quality = Double.parseDouble(parameter.substring(2));
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+            if (!coding.isEmpty()) {
+                accepted.put(coding, quality);
+            }
+        }
+        return accepted;
+    }
+
+    private static double quality(Map<String, Double> accepted, String coding) {
+        Double quality = accepted.get(coding);
+        if (quality == null) {
+            quality = accepted.getOrDefault("*", 0d);
+        }
+        return quality;
+    }
+
+    /**
+     * Sidecar is used only when it is newer than the file it was made from, one written in the same clock tick
+     * may have been made from the previous content.
+     */
+    private static boolean isFresh(Path sidecarFile, BasicFileAttributes attributes) {
+        try {
+            BasicFileAttributes sidecarAttributes = Files.readAttributes(sidecarFile, BasicFileAttributes.class);
+            return sidecarAttributes.isRegularFile()
+                    && sidecarAttributes.lastModifiedTime().compareTo(attributes.lastModifiedTime()) > 0;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Strong entity tag from size, modification time and file key (device and inode on unix).
+     */
+    static String eTag(BasicFileAttributes attributes) {
+        Object fileKey = attributes.fileKey();
+        return "\"" + Long.toHexString(attributes.size())
+                + "-" + Long.toHexString(attributes.lastModifiedTime().toMillis())
+                + (fileKey == null ? "" : "-" + Integer.toHexString(fileKey.hashCode())) + "\"";
+    }
+
+    private static boolean isIfRangeSatisfied(HttpServletRequest request, String eTag, long lastModified) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            // If-Range requires strong comparison, weak tags never match
+            return ifRange.equals(eTag);
+        }
+        try {
+            long ifRangeDate = request.getDateHeader(HttpHeaders.IF_RANGE);
+            return ifRangeDate / 1000 == lastModified / 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Converts parsed ranges to inclusive [start, end] pairs in ascending order, unsatisfiable ranges are dropped
+     * and overlapping or adjacent ones merged.
+     * @return ranges to send, empty when none is satisfiable, null when there are too many and whole content is sent.
+     */
+    private static List<long[]> toRanges(List<HttpRange> httpRanges, long length) {
+        List<long[]> ranges = new ArrayList<>();
+        if (length == 0) {
+            return ranges;
+        }
+        for (HttpRange httpRange : httpRanges) {
+            try {
+                long start = httpRange.getRangeStart(length);
+                long end = httpRange.getRangeEnd(length);
+                if (start < length && start <= end) {
+                    ranges.add(new long[] { start, end });
+                }
+            } catch (IllegalArgumentException e) {
+                // range starts beyond end of file
+            }
+        }
+        ranges.sort((a, b) -> Long.compare(a[0], b[0]));
+        List<long[]> merged = new ArrayList<>();
+        for (long[] range : ranges) {
+            long[] last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if (last != null && range[0] <= last[1] + 1) {
+                last[1] = Math.max(last[1], range[1]);
+            } else {
+                merged.add(range);
+            }
+        }
+        return merged.size() > MAX_RANGES ? null : merged;
+    }
+
+    private static String contentRange(long[] range, long length) {
+        return "bytes " + range[0] + "-" + range[1] + "/" + length;
+    }
+
+    /**
+     * Body of multipart/byteranges response, ranges are read as the body is read.
+     */
+    private static InputStream multipart(Path file, ByteBuffer content, MediaType contentType, List<long[]> ranges,
+                                         long length, String boundary) throws IOException {
+        FileChannel source = content == null ? FileChannel.open(file) : null;
+        List<InputStream> parts = new ArrayList<>();
+        for (long[] range : ranges) {
+            String header = "--" + boundary + CRLF
+                    + HttpHeaders.CONTENT_TYPE + ": " + contentType + CRLF
+                    + HttpHeaders.CONTENT_RANGE + ": " + contentRange(range, length) + CRLF + CRLF;
+            parts.add(new ByteArrayInputStream(header.getBytes(StandardCharsets.US_ASCII)));
+            long count = range[1] - range[0] + 1;
+            parts.add(source != null ? new RangeInputStream(source, false, range[0], count)
+                    : new RangeInputStream(content, range[0], count));
+            parts.add(new ByteArrayInputStream(CRLF.getBytes(StandardCharsets.US_ASCII)));
+        }
+        parts.add(new ByteArrayInputStream(("--" + boundary + "--").getBytes(StandardCharsets.US_ASCII)));
+        InputStream body = new SequenceInputStream(Collections.enumeration(parts));
+        if (source == null) {
+            return body;
+        }
+        return new FilterInputStream(body) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    source.close();
+                }
+            }
+        };
+    }
+
+    /**
+     * Gzip encoder pulled by the reader of the returned stream, the source is closed once it has been encoded.
+     */
+    private static InputStream gzip(InputStream in) {
+        CheckedInputStream checked = new CheckedInputStream(in, new CRC32());
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        Iterator<Supplier<InputStream>> parts = List.<Supplier<InputStream>>of(
+                () -> new ByteArrayInputStream(GZIP_HEADER),
+                () -> new DeflaterInputStream(checked, deflater, GZIP_BUFFER_SIZE),
+                // checksum and size are known once the content has been deflated
+                () -> new ByteArrayInputStream(ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN)
+                        .putInt((int) checked.getChecksum().getValue())
+                        .putInt((int) deflater.getBytesRead())
+                        .array())).iterator();
+        InputStream body = new SequenceInputStream(new Enumeration<>() {
+            @Override
+            public boolean hasMoreElements() {
+                return parts.hasNext();
+            }
+
+            @Override
+            public InputStream nextElement() {
+                return parts.next().get();
+            }
+        });
+        return new FilterInputStream(body) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                    checked.close();
+                } finally {
+                    deflater.end();
+                }
+            }
+        };
+    }
+
+    /**
+     * Writes body and closes it. Limited body is paced in async mode when the request supports it, the request
+     * thread does not wait for tokens then.
+     */
+    private static void send(HttpServletRequest request, HttpServletResponse response, InputStream body,
+                             BandwidthLimiter.Transfer throttle) throws IOException {
+        if (throttle != null && request.isAsyncSupported()) {
+            try {
+                ThrottledStreams.send(request, response, body, throttle);
+            } catch (IOException | RuntimeException e) {
+                body.close();
+                throw e;
+            }
+            return;
+        }
+        try (body) {
+            OutputStream out = response.getOutputStream();
+            body.transferTo(throttle == null ? out : ThrottledStreams.output(out, throttle));
+        }
+    }
+
+    private static void transfer(HttpServletRequest request, HttpServletResponse response, Path file, ByteBuffer content,
+                                 long position, long count, BandwidthLimiter.Transfer throttle) throws IOException {
+        if (throttle != null) {
+            // sendfile would bypass the pacing
+            send(request, response, content != null ? new RangeInputStream(content, position, count)
+                    : new RangeInputStream(FileChannel.open(file), true, position, count), throttle);
+            return;
+        }
+        if (content != null) {
+            write(content, position, count, Channels.newChannel(response.getOutputStream()));
+            return;
+        }
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            // Tomcat streams the file by sendfile(2) once this request returns
+            request.setAttribute(SENDFILE_FILENAME, file.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, position);
+            request.setAttribute(SENDFILE_END, position + count);
+            return;
+        }
+        try (FileChannel source = FileChannel.open(file)) {
+            transferTo(source, position, count, Channels.newChannel(response.getOutputStream()));
+        }
+    }
+
+    private static void transferTo(FileChannel source, long position, long count, WritableByteChannel target) throws IOException {
+        long end = position + count;
+        while (position < end) {
+            long transferred = source.transferTo(position, end - position, target);
+            if (transferred <= 0) {
+                throw new IOException("Unexpected end of file");
+            }
+            position += transferred;
+        }
+    }
+
+    private static void write(ByteBuffer content, long position, long count, WritableByteChannel target) throws IOException {
+        ByteBuffer slice = content.duplicate();
+        slice.position((int) position).limit((int) (position + count));
+        while (slice.hasRemaining()) {
+            target.write(slice);
+        }
+    }
+
+    /**
+     * Part of file or of its cached content, read without touching the rest of it.
+     */
+    private static final class RangeInputStream extends InputStream {
+        private final FileChannel source;
+        private final boolean ownsSource;
+        private final ByteBuffer content;
+        private final long end;
+        private long position;
+
+        RangeInputStream(FileChannel source, boolean ownsSource, long position, long count) {
+            this.source = source;
+            this.ownsSource = ownsSource;
+            this.content = null;
+            this.position = position;
+            this.end = position + count;
+        }
+
+        RangeInputStream(ByteBuffer content, long position, long count) {
+            this.source = null;
+            this.ownsSource = false;
+            this.content = content;
+            this.position = position;
+            this.end = position + count;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (position >= end) {
+                return -1;
+            }
+            int count = (int) Math.min(len, end - position);
+            if (content != null) {
+                content.get((int) position, b, off, count);
+            } else {
+                count = source.read(ByteBuffer.wrap(b, off, count), position);
+                if (count < 0) {
+                    throw new IOException("Unexpected end of file");
+                }
+            }
+            position += count;
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (ownsSource) {
+                source.close();
+            }
+        }
+    }
+
+}
@@ -1,31 +1,68 @@
 package swapan.springboot.downloadserver.rest;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.core.io.Resource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
 
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import swapan.springboot.downloadserver.config.FileServerConfig;
+import swapan.springboot.downloadserver.dto.DiskUsage;
+import swapan.springboot.downloadserver.dto.FileEntry;
+import swapan.springboot.downloadserver.dto.FileInfo;
 import swapan.springboot.downloadserver.dto.FileList;
+import swapan.springboot.downloadserver.dto.SearchQuery;
+import swapan.springboot.downloadserver.services.ArchiveFormat;
+import swapan.springboot.downloadserver.services.ArchiveService;
+import swapan.springboot.downloadserver.services.BandwidthLimiter;
+import swapan.springboot.downloadserver.services.BlobStore;
+import swapan.springboot.downloadserver.services.CachedFileResource;
 import swapan.springboot.downloadserver.services.FileService;
+import swapan.springboot.downloadserver.services.MediaTypes;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.Principal;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.stream.Stream;
 
 @RestController
 @RequestMapping(path = FileServerController.URI_PREFIX)
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class FileServerController {
 
     private static final Logger LOG = LoggerFactory.getLogger(FileServerController.class);
@@ -36,40 +73,187 @@ public class FileServerController {
     public static final String UPLOAD_PREFIX = "/upload/";
     public static final String DELETE_PREFIX = "/delete/";
     public static final String CREATEDIR_PREFIX = "/createdir/";
+    public static final String ARCHIVE_PREFIX = "/archive/";
+    public static final String SEARCH_PREFIX = "/search/";
+    public static final String CONTENT_PREFIX = "/content/";
+    public static final String MOVE_PREFIX = "/move/";
+    public static final String COPY_PREFIX = "/copy/";
+    public static final String DU_PREFIX = "/du/";
+    public static final int DEFAULT_PAGE_SIZE = 1000;
+    public static final int DEFAULT_SEARCH_LIMIT = 10000;
 
     @Autowired
     private FileService fileService;
 
+    @Autowired
+    private ArchiveService archiveService;
+
+    @Autowired
+    private BandwidthLimiter bandwidthLimiter;
+
     @Autowired
     private HttpServletRequest httpServletRequest;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private FileServerConfig fileServerConfig;
+
     @GetMapping(DOWNLOAD_PREFIX + "**")
-    public ResponseEntity<Resource> downloadFile() {
+    public ResponseEntity<Resource> downloadFile(HttpServletResponse httpServletResponse) {
+        String contextPath = httpServletRequest.getRequestURI();
+        Path filePath = Paths.get(contextPath.substring((URI_PREFIX + DOWNLOAD_PREFIX).length()));
+        LOG.info("downloadFile: {}", filePath);
+        BandwidthLimiter.Transfer throttle = bandwidthLimiter.openDownload(clientId(), filePath);
         try {
-            String contextPath = httpServletRequest.getRequestURI();
-            Path filePath = Paths.get(contextPath.substring((URI_PREFIX + DOWNLOAD_PREFIX).length()));
-            LOG.info("downloadFile: {}", filePath);
             Resource resource = fileService.loadFileAsResource(filePath);
-            String contentType = "application/octet-stream";
+            FileRangeWriter.Options options = new FileRangeWriter.Options(fileServerConfig.getCacheControl(),
+                    fileServerConfig.isCompressionEnabled(), fileServerConfig.getCompressionMinSize(),
+                    !fileServerConfig.isDedup(), throttle);
+            if (resource instanceof CachedFileResource cached) {
+                FileRangeWriter.write(httpServletRequest, httpServletResponse, cached.getFile().toPath(),
+                        filePath.getFileName().toString(), options, cached.getContent(), cached.getAttributes());
+                return null;
+            }
+            if (resource.isFile()) {
+                // response is written directly, null tells spring the request has been handled
+                FileRangeWriter.write(httpServletRequest, httpServletResponse, resource.getFile().toPath(),
+                        filePath.getFileName().toString(), options);
+                return null;
+            }
             return ResponseEntity.ok()
-                    .contentType(MediaType.parseMediaType(contentType))
+                    .contentType(MediaTypes.detect(filePath))
+                    .headers(this::addCacheControl)
                     .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filePath.getFileName().toString() + "\"")
                     .body(resource);
         } catch (IOException e) {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+            return internalServerError(e);
+        } finally {
+            closeUnlessAsync(throttle);
+        }
+    }
+
+    @GetMapping(ARCHIVE_PREFIX + "**")
+    public ResponseEntity<Void> downloadArchive(@RequestParam(value = "format", defaultValue = "zip") String format,
+                                                HttpServletResponse httpServletResponse) {
+        String contextPath = httpServletRequest.getRequestURI();
+        Path filePath = Paths.get(contextPath.substring((URI_PREFIX + ARCHIVE_PREFIX).length()));
+        LOG.info("downloadArchive: {} {}", filePath, format);
+        ArchiveFormat archiveFormat;
+        try {
+            archiveFormat = ArchiveFormat.fromExtension(format);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+        String name = StringUtils.hasLength(filePath.toString()) ? filePath.getFileName().toString() : "files";
+        try {
+            httpServletResponse.setContentType(archiveFormat.getContentType());
+            httpServletResponse.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                    "attachment; filename=\"" + name + "." + archiveFormat.getExtension() + "\"");
+            archiveService.writeArchive(filePath, archiveFormat, httpServletResponse.getOutputStream());
+            // response is written directly, null tells spring the request has been handled
+            return null;
+        } catch (IllegalArgumentException e) {
+            httpServletResponse.reset();
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        } catch (IOException e) {
+            if (httpServletResponse.isCommitted()) {
+                throw new IllegalStateException("Archive failed after response was committed " + filePath, e);
+            }
+            httpServletResponse.reset();
+            return internalServerError(e);
         }
     }
 
     @GetMapping(LIST_PREFIX + "**")
-    public ResponseEntity<FileList> getFiles() {
+    public ResponseEntity<FileList> getFiles(@RequestParam(value = "limit", required = false) Integer limit,
+                                             @RequestParam(value = "cursor", required = false) String cursor) {
         try {
             String contextPath = httpServletRequest.getRequestURI();
             Path filePath = Paths.get(contextPath.substring((URI_PREFIX + LIST_PREFIX).length()));
             LOG.info("getFiles: {}", filePath);
-            FileList fileInfo = fileService.getFilesInfo(filePath);
-            return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(fileInfo);
+            FileList fileInfo;
+            if (limit == null && cursor == null) {
+                fileInfo = fileService.getFilesInfo(filePath);
+            } else {
+                fileInfo = fileService.getFilesInfo(filePath, cursor, limit == null ? DEFAULT_PAGE_SIZE : limit);
+            }
+            // spring answers 304 itself when these validators match the request
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .headers(this::addCacheControl)
+                    .eTag(listingETag(fileInfo));
+            if (fileInfo.getLastModified() != null) {
+                response.lastModified(fileInfo.getLastModified());
+            }
+            return response.body(fileInfo);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        } catch (IOException e) {
+            return internalServerError(e);
+        }
+    }
+
+    @GetMapping(value = LIST_PREFIX + "**", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<Void> streamFiles(HttpServletResponse httpServletResponse) {
+        String contextPath = httpServletRequest.getRequestURI();
+        Path filePath = Paths.get(contextPath.substring((URI_PREFIX + LIST_PREFIX).length()));
+        LOG.info("streamFiles: {}", filePath);
+        try (Stream<FileEntry> entries = fileService.streamFilesInfo(filePath)) {
+            httpServletResponse.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+            // send headers and first entry right away, the rest goes out as response buffer fills
+            writeNdjson(entries.iterator(), httpServletResponse.getOutputStream(), false);
+            // response is written directly, null tells spring the request has been handled
+            return null;
+        } catch (IOException | UncheckedIOException e) {
+            if (httpServletResponse.isCommitted()) {
+                throw new IllegalStateException("Listing failed after response was committed " + filePath, e);
+            }
+            return internalServerError(e);
+        }
+    }
+
+    @GetMapping(SEARCH_PREFIX + "**")
+    public ResponseEntity<Void> search(@RequestParam(value = "glob", required = false) String glob,
+                                       @RequestParam(value = "regex", required = false) String regex,
+                                       @RequestParam(value = "type", required = false) String type,
+                                       @RequestParam(value = "minSize", required = false) Long minSize,
+                                       @RequestParam(value = "maxSize", required = false) Long maxSize,
+                                       @RequestParam(value = "modifiedAfter", required = false) Instant modifiedAfter,
+                                       @RequestParam(value = "modifiedBefore", required = false) Instant modifiedBefore,
+                                       @RequestParam(value = "maxDepth", defaultValue = "" + Integer.MAX_VALUE) int maxDepth,
+                                       @RequestParam(value = "limit", defaultValue = "" + DEFAULT_SEARCH_LIMIT) int limit,
+                                       HttpServletResponse httpServletResponse) {
+        String contextPath = httpServletRequest.getRequestURI();
+        Path filePath = Paths.get(contextPath.substring((URI_PREFIX + SEARCH_PREFIX).length()));
+        LOG.info("search: {}", filePath);
+        SearchQuery query = new SearchQuery(glob, regex, type, minSize, maxSize, modifiedAfter, modifiedBefore, maxDepth, limit);
+        try (Stream<FileEntry> entries = fileService.search(filePath, query)) {
+            httpServletResponse.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+            // matches are sent as they are found
+            writeNdjson(entries.iterator(), httpServletResponse.getOutputStream(), true);
+            // response is written directly, null tells spring the request has been handled
+            return null;
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        } catch (IOException | UncheckedIOException e) {
+            if (httpServletResponse.isCommitted()) {
+                throw new IllegalStateException("Search failed after response was committed " + filePath, e);
+            }
+            return internalServerError(e);
+        }
+    }
+
+    @GetMapping(DU_PREFIX + "**")
+    public ResponseEntity<DiskUsage> getDiskUsage() {
+        try {
+            String contextPath = httpServletRequest.getRequestURI();
+            Path filePath = Paths.get(contextPath.substring((URI_PREFIX + DU_PREFIX).length()));
+            LOG.info("getDiskUsage: {}", filePath);
+            return ResponseEntity.ok(fileService.getDiskUsage(filePath));
         } catch (IOException e) {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+            return internalServerError(e);
         }
     }
 
@@ -79,10 +263,46 @@ public class FileServerController {
             String contextPath = httpServletRequest.getRequestURI();
             Path filePath = Paths.get(contextPath.substring((URI_PREFIX + UPLOAD_PREFIX).length()));
             LOG.info("upload: {}", filePath);
-            fileService.saveFile(filePath, file.getInputStream());
+            try (BandwidthLimiter.Transfer throttle = bandwidthLimiter.openUpload(clientId(), filePath)) {
+                if (throttle != null) {
+                    // multipart body has been received by now, the debt delays the client's next upload
+                    throttle.reserve(file.getSize());
+                }
+                fileService.saveFile(filePath, file.getInputStream());
+            }
+            return ResponseEntity.ok().build();
+        } catch (IOException e) {
+            return internalServerError(e);
+        }
+    }
+
+    @PutMapping(UPLOAD_PREFIX + "**")
+    public ResponseEntity<Resource> fileUploadRaw(HttpServletResponse httpServletResponse) {
+        try {
+            String contextPath = httpServletRequest.getRequestURI();
+            Path filePath = Paths.get(contextPath.substring((URI_PREFIX + UPLOAD_PREFIX).length()));
+            LOG.info("upload raw: {}", filePath);
+            BandwidthLimiter.Transfer throttle = bandwidthLimiter.openUpload(clientId(), filePath);
+            try {
+                if (throttle != null && httpServletRequest.isAsyncSupported()) {
+                    // request thread returns at once, the upload completes the response once the body is received
+                    AsyncUpload upload = new AsyncUpload(fileService, filePath);
+                    try {
+                        ThrottledStreams.receive(httpServletRequest, httpServletResponse, throttle, upload);
+                    } catch (IOException | RuntimeException e) {
+                        upload.discard();
+                        throw e;
+                    }
+                    return null;
+                }
+                fileService.saveFile(filePath, throttled(httpServletRequest.getInputStream(), throttle),
+                        httpServletRequest.getContentLengthLong());
+            } finally {
+                closeUnlessAsync(throttle);
+            }
             return ResponseEntity.ok().build();
         } catch (IOException e) {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+            return internalServerError(e);
         }
     }
 
@@ -95,7 +315,7 @@ public class FileServerController {
             fileService.delete(filePath);
             return ResponseEntity.ok().build();
         } catch (IOException e) {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+            return internalServerError(e);
         }
     }
 
@@ -108,8 +328,210 @@ public class FileServerController {
             fileService.createDirectory(filePath);
             return ResponseEntity.ok().build();
         } catch (IOException e) {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+            return internalServerError(e);
+        }
+    }
+
+    @PostMapping(MOVE_PREFIX + "**")
+    public ResponseEntity<Void> move(@RequestParam("target") String target) {
+        String contextPath = httpServletRequest.getRequestURI();
+        Path filePath = Paths.get(contextPath.substring((URI_PREFIX + MOVE_PREFIX).length()));
+        LOG.info("move: {} -> {}", filePath, target);
+        return moveOrCopy(() -> fileService.move(filePath, Paths.get(target)));
+    }
+
+    @PostMapping(COPY_PREFIX + "**")
+    public ResponseEntity<Void> copy(@RequestParam("target") String target) {
+        String contextPath = httpServletRequest.getRequestURI();
+        Path filePath = Paths.get(contextPath.substring((URI_PREFIX + COPY_PREFIX).length()));
+        LOG.info("copy: {} -> {}", filePath, target);
+        return moveOrCopy(() -> fileService.copy(filePath, Paths.get(target)));
+    }
+
+    private ResponseEntity<Void> moveOrCopy(FileOperation operation) {
+        try {
+            operation.run();
+            return ResponseEntity.ok().build();
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        } catch (NoSuchFileException e) {
+            return ResponseEntity.notFound().build();
+        } catch (FileAlreadyExistsException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        } catch (IOException e) {
+            return internalServerError(e);
+        }
+    }
+
+    private interface FileOperation {
+        void run() throws IOException;
+    }
+
+    /**
+     * Bandwidth is shared per authenticated user, per IP address otherwise.
+     */
+    private String clientId() {
+        Principal principal = httpServletRequest.getUserPrincipal();
+        return principal != null ? principal.getName() : httpServletRequest.getRemoteAddr();
+    }
+
+    private static InputStream throttled(InputStream inputStream, BandwidthLimiter.Transfer throttle) {
+        return throttle == null ? inputStream : ThrottledStreams.input(inputStream, throttle);
+    }
+
+    /**
+     * Transfer still running in async mode is closed once the response completes.
+     */
+    private void closeUnlessAsync(BandwidthLimiter.Transfer throttle) {
+        if (throttle != null && !httpServletRequest.isAsyncStarted()) {
+            throttle.close();
+        }
+    }
+
+    /**
+     * Limited raw upload received in async mode, written aside and hashed on the way like {@link FileService#saveFile}.
+     */
+    private static final class AsyncUpload implements ThrottledStreams.BodyConsumer {
+        private final FileService fileService;
+        private final Path filePath;
+        private final Path tempFile;
+        private final FileChannel channel;
+        private final MessageDigest digest = BlobStore.newDigest();
+
+        AsyncUpload(FileService fileService, Path filePath) throws IOException {
+            this.fileService = fileService;
+            this.filePath = filePath;
+            tempFile = fileService.createTempFile(filePath);
+            channel = FileChannel.open(tempFile, StandardOpenOption.WRITE);
+        }
+
+        @Override
+        public void accept(byte[] b, int off, int len) throws IOException {
+            digest.update(b, off, len);
+            ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+
+        @Override
+        public void complete(HttpServletRequest request, HttpServletResponse response) {
+            try {
+                channel.close();
+                fileService.commitFile(tempFile, filePath, HexFormat.of().formatHex(digest.digest()));
+                response.setStatus(HttpServletResponse.SC_OK);
+            } catch (IOException | RuntimeException e) {
+                failed(request, response, e);
+            }
+        }
+
+        @Override
+        public void failed(HttpServletRequest request, HttpServletResponse response, Throwable e) {
+            LOG.error("upload failed: {}", filePath, e);
+            discard();
+            FileServerMetricsFilter.recordError(request, e);
+            if (!response.isCommitted()) {
+                response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            }
+        }
+
+        void discard() {
+            try {
+                channel.close();
+                Files.deleteIfExists(tempFile);
+            } catch (IOException e) {
+                LOG.warn("cannot delete {}", tempFile, e);
+            }
+        }
+    }
+
+    /**
+     * 500 response for failure which is counted by {@link FileServerMetricsFilter}.
+     */
+    private <T> ResponseEntity<T> internalServerError(Exception e) {
+        FileServerMetricsFilter.recordError(httpServletRequest, e);
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+    }
+
+    /**
+     * Path which leads out of the storage roots, thrown by any of the operations.
+     */
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<Void> handleBadRequest() {
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+    }
+
+    @GetMapping(CONTENT_PREFIX + "{sha256}")
+    public ResponseEntity<Void> hasContent(@PathVariable("sha256") String sha256) {
+        LOG.info("hasContent: {}", sha256);
+        try {
+            return fileService.hasContent(sha256.toLowerCase(Locale.ROOT))
+                    ? ResponseEntity.ok().build() : ResponseEntity.notFound().build();
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+    }
+
+    @PostMapping(CONTENT_PREFIX + "{sha256}/**")
+    public ResponseEntity<Void> linkContent(@PathVariable("sha256") String sha256) {
+        try {
+            String contextPath = httpServletRequest.getRequestURI();
+            Path filePath = Paths.get(contextPath.substring((URI_PREFIX + CONTENT_PREFIX + sha256 + "/").length()));
+            LOG.info("linkContent: {} {}", filePath, sha256);
+            fileService.linkContent(sha256.toLowerCase(Locale.ROOT), filePath);
+            return ResponseEntity.ok().build();
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        } catch (NoSuchFileException e) {
+            return ResponseEntity.notFound().build();
+        } catch (IOException e) {
+            return internalServerError(e);
+        }
+    }
+
+    private void writeNdjson(Iterator<FileEntry> entries, OutputStream out, boolean flushEveryEntry) throws IOException {
+        boolean first = true;
+        while (entries.hasNext()) {
+            out.write(objectMapper.writeValueAsBytes(entries.next()));
+            out.write('\n');
+            if (first || flushEveryEntry) {
+                out.flush();
+                first = false;
+            }
+        }
+    }
+
+    private void addCacheControl(HttpHeaders headers) {
+        if (StringUtils.hasText(fileServerConfig.getCacheControl())) {
+            headers.setCacheControl(fileServerConfig.getCacheControl());
+        }
+    }
+
+    /**
+     * Weak entity tag over everything the listing shows.
+     */
+    private static String listingETag(FileList fileList) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        for (FileEntry entry : fileList.getDirectoryInfo()) {
+            update(digest, entry);
         }
+        for (FileEntry entry : fileList.getFileInfo()) {
+            update(digest, entry);
+        }
+        digest.update(String.valueOf(fileList.getNextCursor()).getBytes(StandardCharsets.UTF_8));
+        return "W/\"" + HexFormat.of().formatHex(digest.digest()) + "\"";
+    }
+
+    private static void update(MessageDigest digest, FileEntry entry) {
+        String size = entry instanceof FileInfo fileInfo ? String.valueOf(fileInfo.getSize()) : "";
+        String line = entry.getType() + '/' + entry.getFilePath() + '/' + size + '/'
+                + entry.getLastModified() + '/' + entry.getPermissions() + '\n';
+        digest.update(line.getBytes(StandardCharsets.UTF_8));
     }
 
 }
@@ -0,0 +1,330 @@
+package swapan.springboot.downloadserver.rest;
+
+import swapan.springboot.downloadserver.config.FileServerConfig;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.LongTaskTimer;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.config.MeterFilter;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records latency histogram, requests in flight, bytes in and out and errors of every file server request,
+ * tagged by operation, the first path segment after {@code /services/files}. With metrics prefix depth set,
+ * requests are also tagged by that many leading segments of the file path, {@link #prefixLimit} bounds the number
+ * of distinct prefixes.
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class FileServerMetricsFilter extends OncePerRequestFilter {
+
+    static final String METER_PREFIX = "fileserver.";
+    static final String REQUESTS = "fileserver.requests";
+    static final String ACTIVE_REQUESTS = "fileserver.requests.active";
+    static final String BYTES_IN = "fileserver.bytes.in";
+    static final String BYTES_OUT = "fileserver.bytes.out";
+    static final String ERRORS = "fileserver.errors";
+    static final String PREFIX_TAG = "prefix";
+    static final String OTHER = "other";
+
+    private static final String EXCEPTION_ATTRIBUTE = FileServerMetricsFilter.class.getName() + ".exception";
+
+    /**
+     * Known operations, anything else is tagged as other so the number of time series stays bounded.
+     */
+    private static final Set<String> OPERATIONS = Set.of("list", "download", "upload", "delete", "createdir",
+            "archive", "search", "move", "copy", "du", "content", "batch", "sessions", "delete-jobs", "stats");
+
+    /**
+     * Operations whose path after the operation segment is a file path.
+     */
+    private static final Set<String> PATH_OPERATIONS = Set.of("list", "download", "upload", "delete", "createdir",
+            "archive", "search", "move", "copy", "du");
+
+    private final MeterRegistry meterRegistry;
+    private final int prefixDepth;
+
+    /**
+     * Meters go to the global registry when actuator does not provide one, e.g. in web slice tests.
+     */
+    @Autowired
+    public FileServerMetricsFilter(FileServerConfig fileServerConfig, ObjectProvider<MeterRegistry> meterRegistry) {
+        this(fileServerConfig.getMetricsPrefixDepth(), meterRegistry.getIfAvailable(() -> Metrics.globalRegistry));
+    }
+
+    FileServerMetricsFilter(int prefixDepth, MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.prefixDepth = prefixDepth;
+    }
+
+    /**
+     * Prefixes come from client chosen paths and every one of them is a histogram series of its own. Prefixes
+     * beyond the first {@code maxValues} ones are recorded as {@code other}, so totals still count every request.
+     * @param maxValues number of distinct prefixes recorded.
+     * @return filter to be added to the meter registry.
+     */
+    public static MeterFilter prefixLimit(int maxValues) {
+        Set<String> prefixes = new HashSet<>();
+        return new MeterFilter() {
+            @Override
+            public Meter.Id map(Meter.Id id) {
+                String prefix = id.getTag(PREFIX_TAG);
+                if (prefix == null || !id.getName().startsWith(METER_PREFIX)) {
+                    return id;
+                }
+                synchronized (prefixes) {
+                    if (prefixes.contains(prefix) || prefixes.size() < maxValues && prefixes.add(prefix)) {
+                        return id;
+                    }
+                }
+                return id.replaceTags(Tags.of(id.getTagsAsIterable()).and(PREFIX_TAG, OTHER));
+            }
+        };
+    }
+
+    /**
+     * Counts error which was handled by the controller and turned into error response.
+     * @param request request that failed.
+     * @param e cause of the failure.
+     */
+    public static void recordError(HttpServletRequest request, Throwable e) {
+        request.setAttribute(EXCEPTION_ATTRIBUTE, e);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !request.getRequestURI().startsWith(FileServerController.URI_PREFIX + "/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        String path = request.getRequestURI().substring(FileServerController.URI_PREFIX.length() + 1);
+        int slash = path.indexOf('/');
+        String operation = slash < 0 ? path : path.substring(0, slash);
+        Tags operationTags = Tags.of("operation", OPERATIONS.contains(operation) ? operation : OTHER);
+        Tags tags = prefixDepth > 0 && PATH_OPERATIONS.contains(operation)
+                ? operationTags.and(PREFIX_TAG, prefix(slash < 0 ? "" : path.substring(slash + 1))) : operationTags;
+        CountingRequest countingRequest = new CountingRequest(request);
+        CountingResponse countingResponse = new CountingResponse(response);
+        LongTaskTimer.Sample active = LongTaskTimer.builder(ACTIVE_REQUESTS).tags(tags).register(meterRegistry).start();
+        long start = System.nanoTime();
+        Throwable error = null;
+        try {
+            filterChain.doFilter(countingRequest, countingResponse);
+        } catch (IOException | ServletException | RuntimeException e) {
+            error = e;
+            throw e;
+        } finally {
+            if (error == null && request.isAsyncStarted()) {
+                // limited transfers go on in async mode after the request thread has returned
+                request.getAsyncContext().addListener(new AsyncListener() {
+                    @Override
+                    public void onComplete(AsyncEvent event) {
+                        record(tags, active, start, countingRequest, countingResponse, null);
+                    }
+
+                    @Override
+                    public void onTimeout(AsyncEvent event) {
+                    }
+
+                    @Override
+                    public void onError(AsyncEvent event) {
+                        if (request.getAttribute(EXCEPTION_ATTRIBUTE) == null) {
+                            recordError(request, event.getThrowable());
+                        }
+                    }
+
+                    @Override
+                    public void onStartAsync(AsyncEvent event) {
+                    }
+                });
+            } else {
+                record(tags, active, start, countingRequest, countingResponse, error);
+            }
+        }
+    }
+
+    private void record(Tags tags, LongTaskTimer.Sample active, long start, CountingRequest countingRequest,
+                        CountingResponse countingResponse, Throwable error) {
+        long duration = System.nanoTime() - start;
+        active.stop();
+        HttpServletRequest request = (HttpServletRequest) countingRequest.getRequest();
+        HttpServletResponse response = (HttpServletResponse) countingResponse.getResponse();
+        if (error == null) {
+            error = (Throwable) request.getAttribute(EXCEPTION_ATTRIBUTE);
+        }
+        int status = error != null && response.getStatus() < 400 ? 500 : response.getStatus();
+        Timer.builder(REQUESTS)
+                .tags(tags)
+                .tag("status", Integer.toString(status))
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(duration, TimeUnit.NANOSECONDS);
+        // multipart bodies are read by the container past the wrapper, their length is known up front
+        long bytesIn = Math.max(countingRequest.count, request.getContentLengthLong());
+        if (bytesIn > 0) {
+            Counter.builder(BYTES_IN).baseUnit("bytes").tags(tags).register(meterRegistry).increment(bytesIn);
+        }
+        long bytesOut = countingResponse.count + sendfileLength(request);
+        if (bytesOut > 0) {
+            Counter.builder(BYTES_OUT).baseUnit("bytes").tags(tags).register(meterRegistry).increment(bytesOut);
+        }
+        if (error != null) {
+            Counter.builder(ERRORS).tags(tags).tag("exception", error.getClass().getSimpleName())
+                    .register(meterRegistry).increment();
+        }
+    }
+
+    private String prefix(String filePath) {
+        int end = 0;
+        for (int i = 0; i < prefixDepth; i++) {
+            int slash = filePath.indexOf('/', end == 0 ? 0 : end + 1);
+            if (slash < 0) {
+                // last segment is a file name, not a tree
+                return filePath.substring(0, end);
+            }
+            end = slash;
+        }
+        return filePath.substring(0, end);
+    }
+
+    /**
+     * Bytes streamed by Tomcat sendfile after the request returned, they never pass through the response stream.
+     */
+    private static long sendfileLength(HttpServletRequest request) {
+        if (request.getAttribute(FileRangeWriter.SENDFILE_FILENAME) instanceof String
+                && request.getAttribute(FileRangeWriter.SENDFILE_START) instanceof Long start
+                && request.getAttribute(FileRangeWriter.SENDFILE_END) instanceof Long end) {
+            return end - start;
+        }
+        return 0;
+    }
+
+    private static class CountingRequest extends HttpServletRequestWrapper {
+        private long count;
+        private ServletInputStream inputStream;
+
+        CountingRequest(HttpServletRequest request) {
+            super(request);
+        }
+
+        @Override
+        public ServletInputStream getInputStream() throws IOException {
+            if (inputStream == null) {
+                ServletInputStream delegate = super.getInputStream();
+                inputStream = new ServletInputStream() {
+                    @Override
+                    public int read() throws IOException {
+                        int b = delegate.read();
+                        if (b >= 0) {
+                            count++;
+                        }
+                        return b;
+                    }
+
+                    @Override
+                    public int read(byte[] b, int off, int len) throws IOException {
+                        int read = delegate.read(b, off, len);
+                        if (read > 0) {
+                            count += read;
+                        }
+                        return read;
+                    }
+
+                    @Override
+                    public boolean isFinished() {
+                        return delegate.isFinished();
+                    }
+
+                    @Override
+                    public boolean isReady() {
+                        return delegate.isReady();
+                    }
+
+                    @Override
+                    public void setReadListener(ReadListener readListener) {
+                        delegate.setReadListener(readListener);
+                    }
+                };
+            }
+            return inputStream;
+        }
+    }
+
+    private static class CountingResponse extends HttpServletResponseWrapper {
+        private long count;
+        private ServletOutputStream outputStream;
+
+        CountingResponse(HttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (outputStream == null) {
+                ServletOutputStream delegate = super.getOutputStream();
+                outputStream = new ServletOutputStream() {
+                    @Override
+                    public void write(int b) throws IOException {
+                        delegate.write(b);
+                        count++;
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        delegate.write(b, off, len);
+                        count += len;
+                    }
+
+                    @Override
+                    public void flush() throws IOException {
+                        delegate.flush();
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        delegate.close();
+                    }
+
+                    @Override
+                    public boolean isReady() {
+                        return delegate.isReady();
+                    }
+
+                    @Override
+                    public void setWriteListener(WriteListener writeListener) {
+                        delegate.setWriteListener(writeListener);
+                    }
+                };
+            }
+            return outputStream;
+        }
+    }
+
+}
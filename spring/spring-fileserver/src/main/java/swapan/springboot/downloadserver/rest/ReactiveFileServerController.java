@@ -0,0 +1,181 @@
+package swapan.springboot.downloadserver.rest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.multipart.FilePart;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestPart;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import swapan.springboot.downloadserver.config.FileServerConfig;
+import swapan.springboot.downloadserver.dto.FileList;
+import swapan.springboot.downloadserver.services.BandwidthLimiter;
+import swapan.springboot.downloadserver.services.MediaTypes;
+import swapan.springboot.downloadserver.services.ReactiveFileService;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.Principal;
+import java.time.Duration;
+import java.util.function.Function;
+
+import static swapan.springboot.downloadserver.rest.FileServerController.CREATEDIR_PREFIX;
+import static swapan.springboot.downloadserver.rest.FileServerController.DELETE_PREFIX;
+import static swapan.springboot.downloadserver.rest.FileServerController.DOWNLOAD_PREFIX;
+import static swapan.springboot.downloadserver.rest.FileServerController.LIST_PREFIX;
+import static swapan.springboot.downloadserver.rest.FileServerController.UPLOAD_PREFIX;
+import static swapan.springboot.downloadserver.rest.FileServerController.URI_PREFIX;
+
+/**
+ * Same API as {@link FileServerController} for reactive server, active with
+ * {@code spring.main.web-application-type=reactive}. Nothing here blocks event loop threads.
+ */
+@RestController
+@RequestMapping(path = URI_PREFIX)
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveFileServerController {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ReactiveFileServerController.class);
+
+    @Autowired
+    private ReactiveFileService reactiveFileService;
+
+    @Autowired
+    private BandwidthLimiter bandwidthLimiter;
+
+    @Autowired
+    private FileServerConfig fileServerConfig;
+
+    @GetMapping(DOWNLOAD_PREFIX + "**")
+    public Mono<ResponseEntity<Flux<DataBuffer>>> downloadFile(ServerWebExchange exchange) {
+        Path filePath = filePath(exchange.getRequest(), DOWNLOAD_PREFIX);
+        LOG.info("downloadFile: {}", filePath);
+        return reactiveFileService.getFileInfo(filePath)
+                .map(fileInfo -> ResponseEntity.ok()
+                        .contentType(MediaTypes.detect(filePath))
+                        .contentLength(fileInfo.getSize())
+                        .headers(headers -> {
+                            // deduplicated files carry the time their content was first stored, entity tag only
+                            if (!fileServerConfig.isDedup()) {
+                                headers.setLastModified(fileInfo.getLastModified());
+                            }
+                        })
+                        .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filePath.getFileName().toString() + "\"")
+                        .body(throttled(reactiveFileService.readFile(filePath, exchange.getResponse().bufferFactory()),
+                                clientId(exchange), client -> bandwidthLimiter.openDownload(client, filePath))))
+                .onErrorResume(IllegalArgumentException.class, e -> badRequest())
+                .onErrorResume(IOException.class, e -> internalServerError());
+    }
+
+    @GetMapping(LIST_PREFIX + "**")
+    public Mono<ResponseEntity<FileList>> getFiles(ServerHttpRequest request) {
+        Path filePath = filePath(request, LIST_PREFIX);
+        LOG.info("getFiles: {}", filePath);
+        return reactiveFileService.getFilesInfo(filePath)
+                .map(fileList -> ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(fileList))
+                .onErrorResume(IllegalArgumentException.class, e -> badRequest())
+                .onErrorResume(IOException.class, e -> internalServerError());
+    }
+
+    @PostMapping(UPLOAD_PREFIX + "**")
+    public Mono<ResponseEntity<Void>> fileUpload(ServerWebExchange exchange, @RequestPart("file") Mono<FilePart> file) {
+        Path filePath = filePath(exchange.getRequest(), UPLOAD_PREFIX);
+        LOG.info("upload: {}", filePath);
+        return okOrError(file.flatMap(part -> reactiveFileService.saveFile(filePath, throttled(part.content(),
+                clientId(exchange), client -> bandwidthLimiter.openUpload(client, filePath)))));
+    }
+
+    @PutMapping(UPLOAD_PREFIX + "**")
+    public Mono<ResponseEntity<Void>> fileUploadRaw(ServerWebExchange exchange) {
+        Path filePath = filePath(exchange.getRequest(), UPLOAD_PREFIX);
+        LOG.info("upload raw: {}", filePath);
+        return okOrError(reactiveFileService.saveFile(filePath, throttled(exchange.getRequest().getBody(),
+                clientId(exchange), client -> bandwidthLimiter.openUpload(client, filePath))));
+    }
+
+    @DeleteMapping(DELETE_PREFIX + "**")
+    public Mono<ResponseEntity<Void>> delete(ServerHttpRequest request) {
+        Path filePath = filePath(request, DELETE_PREFIX);
+        LOG.info("delete: {}", filePath);
+        return okOrError(reactiveFileService.delete(filePath));
+    }
+
+    @PostMapping(CREATEDIR_PREFIX + "**")
+    public Mono<ResponseEntity<Void>> createDirectory(ServerHttpRequest request) {
+        Path filePath = filePath(request, CREATEDIR_PREFIX);
+        LOG.info("createDirectory: {}", filePath);
+        return okOrError(reactiveFileService.createDirectory(filePath));
+    }
+
+    private static Path filePath(ServerHttpRequest request, String prefix) {
+        String contextPath = request.getPath().pathWithinApplication().value();
+        return Paths.get(contextPath.substring((URI_PREFIX + prefix).length()));
+    }
+
+    /**
+     * Bandwidth is shared per authenticated user, per IP address otherwise.
+     */
+    private static Mono<String> clientId(ServerWebExchange exchange) {
+        InetSocketAddress remoteAddress = exchange.getRequest().getRemoteAddress();
+        return exchange.getPrincipal()
+                .map(Principal::getName)
+                .defaultIfEmpty(remoteAddress == null ? "" : remoteAddress.getHostString());
+    }
+
+    /**
+     * Buffers are held back by delay instead of sleep, no event loop thread waits for tokens. Transfer is opened
+     * on subscription, so a body that is never sent does not take a share of bandwidth.
+     */
+    private static Flux<DataBuffer> throttled(Flux<DataBuffer> content, Mono<String> clientId,
+                                              Function<String, BandwidthLimiter.Transfer> open) {
+        return clientId.flatMapMany(client -> {
+            BandwidthLimiter.Transfer throttle = open.apply(client);
+            if (throttle == null) {
+                return content;
+            }
+            return content
+                    .concatMap(buffer -> {
+                        long delay = throttle.reserve(buffer.readableByteCount());
+                        return delay > 0 ? Mono.delay(Duration.ofNanos(delay)).thenReturn(buffer) : Mono.just(buffer);
+                    })
+                    .doOnDiscard(DataBuffer.class, DataBufferUtils::release)
+                    .doFinally(signal -> throttle.close());
+        });
+    }
+
+    /**
+     * Path which leads out of the storage roots.
+     */
+    private static <T> Mono<ResponseEntity<T>> badRequest() {
+        return Mono.just(ResponseEntity.status(HttpStatus.BAD_REQUEST).build());
+    }
+
+    private static <T> Mono<ResponseEntity<T>> internalServerError() {
+        return Mono.just(ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build());
+    }
+
+    private static Mono<ResponseEntity<Void>> okOrError(Mono<Void> operation) {
+        return operation.then(Mono.fromSupplier(() -> ResponseEntity.ok().<Void>build()))
+                .onErrorResume(IllegalArgumentException.class, e -> badRequest())
+                .onErrorResume(IOException.class, e -> internalServerError());
+    }
+
+}
@@ -0,0 +1,47 @@
+package swapan.springboot.downloadserver.rest;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import swapan.springboot.downloadserver.dto.CacheStats;
+import swapan.springboot.downloadserver.dto.HotCacheStats;
+import swapan.springboot.downloadserver.dto.RebalanceStats;
+import swapan.springboot.downloadserver.services.FileService;
+import swapan.springboot.downloadserver.services.HotFileCache;
+import swapan.springboot.downloadserver.services.ListingCache;
+
+@RestController
+@RequestMapping(path = FileServerController.URI_PREFIX + StatsController.STATS_PREFIX)
+public class StatsController {
+
+    public static final String STATS_PREFIX = "/stats";
+
+    @Autowired
+    private ListingCache listingCache;
+
+    @Autowired
+    private HotFileCache hotFileCache;
+
+    @Autowired
+    private FileService fileService;
+
+    @GetMapping("/listing-cache")
+    public ResponseEntity<CacheStats> getListingCacheStats() {
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(listingCache.getStats());
+    }
+
+    @GetMapping("/hot-cache")
+    public ResponseEntity<HotCacheStats> getHotCacheStats() {
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(hotFileCache.getStats());
+    }
+
+    @GetMapping("/rebalance")
+    public ResponseEntity<RebalanceStats> getRebalanceStats() {
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(fileService.getRebalanceStats());
+    }
+
+}
@@ -0,0 +1,367 @@
+package swapan.springboot.downloadserver.rest;
+
+import swapan.springboot.downloadserver.services.BandwidthLimiter;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transfers paced by {@link BandwidthLimiter}. Requests supporting async I/O are paced by {@link WriteListener} and
+ * {@link ReadListener}: when tokens run out the transfer stops writing or reading, a timer resumes it on a
+ * container thread once they are paid off, and no thread waits meanwhile. Streams for requests without async
+ * support sleep on the calling thread instead.
+ */
+final class ThrottledStreams {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ThrottledStreams.class);
+
+    /**
+     * Largest amount sent per reservation, keeps bursts short and pacing smooth.
+     */
+    private static final int CHUNK_SIZE = 16 * 1024;
+
+    /**
+     * Only wakes transfers up, their I/O runs on container threads through {@link AsyncContext#start}.
+     */
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "throttle-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private ThrottledStreams() {
+    }
+
+    /**
+     * Receiver of request body read by {@link #receive}, called on container threads one at a time.
+     */
+    interface BodyConsumer {
+
+        void accept(byte[] b, int off, int len) throws IOException;
+
+        /**
+         * Whole body has been received, sets status of the response.
+         */
+        void complete(HttpServletRequest request, HttpServletResponse response);
+
+        /**
+         * Body could not be received, sets status of the response unless the client is gone.
+         */
+        void failed(HttpServletRequest request, HttpServletResponse response, Throwable e);
+    }
+
+    /**
+     * Sends body in async mode, the request thread returns at once. Body and transfer are closed when the response
+     * completes or the client goes away.
+     * @param request request supporting async I/O.
+     * @param response response with status and headers set.
+     * @param body content of the response.
+     * @param transfer limit of the download.
+     * @throws IOException
+     */
+    static void send(HttpServletRequest request, HttpServletResponse response, InputStream body,
+                     BandwidthLimiter.Transfer transfer) throws IOException {
+        AsyncContext async = request.startAsync();
+        // limited transfer of large file takes as long as it takes
+        async.setTimeout(0);
+        Sender sender = new Sender(async, response.getOutputStream(), body, transfer);
+        async.addListener(sender);
+        sender.out.setWriteListener(sender);
+    }
+
+    /**
+     * Receives request body in async mode, the request thread returns at once. Transfer is closed when the
+     * response completes or the client goes away.
+     * @param request request supporting async I/O.
+     * @param response response completed once the consumer took the whole body.
+     * @param transfer limit of the upload.
+     * @param consumer receiver of the body.
+     * @throws IOException
+     */
+    static void receive(HttpServletRequest request, HttpServletResponse response, BandwidthLimiter.Transfer transfer,
+                        BodyConsumer consumer) throws IOException {
+        AsyncContext async = request.startAsync();
+        async.setTimeout(0);
+        Receiver receiver = new Receiver(async, request.getInputStream(), (HttpServletRequest) async.getRequest(),
+                response, transfer, consumer);
+        async.addListener(receiver);
+        receiver.in.setReadListener(receiver);
+    }
+
+    static OutputStream output(OutputStream out, BandwidthLimiter.Transfer transfer) {
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(int b) throws IOException {
+                pause(transfer.reserve(1));
+                out.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                while (len > 0) {
+                    int chunk = Math.min(len, CHUNK_SIZE);
+                    pause(transfer.reserve(chunk));
+                    out.write(b, off, chunk);
+                    off += chunk;
+                    len -= chunk;
+                }
+            }
+        };
+    }
+
+    static InputStream input(InputStream in, BandwidthLimiter.Transfer transfer) {
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                int b = in.read();
+                if (b >= 0) {
+                    pause(transfer.reserve(1));
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int read = in.read(b, off, Math.min(len, CHUNK_SIZE));
+                if (read > 0) {
+                    // next read is delayed, so the sender is held back by TCP flow control
+                    pause(transfer.reserve(read));
+                }
+                return read;
+            }
+        };
+    }
+
+    private static void pause(long nanos) throws IOException {
+        if (nanos <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while throttled");
+        }
+    }
+
+    /**
+     * Continues the transfer on a container thread after the delay, unless it has finished meanwhile.
+     */
+    private static void resumeLater(AsyncContext async, long nanos, Runnable resume) {
+        TIMER.schedule(() -> {
+            try {
+                async.start(resume);
+            } catch (IllegalStateException e) {
+                // response completed meanwhile, client went away
+            }
+        }, nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Writes chunk by chunk while the output is ready and tokens last. A chunk is read and its tokens reserved
+     * before it is written, so after a pause it is written right away.
+     */
+    private static final class Sender implements WriteListener, AsyncListener {
+        private final AsyncContext async;
+        private final ServletOutputStream out;
+        private final InputStream body;
+        private final BandwidthLimiter.Transfer transfer;
+        private final byte[] buffer = new byte[CHUNK_SIZE];
+        private int pending;
+        private boolean finished;
+
+        Sender(AsyncContext async, ServletOutputStream out, InputStream body, BandwidthLimiter.Transfer transfer) {
+            this.async = async;
+            this.out = out;
+            this.body = body;
+            this.transfer = transfer;
+        }
+
+        @Override
+        public synchronized void onWritePossible() throws IOException {
+            // container calls again once output is ready, the timer once tokens are paid off
+            while (!finished && out.isReady()) {
+                if (pending > 0) {
+                    out.write(buffer, 0, pending);
+                    pending = 0;
+                    continue;
+                }
+                int read = body.readNBytes(buffer, 0, CHUNK_SIZE);
+                if (read == 0) {
+                    finished = true;
+                    async.complete();
+                    return;
+                }
+                pending = read;
+                long delay = transfer.reserve(read);
+                if (delay > 0) {
+                    resumeLater(async, delay, this::resume);
+                    return;
+                }
+            }
+        }
+
+        private void resume() {
+            try {
+                onWritePossible();
+            } catch (IOException | RuntimeException e) {
+                onError(e);
+            }
+        }
+
+        @Override
+        public synchronized void onError(Throwable t) {
+            if (finished) {
+                return;
+            }
+            LOG.info("throttled download failed: {}", t.toString());
+            finished = true;
+            async.complete();
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            close();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            close();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+
+        private void close() {
+            transfer.close();
+            try {
+                body.close();
+            } catch (IOException e) {
+                LOG.warn("cannot close body", e);
+            }
+        }
+    }
+
+    /**
+     * Reads chunk by chunk while input is ready and tokens last, the sender is held back by TCP flow control
+     * while reading is paused.
+     */
+    private static final class Receiver implements ReadListener, AsyncListener {
+        private final AsyncContext async;
+        private final ServletInputStream in;
+        private final HttpServletRequest request;
+        private final HttpServletResponse response;
+        private final BandwidthLimiter.Transfer transfer;
+        private final BodyConsumer consumer;
+        private final byte[] buffer = new byte[CHUNK_SIZE];
+        private boolean finished;
+
+        Receiver(AsyncContext async, ServletInputStream in, HttpServletRequest request, HttpServletResponse response,
+                 BandwidthLimiter.Transfer transfer, BodyConsumer consumer) {
+            this.async = async;
+            this.in = in;
+            this.request = request;
+            this.response = response;
+            this.transfer = transfer;
+            this.consumer = consumer;
+        }
+
+        @Override
+        public synchronized void onDataAvailable() throws IOException {
+            while (!finished && in.isReady()) {
+                int read = in.read(buffer);
+                if (read < 0) {
+                    break;
+                }
+                consumer.accept(buffer, 0, read);
+                long delay = transfer.reserve(read);
+                if (delay > 0) {
+                    resumeLater(async, delay, this::resume);
+                    return;
+                }
+            }
+            if (in.isFinished()) {
+                onAllDataRead();
+            }
+        }
+
+        private void resume() {
+            try {
+                onDataAvailable();
+            } catch (IOException | RuntimeException e) {
+                onError(e);
+            }
+        }
+
+        @Override
+        public synchronized void onAllDataRead() {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            try {
+                consumer.complete(request, response);
+            } finally {
+                async.complete();
+            }
+        }
+
+        @Override
+        public synchronized void onError(Throwable t) {
+            if (finished) {
+                return;
+            }
+            LOG.info("throttled upload failed: {}", t.toString());
+            finished = true;
+            consumer.failed(request, response, t);
+            async.complete();
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            transfer.close();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+        }
+
+        @Override
+        public synchronized void onError(AsyncEvent event) {
+            transfer.close();
+            if (!finished) {
+                finished = true;
+                consumer.failed(request, response, event.getThrowable());
+            }
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+
+}
@@ -0,0 +1,102 @@
+package swapan.springboot.downloadserver.rest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import jakarta.servlet.http.HttpServletRequest;
+import swapan.springboot.downloadserver.dto.UploadSessionInfo;
+import swapan.springboot.downloadserver.services.UploadSessionService;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.NoSuchElementException;
+
+@RestController
+@RequestMapping(path = FileServerController.URI_PREFIX + UploadSessionController.SESSIONS_PREFIX)
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class UploadSessionController {
+
+    private static final Logger LOG = LoggerFactory.getLogger(UploadSessionController.class);
+
+    public static final String SESSIONS_PREFIX = "/sessions";
+    public static final String OPEN_PREFIX = "/open/";
+
+    @Autowired
+    private UploadSessionService uploadSessionService;
+
+    @Autowired
+    private HttpServletRequest httpServletRequest;
+
+    @PostMapping(OPEN_PREFIX + "**")
+    public ResponseEntity<UploadSessionInfo> open(@RequestParam("size") long size,
+                                                  @RequestParam("chunkSize") long chunkSize) throws IOException {
+        String contextPath = httpServletRequest.getRequestURI();
+        Path filePath = Paths.get(contextPath.substring((FileServerController.URI_PREFIX + SESSIONS_PREFIX + OPEN_PREFIX).length()));
+        LOG.info("open: {}", filePath);
+        UploadSessionInfo session = uploadSessionService.open(filePath, size, chunkSize);
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(session);
+    }
+
+    @PutMapping("/{sessionId}/{index}")
+    public ResponseEntity<UploadSessionInfo> writeChunk(@PathVariable String sessionId, @PathVariable int index) throws IOException {
+        LOG.info("writeChunk: {} {}", sessionId, index);
+        UploadSessionInfo session = uploadSessionService.writeChunk(sessionId, index, httpServletRequest.getInputStream());
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(session);
+    }
+
+    @GetMapping("/{sessionId}")
+    public ResponseEntity<UploadSessionInfo> getSession(@PathVariable String sessionId) {
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(uploadSessionService.getSession(sessionId));
+    }
+
+    @PostMapping("/{sessionId}/commit")
+    public ResponseEntity<Void> commit(@PathVariable String sessionId) throws IOException {
+        LOG.info("commit: {}", sessionId);
+        uploadSessionService.commit(sessionId);
+        return ResponseEntity.ok().build();
+    }
+
+    @DeleteMapping("/{sessionId}")
+    public ResponseEntity<Void> abort(@PathVariable String sessionId) throws IOException {
+        LOG.info("abort: {}", sessionId);
+        uploadSessionService.abort(sessionId);
+        return ResponseEntity.ok().build();
+    }
+
+    @ExceptionHandler(NoSuchElementException.class)
+    public ResponseEntity<Void> handleNotFound() {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<Void> handleBadRequest() {
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+    }
+
+    @ExceptionHandler(IllegalStateException.class)
+    public ResponseEntity<Void> handleConflict() {
+        return ResponseEntity.status(HttpStatus.CONFLICT).build();
+    }
+
+    @ExceptionHandler(IOException.class)
+    public ResponseEntity<Void> handleIOException(IOException e, HttpServletRequest request) {
+        FileServerMetricsFilter.recordError(request, e);
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+    }
+
+}
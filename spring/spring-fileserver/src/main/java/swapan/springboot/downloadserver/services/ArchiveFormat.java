@@ -0,0 +1,41 @@
+package swapan.springboot.downloadserver.services;
+
+/**
+ * Formats of directory archives.
+ */
+public enum ArchiveFormat {
+
+    ZIP("zip", "application/zip"),
+    TAR_GZ("tar.gz", "application/gzip");
+
+    private final String extension;
+    private final String contentType;
+
+    ArchiveFormat(String extension, String contentType) {
+        this.extension = extension;
+        this.contentType = contentType;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * @param extension file extension like zip or tar.gz.
+     * @return format with that extension.
+     * @throws IllegalArgumentException when extension is not supported.
+     */
+    public static ArchiveFormat fromExtension(String extension) {
+        for (ArchiveFormat format : values()) {
+            if (format.extension.equalsIgnoreCase(extension)) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported archive format " + extension);
+    }
+
+}
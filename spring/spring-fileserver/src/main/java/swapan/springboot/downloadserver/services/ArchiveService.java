@@ -0,0 +1,21 @@
+package swapan.springboot.downloadserver.services;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+
+/**
+ * Streams whole directory trees as single archive.
+ */
+public interface ArchiveService {
+
+    /**
+     * Writes directory and everything below it as archive into output stream. No temporary files are created.
+     * @param filePath relative path to directory.
+     * @param format archive format.
+     * @param outputStream target of archive data, not closed.
+     * @throws IOException
+     */
+    void writeArchive(Path filePath, ArchiveFormat format, OutputStream outputStream) throws IOException;
+
+}
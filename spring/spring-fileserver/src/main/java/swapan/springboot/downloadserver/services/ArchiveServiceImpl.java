@@ -0,0 +1,376 @@
+package swapan.springboot.downloadserver.services;
+
+import swapan.springboot.downloadserver.config.FileServerConfig;
+
+import jakarta.annotation.PreDestroy;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipMethod;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+@Service
+public class ArchiveServiceImpl implements ArchiveService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ArchiveServiceImpl.class);
+
+    /**
+     * Files up to this size are deflated by worker threads into memory, larger ones are deflated while written.
+     */
+    static final int PARALLEL_MAX_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * Memory in KiB for entries prepared by worker threads, shared by all archive requests. Entries which do not
+     * fit are deflated by the request thread while written.
+     */
+    static final int PARALLEL_MEMORY_KB = 64 * 1024;
+
+    /**
+     * Extensions of files which are compressed already, such entries are STORED in zip.
+     */
+    private static final Set<String> STORED_EXTENSIONS = Set.of(
+            "zip", "jar", "war", "ear", "apk", "whl", "nupkg", "docx", "xlsx", "pptx", "odt",
+            "gz", "tgz", "bz2", "xz", "zst", "br", "lz4", "7z", "rar", "deb", "rpm",
+            "png", "jpg", "jpeg", "gif", "webp", "mp3", "mp4", "mkv", "mov", "avi", "webm");
+
+    private final List<Path> storageRoots;
+    private final int bufferSize;
+    private final int parallelism;
+    private final ExecutorService executor;
+    private final Semaphore memory = new Semaphore(PARALLEL_MEMORY_KB);
+
+    @Autowired
+    public ArchiveServiceImpl(FileServerConfig fileServerConfig, FileService fileService) {
+        storageRoots = fileService.getBasePaths();
+        bufferSize = fileServerConfig.getBufferSize();
+        parallelism = Math.max(1, fileServerConfig.getArchiveParallelism());
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "archive-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Override
+    public void writeArchive(Path filePath, ArchiveFormat format, OutputStream outputStream) throws IOException {
+        LOG.info("writeArchive: {} {}", filePath, format);
+        // archived directory in every storage root it exists in
+        Map<Path, Path> roots = new LinkedHashMap<>();
+        for (Path storageRoot : storageRoots) {
+            Path root = StorageRoots.resolve(storageRoot, filePath);
+            if (Files.isDirectory(root)) {
+                roots.put(root, storageRoot);
+            }
+        }
+        if (roots.isEmpty()) {
+            throw new NotDirectoryException(filePath.toString());
+        }
+        String prefix = StringUtils.hasLength(filePath.toString()) ? roots.keySet().iterator().next().getFileName() + "/" : "";
+        ArchiveWriter writer = format == ArchiveFormat.ZIP ? new ZipWriter(outputStream) : new TarGzWriter(outputStream);
+        // directory spread over several storage roots is archived once, as is a file while it is rebalanced
+        Set<String> names = new HashSet<>();
+        try {
+            for (Map.Entry<Path, Path> rootEntry : roots.entrySet()) {
+                Path root = rootEntry.getKey();
+                Path storageRoot = rootEntry.getValue();
+                Files.walkFileTree(root, new SimpleFileVisitor<>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) throws IOException {
+                        if (StorageRoots.isServerState(storageRoot, dir)) {
+                            return FileVisitResult.SKIP_SUBTREE;
+                        }
+                        if (!dir.equals(root)) {
+                            String name = prefix + entryName(root, dir) + "/";
+                            if (names.add(name)) {
+                                writer.addDirectory(name, attributes);
+                            }
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                        // links are not followed, special files are skipped
+                        String name = prefix + entryName(root, file);
+                        if (attributes.isRegularFile() && !StorageRoots.isServerState(storageRoot, file) && names.add(name)) {
+                            writer.addFile(name, file, attributes);
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException e) throws IOException {
+                        if (e instanceof NoSuchFileException) {
+                            // deleted while archiving
+                            return FileVisitResult.CONTINUE;
+                        }
+                        throw e;
+                    }
+                });
+            }
+            writer.finish();
+        } finally {
+            writer.cancel();
+        }
+    }
+
+    private static String entryName(Path root, Path path) {
+        return root.relativize(path).toString().replace(File.separatorChar, '/');
+    }
+
+    static boolean isCompressed(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot >= 0 && STORED_EXTENSIONS.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    private interface ArchiveWriter {
+        void addDirectory(String name, BasicFileAttributes attributes) throws IOException;
+
+        void addFile(String name, Path file, BasicFileAttributes attributes) throws IOException;
+
+        void finish() throws IOException;
+
+        void cancel();
+    }
+
+    /**
+     * Writes zip entries in walk order while worker threads prepare up to two entries per thread ahead: small
+     * files are read into memory once, CRC computed and deflated on the way, compressed files are kept as they are
+     * and STORED. Large files, and small ones while memory of all requests is taken, are deflated while written,
+     * compressed ones at level 0 as STORED needs CRC before the data.
+     */
+    private class ZipWriter implements ArchiveWriter {
+        private final ZipArchiveOutputStream zip;
+        private final Deque<PendingEntry> pending = new ArrayDeque<>();
+
+        ZipWriter(OutputStream outputStream) {
+            zip = new ZipArchiveOutputStream(outputStream);
+        }
+
+        @Override
+        public void addDirectory(String name, BasicFileAttributes attributes) throws IOException {
+            ZipArchiveEntry entry = new ZipArchiveEntry(name);
+            entry.setMethod(ZipMethod.STORED.getCode());
+            entry.setSize(0);
+            entry.setCompressedSize(0);
+            entry.setCrc(0);
+            entry.setLastModifiedTime(attributes.lastModifiedTime());
+            enqueue(CompletableFuture.completedFuture(new ZipArchiveEntryData(entry, null, new EntryBuffer(0))), 0);
+        }
+
+        @Override
+        public void addFile(String name, Path file, BasicFileAttributes attributes) throws IOException {
+            ZipArchiveEntry entry = new ZipArchiveEntry(name);
+            entry.setLastModifiedTime(attributes.lastModifiedTime());
+            int permits = (int) (attributes.size() / 1024) + 1;
+            if (attributes.size() <= PARALLEL_MAX_SIZE && memory.tryAcquire(permits)) {
+                entry.setMethod((isCompressed(file) ? ZipMethod.STORED : ZipMethod.DEFLATED).getCode());
+                enqueue(executor.submit(() -> read(entry, file, (int) attributes.size())), permits);
+            } else {
+                entry.setMethod(ZipMethod.DEFLATED.getCode());
+                entry.setSize(attributes.size());
+                enqueue(CompletableFuture.completedFuture(new ZipArchiveEntryData(entry, file, null)), 0);
+            }
+        }
+
+        @Override
+        public void finish() throws IOException {
+            while (!pending.isEmpty()) {
+                writeNext();
+            }
+            zip.finish();
+            zip.flush();
+        }
+
+        @Override
+        public void cancel() {
+            for (PendingEntry entry : pending) {
+                entry.future().cancel(true);
+                memory.release(entry.permits());
+            }
+            pending.clear();
+        }
+
+        private void enqueue(Future<ZipArchiveEntryData> future, int permits) throws IOException {
+            pending.addLast(new PendingEntry(future, permits));
+            while (pending.size() > parallelism * 2) {
+                writeNext();
+            }
+        }
+
+        private void writeNext() throws IOException {
+            PendingEntry next = pending.removeFirst();
+            try {
+                write(next.future().get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while archiving", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException ioException) {
+                    throw ioException;
+                }
+                throw new IOException(e.getCause());
+            } finally {
+                memory.release(next.permits());
+            }
+        }
+
+        private void write(ZipArchiveEntryData data) throws IOException {
+            ZipArchiveEntry entry = data.entry();
+            if (data.content() != null) {
+                zip.addRawArchiveEntry(entry, data.content().toInputStream());
+                return;
+            }
+            // CRC and sizes are computed by the zip stream from the same read as the data
+            zip.setLevel(isCompressed(data.file()) ? Deflater.NO_COMPRESSION : Deflater.DEFAULT_COMPRESSION);
+            zip.putArchiveEntry(entry);
+            Files.copy(data.file(), zip);
+            zip.closeArchiveEntry();
+        }
+
+        /**
+         * Reads file once, CRC and size describe exactly the data kept even if the file changes meanwhile.
+         */
+        private ZipArchiveEntryData read(ZipArchiveEntry entry, Path file, int expectedSize) throws IOException {
+            CRC32 crc = new CRC32();
+            long size = 0;
+            EntryBuffer content = new EntryBuffer(expectedSize);
+            Deflater deflater = entry.getMethod() == ZipMethod.DEFLATED.getCode()
+                    ? new Deflater(Deflater.DEFAULT_COMPRESSION, true) : null;
+            try (InputStream in = Files.newInputStream(file);
+                 OutputStream out = deflater != null ? new DeflaterOutputStream(content, deflater) : content) {
+                byte[] buffer = new byte[bufferSize];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    crc.update(buffer, 0, read);
+                    out.write(buffer, 0, read);
+                    size += read;
+                }
+            } finally {
+                if (deflater != null) {
+                    deflater.end();
+                }
+            }
+            entry.setSize(size);
+            entry.setCrc(crc.getValue());
+            entry.setCompressedSize(content.size());
+            return new ZipArchiveEntryData(entry, null, content);
+        }
+    }
+
+    /**
+     * Entry prepared by a worker thread, holding {@code permits} KiB of the shared memory until it is written.
+     */
+    private record PendingEntry(Future<ZipArchiveEntryData> future, int permits) {
+    }
+
+    /**
+     * Entry ready to be written, either with its data in memory or with file to be read by the writer.
+     */
+    private record ZipArchiveEntryData(ZipArchiveEntry entry, Path file, EntryBuffer content) {
+    }
+
+    /**
+     * Sized for the whole file up front and read without copying the array.
+     */
+    private static final class EntryBuffer extends ByteArrayOutputStream {
+        EntryBuffer(int size) {
+            super(size);
+        }
+
+        InputStream toInputStream() {
+            return new ByteArrayInputStream(buf, 0, count);
+        }
+    }
+
+    /**
+     * Gzip is one sequential stream, so tar entries are written by the request thread only.
+     */
+    private class TarGzWriter implements ArchiveWriter {
+        private final GZIPOutputStream gzip;
+        private final TarArchiveOutputStream tar;
+
+        TarGzWriter(OutputStream outputStream) throws IOException {
+            gzip = new GZIPOutputStream(outputStream, bufferSize);
+            tar = new TarArchiveOutputStream(gzip);
+            tar.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+            tar.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_POSIX);
+        }
+
+        @Override
+        public void addDirectory(String name, BasicFileAttributes attributes) throws IOException {
+            TarArchiveEntry entry = new TarArchiveEntry(name);
+            entry.setModTime(attributes.lastModifiedTime());
+            tar.putArchiveEntry(entry);
+            tar.closeArchiveEntry();
+        }
+
+        @Override
+        public void addFile(String name, Path file, BasicFileAttributes attributes) throws IOException {
+            TarArchiveEntry entry = new TarArchiveEntry(name);
+            entry.setSize(attributes.size());
+            entry.setModTime(attributes.lastModifiedTime());
+            tar.putArchiveEntry(entry);
+            Files.copy(file, tar);
+            tar.closeArchiveEntry();
+        }
+
+        @Override
+        public void finish() throws IOException {
+            tar.finish();
+            gzip.finish();
+            gzip.flush();
+        }
+
+        @Override
+        public void cancel() {
+            // nothing runs in background
+        }
+    }
+
+}
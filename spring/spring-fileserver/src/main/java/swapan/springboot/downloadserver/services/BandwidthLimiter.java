@@ -0,0 +1,243 @@
+package swapan.springboot.downloadserver.services;
+
+import swapan.springboot.downloadserver.config.FileServerConfig;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Token bucket bandwidth shaping of downloads and uploads, each direction limited on its own. Global limit is
+ * divided among clients with active transfers by their weights, a client below its share leaves the rest to
+ * the others (max-min fair), and no client gets more than the per client limit. Parallel transfers of one client
+ * share its bucket. Transfers under a limited path prefix also share the bucket of that prefix. A client whose
+ * last transfer closed in debt, e.g. after a multipart upload charged once received, keeps its bucket until the
+ * debt is paid off, so its next transfer in the same direction waits for it.
+ * <p>
+ * Limiter never blocks, {@link Transfer#reserve} tells the caller how long to wait before sending.
+ */
+@Component
+public class BandwidthLimiter {
+
+    private final Direction downloads;
+    private final Direction uploads;
+
+    @Autowired
+    public BandwidthLimiter(FileServerConfig fileServerConfig) {
+        Map<String, Integer> weights = fileServerConfig.getBandwidthClientWeights();
+        Map<Path, Long> prefixLimits = new LinkedHashMap<>();
+        fileServerConfig.getBandwidthPrefixLimits().forEach((prefix, limit) -> {
+            if (limit != null && limit > 0) {
+                prefixLimits.put(Paths.get(prefix).normalize(), limit);
+            }
+        });
+        downloads = new Direction(fileServerConfig.getBandwidthLimit(), fileServerConfig.getBandwidthClientLimit(),
+                prefixLimits, weights);
+        uploads = new Direction(fileServerConfig.getBandwidthLimit(), fileServerConfig.getBandwidthClientLimit(),
+                prefixLimits, weights);
+    }
+
+    /**
+     * @param client IP address or authenticated principal.
+     * @param filePath path relative to base directory.
+     * @return transfer to be closed once done, or null when the download is not limited.
+     */
+    public Transfer openDownload(String client, Path filePath) {
+        return downloads.open(client, filePath);
+    }
+
+    /**
+     * @param client IP address or authenticated principal.
+     * @param filePath path relative to base directory.
+     * @return transfer to be closed once done, or null when the upload is not limited.
+     */
+    public Transfer openUpload(String client, Path filePath) {
+        return uploads.open(client, filePath);
+    }
+
+    /**
+     * @return current rate of client's downloads in bytes per second, 0 when it has no limited download running.
+     */
+    public double getDownloadRate(String client) {
+        return downloads.getRate(client);
+    }
+
+    /**
+     * One limited download or upload.
+     */
+    public interface Transfer extends AutoCloseable {
+
+        /**
+         * Takes tokens for bytes about to be sent or received.
+         * @return nanoseconds to wait before the bytes are sent, 0 to send right away.
+         */
+        long reserve(long bytes);
+
+        @Override
+        void close();
+    }
+
+    private static final class Direction {
+
+        private final long globalLimit;
+        private final long clientLimit;
+        private final Map<String, Integer> weights;
+        private final Map<Path, TokenBucket> prefixBuckets = new LinkedHashMap<>();
+        private final Map<String, Client> clients = new HashMap<>();
+        private final ReentrantLock lock = new ReentrantLock();
+
+        Direction(long globalLimit, long clientLimit, Map<Path, Long> prefixLimits, Map<String, Integer> weights) {
+            this.globalLimit = globalLimit;
+            this.clientLimit = clientLimit;
+            this.weights = weights;
+            long now = System.nanoTime();
+            prefixLimits.forEach((prefix, limit) -> prefixBuckets.put(prefix, new TokenBucket(limit, now)));
+        }
+
+        Transfer open(String client, Path filePath) {
+            Path normalized = filePath.normalize();
+            List<TokenBucket> prefixes = new ArrayList<>();
+            prefixBuckets.forEach((prefix, bucket) -> {
+                if (normalized.startsWith(prefix)) {
+                    prefixes.add(bucket);
+                }
+            });
+            boolean clientLimited = globalLimit > 0 || clientLimit > 0;
+            if (!clientLimited && prefixes.isEmpty()) {
+                return null;
+            }
+            lock.lock();
+            try {
+                Client state = null;
+                if (clientLimited) {
+                    state = clients.get(client);
+                    if (state == null) {
+                        state = new Client(Math.max(1, weights.getOrDefault(client, 1)));
+                        clients.put(client, state);
+                    }
+                    state.transfers++;
+                    if (state.transfers == 1) {
+                        rebalance();
+                    }
+                }
+                return new LimitedTransfer(state, prefixes);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        double getRate(String client) {
+            lock.lock();
+            try {
+                Client state = clients.get(client);
+                return state == null || state.transfers == 0 ? 0 : state.bucket.getRate();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Water filling: clients whose weighted share of what is left exceeds client limit get the limit,
+         * the rest is divided again among the others by weight until no client is capped anymore.
+         */
+        private void rebalance() {
+            long now = System.nanoTime();
+            // idle clients pay off their debt at their last rate and get no share
+            clients.values().removeIf(client -> client.transfers == 0 && !client.bucket.isInDebt(now));
+            double remaining = globalLimit > 0 ? globalLimit : Double.POSITIVE_INFINITY;
+            double cap = clientLimit > 0 ? clientLimit : Double.POSITIVE_INFINITY;
+            List<Client> open = new ArrayList<>(clients.values());
+            open.removeIf(client -> client.transfers == 0);
+            boolean capped = true;
+            while (capped && !open.isEmpty()) {
+                capped = false;
+                double share = remaining / open.stream().mapToInt(client -> client.weight).sum();
+                for (Client client : new ArrayList<>(open)) {
+                    if (share * client.weight >= cap) {
+                        client.setRate(cap, now);
+                        remaining -= cap;
+                        open.remove(client);
+                        capped = true;
+                    }
+                }
+            }
+            double share = remaining / Math.max(1, open.stream().mapToInt(client -> client.weight).sum());
+            for (Client client : open) {
+                client.setRate(share * client.weight, now);
+            }
+        }
+
+        private final class LimitedTransfer implements Transfer {
+            private final Client client;
+            private final List<TokenBucket> prefixes;
+            private boolean closed;
+
+            LimitedTransfer(Client client, List<TokenBucket> prefixes) {
+                this.client = client;
+                this.prefixes = prefixes;
+            }
+
+            @Override
+            public long reserve(long bytes) {
+                lock.lock();
+                try {
+                    long now = System.nanoTime();
+                    long delay = client == null ? 0 : client.bucket.reserve(bytes, now);
+                    for (TokenBucket prefix : prefixes) {
+                        delay = Math.max(delay, prefix.reserve(bytes, now));
+                    }
+                    return delay;
+                } finally {
+                    lock.unlock();
+                }
+            }
+
+            @Override
+            public void close() {
+                if (client == null) {
+                    return;
+                }
+                lock.lock();
+                try {
+                    if (closed) {
+                        return;
+                    }
+                    closed = true;
+                    client.transfers--;
+                    if (client.transfers == 0) {
+                        rebalance();
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    private static final class Client {
+        private final int weight;
+        private TokenBucket bucket;
+        private int transfers;
+
+        Client(int weight) {
+            this.weight = weight;
+        }
+
+        void setRate(double rate, long now) {
+            if (bucket == null) {
+                bucket = new TokenBucket(rate, now);
+            } else {
+                bucket.setRate(rate, now);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,21 @@
+package swapan.springboot.downloadserver.services;
+
+import swapan.springboot.downloadserver.dto.BatchRequest;
+import swapan.springboot.downloadserver.dto.BatchResult;
+
+import java.util.List;
+
+/**
+ * Runs many file operations in one request.
+ */
+public interface BatchService {
+
+    /**
+     * Runs all operations of the request, either in parallel or in order until the first failure.
+     * @param request operations and their mode.
+     * @return result of every operation in order of the request.
+     * @throws IllegalArgumentException when an operation is incomplete or there are too many of them.
+     */
+    List<BatchResult> run(BatchRequest request);
+
+}
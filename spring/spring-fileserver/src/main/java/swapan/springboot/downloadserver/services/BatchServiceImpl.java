@@ -0,0 +1,142 @@
+package swapan.springboot.downloadserver.services;
+
+import swapan.springboot.downloadserver.config.FileServerConfig;
+import swapan.springboot.downloadserver.dto.BatchOperation;
+import swapan.springboot.downloadserver.dto.BatchRequest;
+import swapan.springboot.downloadserver.dto.BatchResult;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Service
+public class BatchServiceImpl implements BatchService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BatchServiceImpl.class);
+
+    static final int MAX_OPERATIONS = 10000;
+
+    private final FileService fileService;
+    private final ExecutorService executor;
+
+    @Autowired
+    public BatchServiceImpl(FileServerConfig fileServerConfig, FileService fileService) {
+        this.fileService = fileService;
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(Math.max(1, fileServerConfig.getBatchParallelism()), runnable -> {
+            Thread thread = new Thread(runnable, "batch-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Override
+    public List<BatchResult> run(BatchRequest request) {
+        List<BatchOperation> operations = request.getOperations();
+        validate(operations);
+        LOG.info("run: operations={} stopOnError={}", operations.size(), request.isStopOnError());
+        BatchResult[] results = new BatchResult[operations.size()];
+        if (request.isStopOnError()) {
+            boolean failed = false;
+            for (int i = 0; i < operations.size(); i++) {
+                results[i] = failed ? skipped(i, operations.get(i)) : execute(i, operations.get(i));
+                failed = results[i].getStatus() == BatchResult.Status.FAILED;
+            }
+        } else {
+            // operations of all requests share the pool, so parallelism is bounded by its size
+            List<Future<BatchResult>> futures = new ArrayList<>(operations.size());
+            for (int i = 0; i < operations.size(); i++) {
+                int index = i;
+                futures.add(executor.submit(() -> execute(index, operations.get(index))));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    results[i] = futures.get(i).get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    futures.forEach(future -> future.cancel(true));
+                    break;
+                } catch (ExecutionException e) {
+                    results[i] = failed(i, operations.get(i), e.getCause());
+                }
+            }
+            for (int i = 0; i < results.length; i++) {
+                if (results[i] == null) {
+                    results[i] = skipped(i, operations.get(i));
+                }
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    private BatchResult execute(int index, BatchOperation operation) {
+        try {
+            Path path = Paths.get(operation.getPath());
+            switch (operation.getOp()) {
+                case CREATEDIR -> fileService.createDirectory(path);
+                case DELETE -> fileService.delete(path);
+                case MOVE -> fileService.move(path, Paths.get(operation.getTarget()));
+                case COPY -> fileService.copy(path, Paths.get(operation.getTarget()));
+            }
+            return new BatchResult(index, operation.getOp(), operation.getPath(), BatchResult.Status.OK, null);
+        } catch (IOException | RuntimeException e) {
+            LOG.info("batch operation {} {} failed: {}", operation.getOp(), operation.getPath(), e.toString());
+            return failed(index, operation, e);
+        }
+    }
+
+    private static BatchResult failed(int index, BatchOperation operation, Throwable e) {
+        return new BatchResult(index, operation.getOp(), operation.getPath(), BatchResult.Status.FAILED, e.toString());
+    }
+
+    private static BatchResult skipped(int index, BatchOperation operation) {
+        return new BatchResult(index, operation.getOp(), operation.getPath(), BatchResult.Status.SKIPPED, null);
+    }
+
+    /**
+     * Whole batch is rejected before anything runs, including paths which lead out of the storage root.
+     */
+    private void validate(List<BatchOperation> operations) {
+        if (operations == null || operations.size() > MAX_OPERATIONS) {
+            throw new IllegalArgumentException("Batch needs 0 to " + MAX_OPERATIONS + " operations");
+        }
+        for (BatchOperation operation : operations) {
+            if (operation == null || operation.getOp() == null || operation.getPath() == null) {
+                throw new IllegalArgumentException("Operation needs op and path");
+            }
+            // base directory itself is never deleted, moved or copied
+            if (operation.getOp() != BatchOperation.Type.CREATEDIR && !StringUtils.hasText(operation.getPath())) {
+                throw new IllegalArgumentException(operation.getOp() + " needs non empty path");
+            }
+            if ((operation.getOp() == BatchOperation.Type.MOVE || operation.getOp() == BatchOperation.Type.COPY)
+                    && !StringUtils.hasText(operation.getTarget())) {
+                throw new IllegalArgumentException(operation.getOp() + " of " + operation.getPath() + " needs target");
+            }
+            StorageRoots.resolve(fileService.getBasePath(), Paths.get(operation.getPath()));
+            if (operation.getTarget() != null) {
+                StorageRoots.resolve(fileService.getBasePath(), Paths.get(operation.getTarget()));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,307 @@
+package swapan.springboot.downloadserver.services;
+
+import swapan.springboot.downloadserver.config.FileServerConfig;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Content-addressed store of deduplicated files. Content is kept once in {@code .blobs/sha256/ab/abcd...}
+ * and files under the base directory are hardlinks to it. Number of links is the reference count,
+ * blobs linked from nowhere else are removed when files are deleted.
+ */
+@Component
+public class BlobStore {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BlobStore.class);
+
+    /**
+     * Directory in base directory, on the same file system so blobs can be linked.
+     */
+    public static final String BLOB_DIR = ".blobs";
+
+    private static final Pattern SHA256 = Pattern.compile("[0-9a-f]{64}");
+
+    private final boolean enabled;
+    private final Path blobLocation;
+    private final Path tempLocation;
+    /**
+     * Blob by file key, files being deleted are mapped to their blob without hashing them.
+     */
+    private final Map<Object, Path> blobsByKey = new ConcurrentHashMap<>();
+    /**
+     * Guards linking against removal of blob which has no other link yet.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    @Autowired
+    public BlobStore(FileServerConfig fileServerConfig) {
+        List<Path> roots = StorageRoots.parse(fileServerConfig.getHome());
+        blobLocation = roots.get(0).resolve(BLOB_DIR).resolve("sha256");
+        tempLocation = roots.get(0).resolve(BLOB_DIR).resolve("tmp");
+        boolean linkCount = FileSystems.getDefault().supportedFileAttributeViews().contains("unix");
+        if (fileServerConfig.isDedup() && !linkCount) {
+            LOG.warn("deduplication needs unix file attributes, it is disabled");
+        }
+        // hardlinks cannot point to blobs on another file system
+        if (fileServerConfig.isDedup() && roots.size() > 1) {
+            LOG.warn("deduplication needs single storage root, it is disabled");
+        }
+        enabled = fileServerConfig.isDedup() && linkCount && roots.size() == 1;
+    }
+
+    /**
+     * Indexes existing blobs, removes unfinished uploads and blobs not linked from anywhere.
+     */
+    @PostConstruct
+    public void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        if (Files.isDirectory(tempLocation)) {
+            FileSystemUtils.deleteRecursively(tempLocation);
+        }
+        Files.createDirectories(blobLocation);
+        try (Stream<Path> blobs = Files.walk(blobLocation)) {
+            for (Path blob : blobs.toList()) {
+                BasicFileAttributes attributes = Files.readAttributes(blob, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                if (attributes.isRegularFile()) {
+                    blobsByKey.put(attributes.fileKey(), blob);
+                }
+            }
+        }
+        collectGarbage();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return new empty file for content being uploaded.
+     * @throws IOException
+     */
+    public Path createTempFile() throws IOException {
+        Files.createDirectories(tempLocation);
+        return Files.createFile(tempLocation.resolve(UUID.randomUUID().toString()));
+    }
+
+    /**
+     * Checks whether content is stored.
+     * @param sha256 lower case hex SHA-256 of content.
+     * @return true when files with the content can be created by {@link #link(String, Path)}.
+     */
+    public boolean contains(String sha256) {
+        return enabled && Files.isRegularFile(blobPath(sha256));
+    }
+
+    /**
+     * Stores uploaded content unless the same content is stored already and links target file to it.
+     * Temporary file is consumed.
+     * @param tempFile file from {@link #createTempFile()} with complete content.
+     * @param digest SHA-256 digest which has been updated with whole content.
+     * @param target resolved absolute path of file to be replaced.
+     * @return lower case hex SHA-256 of content.
+     * @throws IOException
+     */
+    public String commit(Path tempFile, MessageDigest digest, Path target) throws IOException {
+        String sha256 = HexFormat.of().formatHex(digest.digest());
+        commit(tempFile, sha256, target);
+        return sha256;
+    }
+
+    /**
+     * Like {@link #commit(Path, MessageDigest, Path)} for content hashed by the caller.
+     * @param tempFile file with complete content on the file system of the blob store.
+     * @param sha256 lower case hex SHA-256 of content.
+     * @param target resolved absolute path of file to be replaced.
+     * @throws IOException
+     */
+    public void commit(Path tempFile, String sha256, Path target) throws IOException {
+        Path blob = blobPath(sha256);
+        lock.lock();
+        try {
+            if (Files.isRegularFile(blob)) {
+                Files.delete(tempFile);
+            } else {
+                Files.createDirectories(blob.getParent());
+                Files.move(tempFile, blob, StandardCopyOption.ATOMIC_MOVE);
+                blobsByKey.put(Files.readAttributes(blob, BasicFileAttributes.class).fileKey(), blob);
+            }
+            replace(blob, target);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Creates or replaces file with stored content.
+     * @param sha256 lower case hex SHA-256 of content.
+     * @param target resolved absolute path of file.
+     * @throws NoSuchFileException when the content is not stored.
+     * @throws IOException
+     */
+    public void link(String sha256, Path target) throws IOException {
+        Path blob = blobPath(sha256);
+        lock.lock();
+        try {
+            if (!enabled || !Files.isRegularFile(blob)) {
+                throw new NoSuchFileException(sha256);
+            }
+            replace(blob, target);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drops blob of deleted file when it was its last link.
+     * @param attributes attributes of the file read before it was deleted.
+     */
+    public void release(BasicFileAttributes attributes) {
+        if (!enabled || !attributes.isRegularFile()) {
+            return;
+        }
+        Path blob = blobsByKey.get(attributes.fileKey());
+        if (blob != null) {
+            removeIfUnused(attributes.fileKey(), blob);
+        }
+    }
+
+    /**
+     * Drops all blobs without links, stats every blob so it is used at start only. Deletes release their blobs
+     * one by one through {@link #release(BasicFileAttributes)}.
+     */
+    public void collectGarbage() {
+        if (!enabled) {
+            return;
+        }
+        blobsByKey.forEach(this::removeIfUnused);
+    }
+
+    /**
+     * Deletes file or directory with its content, blobs linked only from the deleted files are dropped with them.
+     * @param path absolute path of file or directory.
+     * @throws IOException
+     */
+    public void deleteTree(Path path) throws IOException {
+        Files.walkFileTree(path, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                Files.deleteIfExists(file);
+                release(attributes);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) throws IOException {
+                if (e instanceof NoSuchFileException) {
+                    return FileVisitResult.CONTINUE;
+                }
+                throw e;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                if (e != null) {
+                    throw e;
+                }
+                Files.deleteIfExists(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void removeIfUnused(Object fileKey, Path blob) {
+        lock.lock();
+        try {
+            if (linkCount(blob) <= 1) {
+                LOG.info("remove blob: {}", blob.getFileName());
+                Files.deleteIfExists(blob);
+                blobsByKey.remove(fileKey);
+            }
+        } catch (NoSuchFileException e) {
+            blobsByKey.remove(fileKey);
+        } catch (IOException e) {
+            LOG.warn("cannot remove blob {}", blob, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Replaces target by link to blob in one rename, readers see either the old or the new file.
+     * Blob is copied when the file system refuses the link. Caller holds the lock.
+     * Modification time belongs to the inode shared by all links, so the file keeps the time its content was
+     * first stored; setting it would change modification time and entity tag of every other file with the content.
+     */
+    private void replace(Path blob, Path target) throws IOException {
+        Path link = target.resolveSibling("." + target.getFileName() + "." + UUID.randomUUID() + ".link");
+        try {
+            Files.createLink(link, blob);
+        } catch (UnsupportedOperationException | IOException e) {
+            LOG.warn("cannot link {}, content is copied", target, e);
+            Files.copy(blob, link, StandardCopyOption.REPLACE_EXISTING);
+        }
+        BasicFileAttributes replaced = null;
+        try {
+            replaced = Files.readAttributes(target, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (NoSuchFileException e) {
+            // new file
+        }
+        try {
+            Files.move(link, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.deleteIfExists(link);
+            throw e;
+        }
+        if (replaced != null) {
+            release(replaced);
+        }
+    }
+
+    private static int linkCount(Path blob) throws IOException {
+        return (Integer) Files.getAttribute(blob, "unix:nlink", LinkOption.NOFOLLOW_LINKS);
+    }
+
+    private Path blobPath(String sha256) {
+        if (!SHA256.matcher(sha256).matches()) {
+            throw new IllegalArgumentException("Invalid SHA-256 " + sha256);
+        }
+        return blobLocation.resolve(sha256.substring(0, 2)).resolve(sha256);
+    }
+
+}
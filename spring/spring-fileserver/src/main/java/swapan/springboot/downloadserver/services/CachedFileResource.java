@@ -0,0 +1,37 @@
+package swapan.springboot.downloadserver.services;
+
+import org.springframework.core.io.FileSystemResource;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * File whose content is held in memory by {@link HotFileCache}, served without opening the file.
+ */
+public class CachedFileResource extends FileSystemResource {
+
+    private final ByteBuffer content;
+    private final BasicFileAttributes attributes;
+
+    CachedFileResource(Path filePath, ByteBuffer content, BasicFileAttributes attributes) {
+        super(filePath);
+        this.content = content;
+        this.attributes = attributes;
+    }
+
+    /**
+     * @return read-only view of whole content, position 0, private to the caller.
+     */
+    public ByteBuffer getContent() {
+        return content.duplicate();
+    }
+
+    /**
+     * @return attributes of the file the content was read from.
+     */
+    public BasicFileAttributes getAttributes() {
+        return attributes;
+    }
+
+}
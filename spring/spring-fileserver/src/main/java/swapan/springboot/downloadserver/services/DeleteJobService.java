@@ -0,0 +1,36 @@
+package swapan.springboot.downloadserver.services;
+
+import swapan.springboot.downloadserver.dto.DeleteJobInfo;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Deletes large trees in background. The tree is renamed into trash directory first, so it disappears
+ * from its path at once, then its content is removed in parallel.
+ */
+public interface DeleteJobService {
+
+    /**
+     * Moves file or directory into trash and starts removing it.
+     * @param filePath relative path to file or directory.
+     * @return state of the new job.
+     * @throws IOException
+     */
+    DeleteJobInfo start(Path filePath) throws IOException;
+
+    /**
+     * Get progress of job.
+     * @param jobId id of job.
+     * @return state of the job.
+     */
+    DeleteJobInfo getJob(String jobId);
+
+    /**
+     * Stops parallel removal of content of job. What was not removed yet is removed from trash one file at a time.
+     * @param jobId id of job.
+     * @return state of the job.
+     */
+    DeleteJobInfo cancel(String jobId);
+
+}
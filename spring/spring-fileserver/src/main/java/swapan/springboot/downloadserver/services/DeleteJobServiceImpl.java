@@ -0,0 +1,265 @@
+package swapan.springboot.downloadserver.services;
+
+import swapan.springboot.downloadserver.config.FileServerConfig;
+import swapan.springboot.downloadserver.dto.DeleteJobInfo;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+@Service
+public class DeleteJobServiceImpl implements DeleteJobService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DeleteJobServiceImpl.class);
+
+    /**
+     * Directory in every storage root, on the same file system so moving into it is a rename. Reserved, clients
+     * cannot address it.
+     */
+    public static final String TRASH_DIR = ".trash";
+
+    /**
+     * Number of files removed by one task, directories always get their own task.
+     */
+    static final int BATCH_SIZE = 256;
+
+    private static final Duration JOB_RETENTION = Duration.ofHours(1);
+
+    private final Map<String, DeleteJob> jobs = new ConcurrentHashMap<>();
+    private final List<Path> storageRoots;
+    private final FileService fileService;
+    private final BlobStore blobStore;
+    private final ForkJoinPool pool;
+
+    @Autowired
+    public DeleteJobServiceImpl(FileServerConfig fileServerConfig, FileService fileService, BlobStore blobStore) {
+        storageRoots = fileService.getBasePaths();
+        this.fileService = fileService;
+        this.blobStore = blobStore;
+        pool = new ForkJoinPool(Math.max(1, fileServerConfig.getDeleteParallelism()));
+    }
+
+    /**
+     * Removes what was left in trash by previous run of the server.
+     */
+    @PostConstruct
+    public void purgeTrash() throws IOException {
+        for (Path storageRoot : storageRoots) {
+            Path trash = storageRoot.resolve(TRASH_DIR);
+            if (!Files.isDirectory(trash)) {
+                continue;
+            }
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(trash)) {
+                for (Path entry : entries) {
+                    LOG.info("purgeTrash: {}", entry);
+                    submit(new DeleteJob(UUID.randomUUID().toString(), storageRoot.relativize(entry), List.of(entry)));
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    @Override
+    public DeleteJobInfo start(Path filePath) throws IOException {
+        LOG.info("start: {}", filePath);
+        expireJobs();
+        String id = UUID.randomUUID().toString();
+        // every storage root holding the path moves its part into its own trash, it is gone from listings at once
+        List<Path> trashPaths = fileService.moveOut(filePath, TRASH_DIR, id);
+        DeleteJob job = new DeleteJob(id, filePath, trashPaths);
+        submit(job);
+        return job.toInfo();
+    }
+
+    @Override
+    public DeleteJobInfo getJob(String jobId) {
+        return findJob(jobId).toInfo();
+    }
+
+    @Override
+    public DeleteJobInfo cancel(String jobId) {
+        DeleteJob job = findJob(jobId);
+        LOG.info("cancel: {}", job.filePath);
+        job.cancelled = true;
+        return job.toInfo();
+    }
+
+    private void submit(DeleteJob job) {
+        jobs.put(job.id, job);
+        pool.execute(job::run);
+    }
+
+    private DeleteJob findJob(String jobId) {
+        DeleteJob job = jobs.get(jobId);
+        if (job == null) {
+            throw new NoSuchElementException("Unknown delete job " + jobId);
+        }
+        return job;
+    }
+
+    private void expireJobs() {
+        Instant expired = Instant.now().minus(JOB_RETENTION);
+        jobs.values().removeIf(job -> job.finished != null && job.finished.isBefore(expired));
+    }
+
+    private class DeleteJob {
+        private final String id;
+        private final Path filePath;
+        private final List<Path> trashPaths;
+        private final LongAdder deletedFiles = new LongAdder();
+        private final LongAdder deletedDirectories = new LongAdder();
+        private volatile boolean cancelled;
+        private volatile DeleteJobInfo.State state = DeleteJobInfo.State.RUNNING;
+        private volatile String error;
+        private volatile Instant finished;
+
+        DeleteJob(String id, Path filePath, List<Path> trashPaths) {
+            this.id = id;
+            this.filePath = filePath;
+            this.trashPaths = trashPaths;
+        }
+
+        void run() {
+            DeleteJobInfo.State result;
+            try {
+                new DeleteTask(this, trashPaths).invoke();
+                result = cancelled ? DeleteJobInfo.State.CANCELLED : DeleteJobInfo.State.COMPLETED;
+            } catch (RuntimeException e) {
+                LOG.warn("delete of {} failed", filePath, e);
+                error = e.getCause() != null ? e.getCause().toString() : e.toString();
+                result = DeleteJobInfo.State.FAILED;
+            }
+            if (result != DeleteJobInfo.State.COMPLETED) {
+                removeRemnants();
+            }
+            state = result;
+            finished = Instant.now();
+            LOG.info("deleted: {} {} files={} directories={}", filePath, state, deletedFiles.sum(), deletedDirectories.sum());
+        }
+
+        /**
+         * Removes what a cancelled or failed job left in trash one file at a time, nothing stays there until
+         * the next start of the server.
+         */
+        private void removeRemnants() {
+            for (Path trashPath : trashPaths) {
+                try {
+                    blobStore.deleteTree(trashPath);
+                } catch (IOException e) {
+                    LOG.warn("cannot remove {}, it is removed on next start", trashPath, e);
+                }
+            }
+        }
+
+        DeleteJobInfo toInfo() {
+            return new DeleteJobInfo(id, filePath.toString(), state, deletedFiles.sum(), deletedDirectories.sum(), error);
+        }
+    }
+
+    /**
+     * Removes batch of paths. Directories are listed, their subdirectories and batches of their files
+     * are forked as subtasks and the directory itself is removed once all of them finished.
+     */
+    private class DeleteTask extends RecursiveAction {
+        private final DeleteJob job;
+        private final List<Path> paths;
+
+        DeleteTask(DeleteJob job, List<Path> paths) {
+            this.job = job;
+            this.paths = paths;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                for (Path path : paths) {
+                    if (job.cancelled) {
+                        return;
+                    }
+                    BasicFileAttributes attributes;
+                    try {
+                        attributes = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    } catch (NoSuchFileException e) {
+                        continue;
+                    }
+                    if (attributes.isDirectory()) {
+                        deleteDirectory(path);
+                    } else {
+                        Files.deleteIfExists(path);
+                        // blob linked only from the deleted tree goes with it
+                        blobStore.release(attributes);
+                        job.deletedFiles.increment();
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void deleteDirectory(Path directory) throws IOException {
+            // subtasks are forked while the directory is still being listed
+            List<DeleteTask> subtasks = new ArrayList<>();
+            List<Path> batch = new ArrayList<>();
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+                for (Path entry : entries) {
+                    if (job.cancelled) {
+                        break;
+                    }
+                    if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+                        subtasks.add(fork(List.of(entry)));
+                    } else {
+                        batch.add(entry);
+                        if (batch.size() == BATCH_SIZE) {
+                            subtasks.add(fork(batch));
+                            batch = new ArrayList<>();
+                        }
+                    }
+                }
+            }
+            if (!batch.isEmpty()) {
+                subtasks.add(fork(batch));
+            }
+            for (DeleteTask subtask : subtasks) {
+                subtask.join();
+            }
+            if (!job.cancelled) {
+                Files.delete(directory);
+                job.deletedDirectories.increment();
+            }
+        }
+
+        private DeleteTask fork(List<Path> paths) {
+            DeleteTask subtask = new DeleteTask(job, paths);
+            subtask.fork();
+            return subtask;
+        }
+    }
+
+}
@@ -0,0 +1,162 @@
+package swapan.springboot.downloadserver.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Copies and moves trees without passing file content through java heap. A copy of file is tried as hardlink,
+ * then as reflink sharing extents on copy-on-write file systems, and falls back to {@link FileChannel#transferTo}.
+ */
+final class FileCopier {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FileCopier.class);
+
+    /**
+     * Smaller files are copied by transferTo, starting a process would take longer than the copy.
+     */
+    static final long REFLINK_MIN_SIZE = 1024 * 1024;
+
+    private final boolean link;
+    private volatile boolean reflink;
+
+    /**
+     * @param link copy files as hardlinks, safe only when files are always replaced and never written in place.
+     * @param reflink copy large files by {@code cp --reflink=always}, turned off after first failure.
+     */
+    FileCopier(boolean link, boolean reflink) {
+        this.link = link;
+        this.reflink = reflink;
+    }
+
+    /**
+     * Moves file or directory by one atomic rename, or by copy and delete when target is on other file system.
+     * @param source resolved absolute path of existing file or directory.
+     * @param target resolved absolute path which does not exist.
+     * @throws IOException
+     */
+    void move(Path source, Path target) throws IOException {
+        // rename(2) silently replaces existing target
+        if (Files.exists(target, LinkOption.NOFOLLOW_LINKS)) {
+            throw new FileAlreadyExistsException(target.toString());
+        }
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            LOG.info("move across file systems: {} -> {}", source, target);
+            copy(source, target);
+            FileSystemUtils.deleteRecursively(source);
+        }
+    }
+
+    /**
+     * Copies file or directory with all subdirectories, symbolic links are copied as links.
+     * @param source resolved absolute path of existing file or directory.
+     * @param target resolved absolute path which does not exist.
+     * @throws IOException
+     */
+    void copy(Path source, Path target) throws IOException {
+        Files.walkFileTree(source, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) throws IOException {
+                Files.copy(dir, target.resolve(source.relativize(dir)), StandardCopyOption.COPY_ATTRIBUTES);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                Path targetFile = target.resolve(source.relativize(file));
+                if (attributes.isRegularFile()) {
+                    copyFile(file, targetFile, attributes);
+                } else {
+                    Files.copy(file, targetFile, StandardCopyOption.COPY_ATTRIBUTES, LinkOption.NOFOLLOW_LINKS);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                if (e != null) {
+                    throw e;
+                }
+                // creating entries has changed modification time of the copy
+                Files.setLastModifiedTime(target.resolve(source.relativize(dir)), Files.getLastModifiedTime(dir));
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void copyFile(Path source, Path target, BasicFileAttributes attributes) throws IOException {
+        if (link) {
+            try {
+                Files.createLink(target, source);
+                return;
+            } catch (FileAlreadyExistsException e) {
+                throw e;
+            } catch (UnsupportedOperationException | IOException e) {
+                LOG.debug("cannot link {}", target, e);
+            }
+        }
+        if (reflink && attributes.size() >= REFLINK_MIN_SIZE && reflink(source, target)) {
+            return;
+        }
+        try (FileChannel in = FileChannel.open(source);
+             FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            long size = in.size();
+            long position = 0;
+            while (position < size) {
+                long transferred = in.transferTo(position, size - position, out);
+                if (transferred <= 0) {
+                    // file was truncated while copied
+                    break;
+                }
+                position += transferred;
+            }
+        }
+        Files.setLastModifiedTime(target, attributes.lastModifiedTime());
+    }
+
+    /**
+     * Java has no API for FICLONE, {@code cp} shares extents of source on btrfs, XFS and similar file systems.
+     * @return false when the file system cannot do it, reflinks are not tried again then.
+     */
+    private boolean reflink(Path source, Path target) throws IOException {
+        if (Files.exists(target, LinkOption.NOFOLLOW_LINKS)) {
+            throw new FileAlreadyExistsException(target.toString());
+        }
+        try {
+            Process process = new ProcessBuilder("cp", "--reflink=always", "--preserve=timestamps", "--",
+                    source.toString(), target.toString())
+                    .redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                    .start();
+            if (process.waitFor() == 0) {
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while copying " + source);
+        } catch (IOException e) {
+            LOG.debug("cannot start cp", e);
+        }
+        LOG.info("reflink is not supported, files are copied");
+        reflink = false;
+        Files.deleteIfExists(target);
+        return false;
+    }
+
+}
@@ -1,11 +1,17 @@
 package swapan.springboot.downloadserver.services;
 
+import swapan.springboot.downloadserver.dto.DiskUsage;
+import swapan.springboot.downloadserver.dto.FileEntry;
 import swapan.springboot.downloadserver.dto.FileList;
+import swapan.springboot.downloadserver.dto.RebalanceStats;
+import swapan.springboot.downloadserver.dto.SearchQuery;
 import org.springframework.core.io.Resource;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * Service for manipulating files on the file system.
@@ -18,6 +24,25 @@ public interface FileService {
      */
     Path getBasePath();
 
+    /**
+     * Get all storage roots, files are spread over them by hash of their path.
+     * @return absolute paths to storage roots, base path first.
+     */
+    List<Path> getBasePaths();
+
+    /**
+     * Finds file in storage roots.
+     * @param filePath relative path to file or directory.
+     * @return absolute path of the file in root holding it, or the path a new file would be written to.
+     */
+    Path resolvePath(Path filePath);
+
+    /**
+     * Get progress of moving files to the roots they are placed to, after a root was added.
+     * @return counters of current or last rebalance.
+     */
+    RebalanceStats getRebalanceStats();
+
     /**
      * Create {@link Resource} for given file.
      * @param filePath relative path to file.
@@ -34,6 +59,42 @@ public interface FileService {
      */
     FileList getFilesInfo(Path filePath) throws IOException;
 
+    /**
+     * Get one page of directory content ordered by name. Memory use depends on page size only.
+     * @param filePath relative path to directory.
+     * @param cursor {@link FileList#getNextCursor()} of previous page, null for first page.
+     * @param limit maximum number of entries in the page.
+     * @return page of directory content list with cursor for next page.
+     * @throws IOException
+     */
+    FileList getFilesInfo(Path filePath, String cursor, int limit) throws IOException;
+
+    /**
+     * Lazily list content of directory in file system order, entries are produced as directory is read.
+     * Returned stream must be closed.
+     * @param filePath relative path to directory.
+     * @return stream of directory entries.
+     * @throws IOException
+     */
+    Stream<FileEntry> streamFilesInfo(Path filePath) throws IOException;
+
+    /**
+     * Searches directory and its subdirectories in parallel, matches are available as soon as they are found.
+     * @param filePath relative path to directory.
+     * @param query filters of the search.
+     * @return matching entries with paths relative to the directory, must be closed.
+     * @throws IOException
+     */
+    Stream<FileEntry> search(Path filePath, SearchQuery query) throws IOException;
+
+    /**
+     * Sums sizes of all files in directory and its subdirectories, read from metadata index when it is ready.
+     * @param filePath relative path to file or directory.
+     * @return total size and counts of files and directories.
+     * @throws IOException
+     */
+    DiskUsage getDiskUsage(Path filePath) throws IOException;
+
     /**
      * Writes data in {@link InputStream} into file specified by relative path.
      * @param filePath relative path to file.
@@ -42,6 +103,59 @@ public interface FileService {
      */
     void saveFile(Path filePath, InputStream inputStream) throws IOException;
 
+    /**
+     * Writes data in {@link InputStream} into file specified by relative path.
+     * @param filePath relative path to file.
+     * @param inputStream data to be written into that file.
+     * @param sizeHint expected number of bytes in the stream, used to preallocate the file, -1 when unknown.
+     * @throws IOException
+     */
+    void saveFile(Path filePath, InputStream inputStream, long sizeHint) throws IOException;
+
+    /**
+     * Creates empty temporary file next to the file, to be written and then published by {@link #commitFile}.
+     * @param filePath relative path to file.
+     * @return absolute path of the temporary file.
+     * @throws IOException
+     */
+    Path createTempFile(Path filePath) throws IOException;
+
+    /**
+     * Replaces file by fully written temporary file in one atomic rename, readers see either old or new content.
+     * Commits and other writes of the same path are serialized.
+     * @param tempFile absolute path of temporary file in the same directory as the file.
+     * @param filePath relative path to file.
+     * @throws IOException
+     */
+    void commitFile(Path tempFile, Path filePath) throws IOException;
+
+    /**
+     * Like {@link #commitFile(Path, Path)} for content hashed while written, the file is deduplicated when the
+     * blob store is enabled.
+     * @param tempFile absolute path of temporary file in the same directory as the file.
+     * @param filePath relative path to file.
+     * @param sha256 lower case hex SHA-256 of content.
+     * @throws IOException
+     */
+    void commitFile(Path tempFile, Path filePath, String sha256) throws IOException;
+
+    /**
+     * Checks whether content is stored already, so the file can be created by {@link #linkContent(String, Path)}
+     * without uploading it. Always false unless deduplication is enabled.
+     * @param sha256 lower case hex SHA-256 of content.
+     * @return true when the content is stored.
+     */
+    boolean hasContent(String sha256);
+
+    /**
+     * Creates or replaces file with content which is stored already.
+     * @param sha256 lower case hex SHA-256 of content.
+     * @param filePath relative path to file.
+     * @throws java.nio.file.NoSuchFileException when the content is not stored.
+     * @throws IOException
+     */
+    void linkContent(String sha256, Path filePath) throws IOException;
+
     /**
      * Deletes file or directory. Directories are deleted even when not empty.
      * @param filePath relative path to file or directory.
@@ -49,6 +163,34 @@ public interface FileService {
      */
     void delete(Path filePath) throws IOException;
 
+    /**
+     * Renames file or directory out of the served tree, in every storage root holding it. The rename is serialized
+     * with commits and other writes of the path.
+     * @param filePath relative path to file or directory.
+     * @param directory reserved directory in each storage root the path is moved into.
+     * @param name name of the path in that directory.
+     * @return absolute paths the path was moved to, one per storage root holding it.
+     * @throws java.nio.file.NoSuchFileException when no storage root holds the path.
+     * @throws IOException
+     */
+    List<Path> moveOut(Path filePath, String directory, String name) throws IOException;
+
+    /**
+     * Moves file or directory to new path, target must not exist.
+     * @param filePath relative path to file or directory.
+     * @param targetPath relative path the file or directory is moved to.
+     * @throws IOException
+     */
+    void move(Path filePath, Path targetPath) throws IOException;
+
+    /**
+     * Copies file or directory with all subdirectories to new path, target must not exist.
+     * @param filePath relative path to file or directory.
+     * @param targetPath relative path of the copy.
+     * @throws IOException
+     */
+    void copy(Path filePath, Path targetPath) throws IOException;
+
     /**
      * Creates new empty directory.
      * @param filePath relative path to directory.
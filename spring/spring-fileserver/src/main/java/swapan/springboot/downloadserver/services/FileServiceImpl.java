@@ -1,27 +1,62 @@
 package swapan.springboot.downloadserver.services;
 
+import swapan.springboot.downloadserver.dto.FileEntry;
 import swapan.springboot.downloadserver.dto.FileList;
 import swapan.springboot.downloadserver.dto.DirectoryInfo;
+import swapan.springboot.downloadserver.dto.DiskUsage;
 import swapan.springboot.downloadserver.dto.FileInfo;
+import swapan.springboot.downloadserver.dto.RebalanceStats;
+import swapan.springboot.downloadserver.dto.SearchQuery;
 import swapan.springboot.downloadserver.config.FileServerConfig;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.UrlResource;
 import org.springframework.stereotype.Service;
-import org.springframework.util.FileSystemUtils;
 
-import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.net.MalformedURLException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
 import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.HexFormat;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Stream;
 
 @Service
@@ -29,13 +64,76 @@ public class FileServiceImpl implements FileService {
 
     private static final Logger LOG = LoggerFactory.getLogger(FileServiceImpl.class);
 
+    private final StorageRoots storageRoots;
     private final Path fileStorageLocation;
+    private final int bufferSize;
+    private final boolean listPermissions;
+    private final ListingCache listingCache;
+    private final SidecarCompressor sidecarCompressor;
+    private final HotFileCache hotFileCache;
+    private final BlobStore blobStore;
+    private final FileCopier fileCopier;
+    private final ForkJoinPool searchPool;
+    private final PathLocks pathLocks = new PathLocks();
+    private final StorageRebalancer storageRebalancer;
+    private final TempFileSweeper tempFileSweeper;
+    private final MetadataIndex metadataIndex;
 
-    @Autowired
     public FileServiceImpl(FileServerConfig fileServerConfig) {
+        this(fileServerConfig, new ListingCache(fileServerConfig), new SidecarCompressor(fileServerConfig),
+                new HotFileCache(fileServerConfig), new BlobStore(fileServerConfig), new MetadataIndex(fileServerConfig));
+    }
+
+    @Autowired
+    public FileServiceImpl(FileServerConfig fileServerConfig, ListingCache listingCache, SidecarCompressor sidecarCompressor,
+                           HotFileCache hotFileCache, BlobStore blobStore, MetadataIndex metadataIndex) {
         LOG.info("fileStorageLocation={}", fileServerConfig.getHome());
-        fileStorageLocation = Paths.get(fileServerConfig.getHome())
-                .toAbsolutePath().normalize();
+        storageRoots = new StorageRoots(fileServerConfig.getHome());
+        fileStorageLocation = storageRoots.primary();
+        bufferSize = fileServerConfig.getBufferSize();
+        listPermissions = fileServerConfig.isListPermissions()
+                && FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+        this.listingCache = listingCache;
+        this.sidecarCompressor = sidecarCompressor;
+        this.hotFileCache = hotFileCache;
+        this.blobStore = blobStore;
+        this.metadataIndex = metadataIndex;
+        // deduplicated files are replaced on every write, so copies can share them
+        fileCopier = new FileCopier(blobStore.isEnabled(), fileServerConfig.isCopyReflink());
+        searchPool = new ForkJoinPool(Math.max(1, fileServerConfig.getSearchParallelism()));
+        storageRebalancer = new StorageRebalancer(storageRoots, pathLocks, hotFileCache);
+        tempFileSweeper = new TempFileSweeper(storageRoots);
+    }
+
+    /**
+     * Removes temporary files left by a crash and moves files placed to other roots after a root was added,
+     * both in background.
+     */
+    @PostConstruct
+    public void start() {
+        tempFileSweeper.start();
+        storageRebalancer.start();
+    }
+
+    /**
+     * Removes temporary files left by a crash in calling thread.
+     */
+    void sweepTempFiles() {
+        tempFileSweeper.run();
+    }
+
+    /**
+     * Moves misplaced files in calling thread.
+     */
+    void rebalance() {
+        storageRebalancer.run();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        tempFileSweeper.stop();
+        storageRebalancer.stop();
+        searchPool.shutdownNow();
     }
 
     @Override
@@ -43,13 +141,36 @@ public class FileServiceImpl implements FileService {
         return fileStorageLocation;
     }
 
+    @Override
+    public List<Path> getBasePaths() {
+        return storageRoots.all();
+    }
+
+    @Override
+    public Path resolvePath(Path filePath) {
+        return storageRoots.locate(filePath);
+    }
+
+    @Override
+    public RebalanceStats getRebalanceStats() {
+        return storageRebalancer.getStats();
+    }
+
     @Override
     public Resource loadFileAsResource(Path filePath) throws IOException {
         LOG.info("loadFileAsResource: {}", filePath);
         try {
-            Path resolvedFilePath = this.fileStorageLocation.resolve(filePath).normalize();
+            Path resolvedFilePath = storageRoots.locate(filePath);
+            if (hotFileCache.isEnabled()) {
+                CachedFileResource cached = hotFileCache.get(resolvedFilePath);
+                if (cached != null) {
+                    sidecarCompressor.recordHit(resolvedFilePath);
+                    return cached;
+                }
+            }
             Resource resource = new UrlResource(resolvedFilePath.toUri());
             if(resource.exists()) {
+                sidecarCompressor.recordHit(resolvedFilePath);
                 return resource;
             } else {
                 throw new IOException("File not found " + filePath);
@@ -62,51 +183,627 @@ public class FileServiceImpl implements FileService {
     @Override
     public FileList getFilesInfo(Path filePath) throws IOException {
         LOG.info("getFilesInfo: {}", filePath);
+        Path resolvedFilePath = storageRoots.resolve(filePath);
+        if (isIndexReady()) {
+            return readIndexedFilesInfo(filePath);
+        }
+        if (storageRoots.isStriped()) {
+            // cache watches one directory, merged listing may change in any root
+            return readFilesInfo(filePath);
+        }
+        return listingCache.get(resolvedFilePath, () -> readFilesInfo(filePath));
+    }
+
+    private FileList readFilesInfo(Path filePath) throws IOException {
+        List<Path> directories = locateAll(filePath);
+        // directory present in several roots is listed once, with its newest modification time
+        Map<String, FileEntry> entries = new LinkedHashMap<>();
+        for (Path directory : directories) {
+            try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(directory)) {
+                for (Path entry : directoryStream) {
+                    if (storageRoots.isServerState(entry)) {
+                        continue;
+                    }
+                    FileEntry fileEntry = toFileEntry(entry);
+                    if (fileEntry != null) {
+                        entries.merge(fileEntry.getFilePath(), fileEntry, FileServiceImpl::newer);
+                    }
+                }
+            } catch (NotDirectoryException e) {
+                // listing of a file is empty
+            }
+        }
+        FileList fileList = new FileList(filePath.toString());
+        entries.values().forEach(fileList::add);
+        setLastModified(fileList, lastModified(directories));
+        return fileList;
+    }
+
+    private FileList readIndexedFilesInfo(Path filePath) throws IOException {
         FileList fileList = new FileList(filePath.toString());
-        Path resolvedFilePath = this.fileStorageLocation.resolve(filePath).normalize();
-        try (Stream<Path> filesWalk = Files.walk(resolvedFilePath, 1)) {
-            filesWalk.forEach(fw -> {
-                if (resolvedFilePath.endsWith(fw)) {
-                    //skip parent directory
-                } else if (Files.isDirectory(fw)) {
-                    fileList.add(new DirectoryInfo(fw.getFileName().toString()));
-                } else {
-                    fileList.add(new FileInfo(fw.getFileName().toString()));
+        metadataIndex.list(filePath, null, Integer.MAX_VALUE).forEach(fileList::add);
+        setLastModified(fileList, metadataIndex.getLastModified(filePath));
+        return fileList;
+    }
+
+    /**
+     * Index lists no permissions, listings with them are read from the file system.
+     */
+    private boolean isIndexReady() {
+        return metadataIndex.isReady() && !listPermissions;
+    }
+
+    /**
+     * @return existing copies of file or directory in all roots.
+     * @throws NoSuchFileException when there is none.
+     */
+    private List<Path> locateAll(Path filePath) throws NoSuchFileException {
+        List<Path> copies = storageRoots.locateAll(filePath);
+        if (copies.isEmpty()) {
+            throw new NoSuchFileException(filePath.toString());
+        }
+        return copies;
+    }
+
+    private static FileEntry newer(FileEntry first, FileEntry second) {
+        return second.getLastModified().isAfter(first.getLastModified()) ? second : first;
+    }
+
+    @Override
+    public FileList getFilesInfo(Path filePath, String cursor, int limit) throws IOException {
+        LOG.info("getFilesInfo: {} cursor={} limit={}", filePath, cursor, limit);
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Invalid limit " + limit);
+        }
+        String after = cursor == null ? null : new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        if (isIndexReady()) {
+            return readIndexedFilesInfo(filePath, after, limit);
+        }
+        List<Path> directories = locateAll(filePath);
+        // keep only the first 'limit' names after cursor, largest name is evicted first
+        TreeMap<String, List<Path>> page = new TreeMap<>();
+        boolean more = false;
+        for (Path directory : directories) {
+            try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(directory)) {
+                for (Path entry : directoryStream) {
+                    String name = entry.getFileName().toString();
+                    if ((after != null && name.compareTo(after) <= 0) || storageRoots.isServerState(entry)) {
+                        continue;
+                    }
+                    // same directory in several roots takes one place in the page
+                    page.computeIfAbsent(name, key -> new ArrayList<>(1)).add(entry);
+                    if (page.size() > limit) {
+                        page.pollLastEntry();
+                        more = true;
+                    }
                 }
-            });
+            }
+        }
+        FileList fileList = new FileList(filePath.toString());
+        // attributes are read for entries of this page only
+        for (List<Path> copies : page.values()) {
+            FileEntry fileEntry = null;
+            for (Path entry : copies) {
+                FileEntry copy = toFileEntry(entry);
+                if (copy != null) {
+                    fileEntry = fileEntry == null ? copy : newer(fileEntry, copy);
+                }
+            }
+            if (fileEntry != null) {
+                fileList.add(fileEntry);
+            }
+        }
+        setLastModified(fileList, lastModified(directories));
+        if (more) {
+            setNextCursor(fileList, page.lastKey());
         }
         return fileList;
     }
 
+    private FileList readIndexedFilesInfo(Path filePath, String after, int limit) throws IOException {
+        // one entry more tells whether there is next page
+        List<FileEntry> entries = metadataIndex.list(filePath, after, limit == Integer.MAX_VALUE ? limit : limit + 1);
+        FileList fileList = new FileList(filePath.toString());
+        entries.stream().limit(limit).forEach(fileList::add);
+        setLastModified(fileList, metadataIndex.getLastModified(filePath));
+        if (entries.size() > limit) {
+            setNextCursor(fileList, entries.get(limit - 1).getFilePath());
+        }
+        return fileList;
+    }
+
+    private static void setNextCursor(FileList fileList, String last) {
+        fileList.setNextCursor(Base64.getUrlEncoder().withoutPadding().encodeToString(last.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Override
+    public Stream<FileEntry> streamFilesInfo(Path filePath) throws IOException {
+        LOG.info("streamFilesInfo: {}", filePath);
+        if (isIndexReady()) {
+            return metadataIndex.list(filePath, null, Integer.MAX_VALUE).stream();
+        }
+        List<Path> directories = locateAll(filePath);
+        if (directories.size() == 1) {
+            return Files.list(directories.get(0)).filter(entry -> !storageRoots.isServerState(entry))
+                    .map(this::toFileEntryUnchecked).filter(Objects::nonNull);
+        }
+        // roots are listed one after another, names seen in earlier roots are skipped
+        Set<String> names = ConcurrentHashMap.newKeySet();
+        return directories.stream().flatMap(directory -> {
+            try {
+                return Files.list(directory);
+            } catch (NoSuchFileException e) {
+                return Stream.empty();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }).filter(entry -> !storageRoots.isServerState(entry))
+                .map(this::toFileEntryUnchecked).filter(entry -> entry != null && names.add(entry.getFilePath()));
+    }
+
+    private FileEntry toFileEntryUnchecked(Path entry) {
+        try {
+            return toFileEntry(entry);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public Stream<FileEntry> search(Path filePath, SearchQuery query) throws IOException {
+        LOG.info("search: {} glob={} regex={}", filePath, query.getGlob(), query.getRegex());
+        if (isIndexReady()) {
+            return metadataIndex.search(filePath, query);
+        }
+        if (!storageRoots.isStriped()) {
+            Path resolvedFilePath = storageRoots.resolve(filePath);
+            return FileTreeSearch.search(searchPool, resolvedFilePath, query, attributesType(), FileServiceImpl::toFileEntry,
+                    storageRoots::isServerState);
+        }
+        // every root is searched in parallel, paths found in several roots are reported once
+        Stream<FileEntry> matches = Stream.empty();
+        for (Path directory : locateAll(filePath)) {
+            Stream<FileEntry> rootMatches = FileTreeSearch.search(searchPool, directory, query, attributesType(),
+                    FileServiceImpl::toFileEntry, storageRoots::isServerState);
+            matches = Stream.concat(matches, rootMatches);
+        }
+        Set<String> paths = ConcurrentHashMap.newKeySet();
+        return matches.filter(entry -> paths.add(entry.getFilePath())).limit(query.getLimit());
+    }
+
+    @Override
+    public DiskUsage getDiskUsage(Path filePath) throws IOException {
+        LOG.info("getDiskUsage: {}", filePath);
+        if (metadataIndex.isReady()) {
+            return metadataIndex.getDiskUsage(filePath);
+        }
+        // same totals as the index would have, server state and unfinished uploads are not counted
+        long[] totals = new long[3];
+        for (Path copy : locateAll(filePath)) {
+            Path root = storageRoots.rootOf(copy);
+            Files.walkFileTree(copy, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) {
+                    if (!MetadataIndex.isIndexed(MetadataIndex.key(root.relativize(dir)))) {
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    if (!dir.equals(copy)) {
+                        totals[2]++;
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                    if (attributes.isRegularFile() && MetadataIndex.isIndexed(MetadataIndex.key(root.relativize(file)))) {
+                        totals[0] += attributes.size();
+                        totals[1]++;
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) throws IOException {
+                    if (e instanceof NoSuchFileException || e instanceof AccessDeniedException) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                    throw e;
+                }
+            });
+        }
+        return new DiskUsage(filePath.toString(), totals[0], totals[1], totals[2]);
+    }
+
+    private static Instant lastModified(List<Path> directories) throws IOException {
+        Instant lastModified = Instant.EPOCH;
+        for (Path directory : directories) {
+            lastModified = newest(lastModified, Files.getLastModifiedTime(directory).toInstant());
+        }
+        return lastModified;
+    }
+
+    private void setLastModified(FileList fileList, Instant directoryModified) {
+        Instant lastModified = directoryModified;
+        for (FileEntry entry : fileList.getFileInfo()) {
+            lastModified = newest(lastModified, entry.getLastModified());
+        }
+        for (FileEntry entry : fileList.getDirectoryInfo()) {
+            lastModified = newest(lastModified, entry.getLastModified());
+        }
+        fileList.setLastModified(lastModified);
+    }
+
+    private static Instant newest(Instant first, Instant second) {
+        return second != null && second.isAfter(first) ? second : first;
+    }
+
+    /**
+     * Builds listing entry from single attribute read, returns null when entry disappeared meanwhile.
+     */
+    private FileEntry toFileEntry(Path entry) throws IOException {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(entry, attributesType());
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        return toFileEntry(entry.getFileName().toString(), attributes);
+    }
+
+    private static FileEntry toFileEntry(String name, BasicFileAttributes attributes) {
+        Instant lastModified = attributes.lastModifiedTime().toInstant();
+        String permissions = attributes instanceof PosixFileAttributes posixAttributes
+                ? PosixFilePermissions.toString(posixAttributes.permissions())
+                : null;
+        if (attributes.isDirectory()) {
+            return new DirectoryInfo(name, lastModified, permissions);
+        }
+        return new FileInfo(name, attributes.size(), lastModified, permissions);
+    }
+
+    private Class<? extends BasicFileAttributes> attributesType() {
+        return listPermissions ? PosixFileAttributes.class : BasicFileAttributes.class;
+    }
+
     @Override
     public void saveFile(Path filePath, InputStream inputStream) throws IOException {
-        LOG.info("saveFile: {}", filePath);
-        Path resolvedFilePath = this.fileStorageLocation.resolve(filePath).normalize();
-        byte[] buffer = new byte[inputStream.available()];
-        inputStream.read(buffer);
-        File targetFile = resolvedFilePath.toFile();
-        try (OutputStream outStream = new FileOutputStream(targetFile)) {
-            outStream.write(buffer);
+        saveFile(filePath, inputStream, -1);
+    }
+
+    @Override
+    public void saveFile(Path filePath, InputStream inputStream, long sizeHint) throws IOException {
+        LOG.info("saveFile: {} sizeHint={}", filePath, sizeHint);
+        storageRoots.resolve(filePath); // rejects paths leading out of the roots
+        if (blobStore.isEnabled()) {
+            // deduplication is available with single root only, content is hashed while written into
+            // the blob store and the file becomes link to it
+            MessageDigest digest = BlobStore.newDigest();
+            Path tempFile = blobStore.createTempFile();
+            try {
+                writeFile(tempFile, new DigestInputStream(inputStream, digest), sizeHint);
+                commitBlob(tempFile, filePath, HexFormat.of().formatHex(digest.digest()));
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+        } else {
+            // written aside and renamed over the file, concurrent uploads write their own files
+            Path tempFile = createTempFile(filePath);
+            // hash is indexed with the file, computed while the stream is written at no extra read
+            MessageDigest digest = metadataIndex.isEnabled() ? BlobStore.newDigest() : null;
+            try {
+                writeFile(tempFile, digest == null ? inputStream : new DigestInputStream(inputStream, digest), sizeHint);
+                commit(tempFile, filePath, digest == null ? null : HexFormat.of().formatHex(digest.digest()));
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
         }
     }
 
+    @Override
+    public Path createTempFile(Path filePath) throws IOException {
+        Path resolvedFilePath = storageRoots.place(filePath);
+        createParentDirectory(filePath, resolvedFilePath);
+        Path tempFile = resolvedFilePath.resolveSibling("." + resolvedFilePath.getFileName() + "." + UUID.randomUUID() + ".part");
+        // not Files.createTempFile, which would make the file readable by owner only after rename too
+        return Files.createFile(tempFile);
+    }
+
+    @Override
+    public void commitFile(Path tempFile, Path filePath) throws IOException {
+        commit(tempFile, filePath, null);
+    }
+
+    @Override
+    public void commitFile(Path tempFile, Path filePath, String sha256) throws IOException {
+        if (blobStore.isEnabled()) {
+            commitBlob(tempFile, filePath, sha256);
+        } else {
+            commit(tempFile, filePath, sha256);
+        }
+    }
+
+    /**
+     * File becomes link to the content in the blob store, temporary file is consumed.
+     */
+    private void commitBlob(Path tempFile, Path filePath, String sha256) throws IOException {
+        Path resolvedFilePath = storageRoots.resolve(filePath);
+        ReentrantLock lock = pathLocks.get(resolvedFilePath);
+        lock.lock();
+        try {
+            blobStore.commit(tempFile, sha256, resolvedFilePath);
+            hotFileCache.invalidate(resolvedFilePath);
+            deleteSidecars(filePath, resolvedFilePath);
+            metadataIndex.update(filePath, sha256);
+        } finally {
+            lock.unlock();
+        }
+        invalidateListing(resolvedFilePath.getParent());
+    }
+
+    /**
+     * @param sha256 lower case hex SHA-256 of content for the index, null when not known.
+     */
+    private void commit(Path tempFile, Path filePath, String sha256) throws IOException {
+        LOG.info("commitFile: {}", filePath);
+        Path resolvedFilePath = storageRoots.place(filePath);
+        ReentrantLock lock = pathLocks.get(storageRoots.resolve(filePath));
+        lock.lock();
+        try {
+            BasicFileAttributes replaced = null;
+            try {
+                replaced = Files.readAttributes(resolvedFilePath, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            } catch (NoSuchFileException e) {
+                // new file
+            }
+            Files.move(tempFile, resolvedFilePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            if (replaced != null) {
+                blobStore.release(replaced);
+            }
+            hotFileCache.invalidate(resolvedFilePath);
+            deleteSidecars(filePath, resolvedFilePath);
+            // older content left in another root until rebalance would be found after delete of this one
+            for (Path copy : storageRoots.locateAll(filePath)) {
+                if (!copy.equals(resolvedFilePath) && Files.isRegularFile(copy, LinkOption.NOFOLLOW_LINKS)) {
+                    Files.delete(copy);
+                    hotFileCache.invalidate(copy);
+                    deleteSidecars(filePath, copy);
+                }
+            }
+            metadataIndex.update(filePath, sha256);
+        } finally {
+            lock.unlock();
+        }
+        invalidateListing(storageRoots.resolve(filePath).getParent());
+    }
+
+    /**
+     * File placed to other root than the rest of its directory needs the directory created there.
+     */
+    private void createParentDirectory(Path filePath, Path resolvedFilePath) throws IOException {
+        Path parent = filePath.normalize().getParent();
+        if (storageRoots.isStriped() && parent != null && !Files.isDirectory(resolvedFilePath.getParent())
+                && storageRoots.locateAll(parent).stream().anyMatch(Files::isDirectory)) {
+            Files.createDirectories(resolvedFilePath.getParent());
+        }
+    }
+
+    private void writeFile(Path file, InputStream inputStream, long sizeHint) throws IOException {
+        try (FileChannel target = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            if (sizeHint > 0) {
+                // reserve full length up front, trimmed below if the stream turns out shorter
+                target.write(ByteBuffer.allocate(1), sizeHint - 1);
+            }
+            long written = StreamCopier.copy(inputStream, target, 0, Long.MAX_VALUE, bufferSize);
+            target.truncate(written);
+        }
+    }
+
+    @Override
+    public boolean hasContent(String sha256) {
+        return blobStore.contains(sha256);
+    }
+
+    @Override
+    public void linkContent(String sha256, Path filePath) throws IOException {
+        LOG.info("linkContent: {} {}", filePath, sha256);
+        Path resolvedFilePath = storageRoots.resolve(filePath);
+        ReentrantLock lock = pathLocks.get(resolvedFilePath);
+        lock.lock();
+        try {
+            blobStore.link(sha256, resolvedFilePath);
+            hotFileCache.invalidate(resolvedFilePath);
+            metadataIndex.update(filePath, sha256);
+        } finally {
+            lock.unlock();
+        }
+        invalidateListing(resolvedFilePath.getParent());
+    }
+
     @Override
     public void delete(Path filePath) throws IOException {
         LOG.info("delete: {}", filePath);
-        Path resolvedFilePath = this.fileStorageLocation.resolve(filePath).normalize();
-        LOG.info("deleting: {}", resolvedFilePath.toString());
-        if (Files.isDirectory(resolvedFilePath)) {
-            FileSystemUtils.deleteRecursively(resolvedFilePath);
+        Path resolvedFilePath = storageRoots.resolve(filePath);
+        ReentrantLock lock = pathLocks.get(resolvedFilePath);
+        lock.lock();
+        try {
+            // directories are deleted from every root, a file may be in two of them while rebalanced; copies are
+            // located again under the lock until none is left, rebalance may have moved one to a root already visited
+            List<Path> copies = locateAll(filePath);
+            do {
+                for (Path copy : copies) {
+                    deleteCopy(filePath, copy);
+                }
+                copies = storageRoots.locateAll(filePath);
+            } while (!copies.isEmpty());
+        } finally {
+            lock.unlock();
+        }
+        metadataIndex.update(filePath, null);
+        listingCache.invalidateTree(resolvedFilePath);
+        invalidateListing(resolvedFilePath.getParent());
+    }
+
+    private void deleteCopy(Path filePath, Path copy) throws IOException {
+        LOG.info("deleting: {}", copy);
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(copy, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (NoSuchFileException e) {
+            // moved to another root meanwhile, found by the next pass
+            return;
+        }
+        if (attributes.isDirectory()) {
+            blobStore.deleteTree(copy);
         } else {
-            Files.delete(resolvedFilePath);
+            Files.delete(copy);
+            blobStore.release(attributes);
+            deleteSidecars(filePath, copy);
+        }
+        hotFileCache.invalidateTree(copy);
+    }
+
+    /**
+     * Removes sidecars of a file which was deleted, moved away or replaced, they no longer match any content.
+     * @param filePath relative path of the file.
+     * @param copy resolved path of the file in one root.
+     */
+    private void deleteSidecars(Path filePath, Path copy) throws IOException {
+        for (String suffix : SidecarCompressor.SUFFIXES) {
+            Path sidecar = copy.resolveSibling(copy.getFileName() + suffix);
+            if (Files.deleteIfExists(sidecar)) {
+                hotFileCache.invalidate(sidecar);
+                metadataIndex.update(filePath.resolveSibling(filePath.getFileName() + suffix), null);
+            }
+        }
+    }
+
+    @Override
+    public List<Path> moveOut(Path filePath, String directory, String name) throws IOException {
+        LOG.info("moveOut: {} -> {}/{}", filePath, directory, name);
+        Path resolvedFilePath = storageRoots.resolve(filePath);
+        if (resolvedFilePath.equals(storageRoots.primary())) {
+            throw new IllegalArgumentException("Cannot move base directory");
+        }
+        List<Path> movedPaths = new ArrayList<>();
+        ReentrantLock lock = pathLocks.get(resolvedFilePath);
+        lock.lock();
+        try {
+            // copies are located under the lock, so no commit lands between listing and rename
+            for (Path copy : locateAll(filePath)) {
+                Path root = storageRoots.rootOf(copy);
+                Path target = Files.createDirectories(root.resolve(directory)).resolve(name);
+                Files.move(copy, target, StandardCopyOption.ATOMIC_MOVE);
+                hotFileCache.invalidateTree(copy);
+                if (Files.isRegularFile(target, LinkOption.NOFOLLOW_LINKS)) {
+                    deleteSidecars(filePath, copy);
+                }
+                movedPaths.add(target);
+            }
+        } finally {
+            lock.unlock();
+        }
+        metadataIndex.update(filePath, null);
+        listingCache.invalidateTree(resolvedFilePath);
+        invalidateListing(resolvedFilePath.getParent());
+        return movedPaths;
+    }
+
+    /**
+     * Drops cached listing of changed directory and of its parent, which lists the changed directory with its mtime.
+     */
+    private void invalidateListing(Path directory) {
+        listingCache.invalidate(directory);
+        listingCache.invalidate(directory.getParent());
+    }
+
+    @Override
+    public void move(Path filePath, Path targetPath) throws IOException {
+        LOG.info("move: {} -> {}", filePath, targetPath);
+        Path resolvedFilePath = storageRoots.resolve(filePath);
+        Path resolvedTargetPath = storageRoots.resolve(targetPath);
+        checkTarget(filePath, resolvedFilePath, resolvedTargetPath);
+        ReentrantLock lock = pathLocks.get(resolvedTargetPath);
+        lock.lock();
+        try {
+            checkTargetAbsent(targetPath);
+            // renamed within every root holding it, rebalance moves what ends up misplaced
+            for (Path copy : locateAll(filePath)) {
+                Path target = targetInRootOf(copy, targetPath);
+                fileCopier.move(copy, target);
+                hotFileCache.invalidateTree(copy);
+                if (Files.isRegularFile(target, LinkOption.NOFOLLOW_LINKS)) {
+                    deleteSidecars(filePath, copy);
+                }
+            }
+            metadataIndex.updateTree(filePath);
+            metadataIndex.updateTree(targetPath);
+        } finally {
+            lock.unlock();
+        }
+        listingCache.invalidateTree(resolvedFilePath);
+        invalidateListing(resolvedFilePath.getParent());
+        invalidateListing(resolvedTargetPath.getParent());
+    }
+
+    @Override
+    public void copy(Path filePath, Path targetPath) throws IOException {
+        LOG.info("copy: {} -> {}", filePath, targetPath);
+        Path resolvedFilePath = storageRoots.resolve(filePath);
+        Path resolvedTargetPath = storageRoots.resolve(targetPath);
+        checkTarget(filePath, resolvedFilePath, resolvedTargetPath);
+        ReentrantLock lock = pathLocks.get(resolvedTargetPath);
+        lock.lock();
+        try {
+            checkTargetAbsent(targetPath);
+            for (Path copy : locateAll(filePath)) {
+                fileCopier.copy(copy, targetInRootOf(copy, targetPath));
+            }
+            metadataIndex.updateTree(targetPath);
+        } finally {
+            lock.unlock();
+        }
+        invalidateListing(resolvedTargetPath.getParent());
+    }
+
+    /**
+     * With several roots the target must not exist in any of them, a single root is checked by the move or copy.
+     */
+    private void checkTargetAbsent(Path targetPath) throws FileAlreadyExistsException {
+        if (storageRoots.isStriped() && !storageRoots.locateAll(targetPath).isEmpty()) {
+            throw new FileAlreadyExistsException(targetPath.toString());
+        }
+    }
+
+    /**
+     * Resolves target of move or copy in the root of its source, so it stays a rename or reflink within one
+     * file system.
+     */
+    private Path targetInRootOf(Path copy, Path targetPath) throws IOException {
+        Path resolvedTargetPath = StorageRoots.resolve(storageRoots.rootOf(copy), targetPath);
+        createParentDirectory(targetPath, resolvedTargetPath);
+        return resolvedTargetPath;
+    }
+
+    /**
+     * Directory cannot be moved or copied into itself.
+     */
+    private static void checkTarget(Path filePath, Path resolvedFilePath, Path resolvedTargetPath) {
+        if (resolvedTargetPath.startsWith(resolvedFilePath)) {
+            throw new IllegalArgumentException("Cannot move or copy " + filePath + " into itself");
         }
     }
 
     @Override
     public void createDirectory(Path filePath) throws IOException {
         LOG.info("createDirectory: {}", filePath);
-        Path resolvedFilePath = this.fileStorageLocation.resolve(filePath).normalize();
+        Path resolvedFilePath = storageRoots.resolve(filePath);
         Files.createDirectories(resolvedFilePath);
+        metadataIndex.update(filePath, null);
+        // any number of missing parents may have been created
+        for (Path parent = resolvedFilePath.getParent(); parent != null && parent.startsWith(fileStorageLocation); parent = parent.getParent()) {
+            listingCache.invalidate(parent);
+        }
     }
 
 }
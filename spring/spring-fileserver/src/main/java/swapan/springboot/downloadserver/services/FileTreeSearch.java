@@ -0,0 +1,218 @@
+package swapan.springboot.downloadserver.services;
+
+import swapan.springboot.downloadserver.dto.FileEntry;
+import swapan.springboot.downloadserver.dto.SearchQuery;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Recursive search walking subdirectories in parallel. Matches are handed over to the consumer of the stream
+ * through bounded queue, so slow consumer slows the walk down. The walk stops when limit of matches is reached
+ * or when the stream is closed.
+ */
+final class FileTreeSearch {
+
+    /**
+     * Creates entry of match from its path relative to searched directory and attributes.
+     */
+    @FunctionalInterface
+    interface EntryFactory {
+        FileEntry create(String path, BasicFileAttributes attributes);
+    }
+
+    private static final Object END = new Object();
+    private static final int QUEUE_SIZE = 1024;
+
+    private final Path root;
+    private final SearchQuery query;
+    private final SearchFilter filter;
+    private final Class<? extends BasicFileAttributes> attributesType;
+    private final EntryFactory entryFactory;
+    private final Predicate<Path> excluded;
+    private final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+    private final AtomicInteger matches = new AtomicInteger();
+    private volatile boolean closed;
+
+    private FileTreeSearch(Path root, SearchQuery query, SearchFilter filter, Class<? extends BasicFileAttributes> attributesType,
+                           EntryFactory entryFactory, Predicate<Path> excluded) {
+        this.root = root;
+        this.query = query;
+        this.filter = filter;
+        this.attributesType = attributesType;
+        this.entryFactory = entryFactory;
+        this.excluded = excluded;
+    }
+
+    /**
+     * Starts search of directory on pool.
+     * @param pool pool walking the tree.
+     * @param root resolved absolute path of searched directory.
+     * @param query filters of the search.
+     * @param attributesType attributes read for every entry.
+     * @param entryFactory creates entries of matches.
+     * @param excluded entries which are skipped with their subtrees.
+     * @return matches in order they were found, must be closed.
+     * @throws IOException
+     */
+    static Stream<FileEntry> search(ForkJoinPool pool, Path root, SearchQuery query,
+                                    Class<? extends BasicFileAttributes> attributesType, EntryFactory entryFactory,
+                                    Predicate<Path> excluded) throws IOException {
+        SearchFilter filter = new SearchFilter(query);
+        if (!Files.isDirectory(root)) {
+            throw new NotDirectoryException(root.toString());
+        }
+        FileTreeSearch search = new FileTreeSearch(root, query, filter, attributesType, entryFactory, excluded);
+        pool.execute(search::run);
+        return StreamSupport.stream(search.new MatchSpliterator(), false)
+                .onClose(() -> search.closed = true);
+    }
+
+    private void run() {
+        Object last = END;
+        try {
+            new SearchTask(root, 1).invoke();
+        } catch (RuntimeException e) {
+            last = e;
+        }
+        offer(last);
+    }
+
+    private boolean isStopped() {
+        return closed || matches.get() >= query.getLimit();
+    }
+
+    private void emit(FileEntry entry) {
+        if (matches.incrementAndGet() <= query.getLimit()) {
+            offer(entry);
+        }
+    }
+
+    /**
+     * Waits for space in queue, gives up when consumer closed the stream.
+     */
+    private void offer(Object item) {
+        try {
+            while (!closed) {
+                if (queue.offer(item, 100, TimeUnit.MILLISECONDS)) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private boolean matches(Path entry, String path, BasicFileAttributes attributes) {
+        return filter.matches(entry.getFileName(), path, attributes.isDirectory(), attributes.size(),
+                attributes.lastModifiedTime().toInstant());
+    }
+
+    /**
+     * Lists one directory, forks task for every subdirectory while listing and joins them at the end.
+     */
+    private class SearchTask extends RecursiveAction {
+        private final Path directory;
+        private final int depth;
+
+        SearchTask(Path directory, int depth) {
+            this.directory = directory;
+            this.depth = depth;
+        }
+
+        @Override
+        protected void compute() {
+            List<SearchTask> subtasks = new ArrayList<>();
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+                for (Path entry : entries) {
+                    if (isStopped()) {
+                        break;
+                    }
+                    if (excluded.test(entry)) {
+                        continue;
+                    }
+                    BasicFileAttributes attributes;
+                    try {
+                        // links are not followed, so the walk cannot loop
+                        attributes = Files.readAttributes(entry, attributesType, LinkOption.NOFOLLOW_LINKS);
+                    } catch (NoSuchFileException e) {
+                        continue;
+                    }
+                    String path = root.relativize(entry).toString().replace(File.separatorChar, '/');
+                    if (matches(entry, path, attributes)) {
+                        emit(entryFactory.create(path, attributes));
+                    }
+                    if (attributes.isDirectory() && depth < query.getMaxDepth()) {
+                        SearchTask subtask = new SearchTask(entry, depth + 1);
+                        subtask.fork();
+                        subtasks.add(subtask);
+                    }
+                }
+            } catch (AccessDeniedException | NoSuchFileException e) {
+                // unreadable or deleted subdirectory is skipped
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            for (SearchTask subtask : subtasks) {
+                subtask.join();
+            }
+        }
+    }
+
+    private class MatchSpliterator extends Spliterators.AbstractSpliterator<FileEntry> {
+        private boolean finished;
+
+        MatchSpliterator() {
+            super(Long.MAX_VALUE, Spliterator.NONNULL);
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super FileEntry> action) {
+            if (finished) {
+                return false;
+            }
+            Object item;
+            try {
+                item = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new UncheckedIOException(new InterruptedIOException("Search interrupted"));
+            }
+            if (item == END) {
+                finished = true;
+                return false;
+            }
+            if (item instanceof RuntimeException e) {
+                finished = true;
+                throw e;
+            }
+            action.accept((FileEntry) item);
+            return true;
+        }
+    }
+
+}
@@ -0,0 +1,242 @@
+package swapan.springboot.downloadserver.services;
+
+import swapan.springboot.downloadserver.config.FileServerConfig;
+import swapan.springboot.downloadserver.dto.HotCacheStats;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-memory cache of small frequently downloaded files. Content lives in heap buffers, so evicted entries are
+ * reclaimed by regular collections and the total budget bounds memory actually held, entries are evicted
+ * least recently used first. A file is admitted on its min-hits request,
+ * so one-off downloads do not push hot files out. Entries are validated by size, modification time and file key
+ * on every request, files changed outside of this server are never served stale. Statistics are bound to meter
+ * registry as {@code fileserver.hotcache.*} meters.
+ */
+@Component
+public class HotFileCache implements MeterBinder {
+
+    private static final Logger LOG = LoggerFactory.getLogger(HotFileCache.class);
+
+    /**
+     * Number of not yet admitted files whose requests are counted.
+     */
+    private static final int MAX_CANDIDATES = 4096;
+
+    private final long maxBytes;
+    private final long maxEntrySize;
+    private final int minHits;
+    private final Map<Path, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Path, Integer> candidates;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder bytesSaved = new LongAdder();
+    private long bytes;
+
+    @Autowired
+    public HotFileCache(FileServerConfig fileServerConfig) {
+        maxBytes = fileServerConfig.getHotCacheSize();
+        maxEntrySize = Math.min(fileServerConfig.getHotCacheMaxEntrySize(), Integer.MAX_VALUE);
+        minHits = Math.max(1, fileServerConfig.getHotCacheMinHits());
+        candidates = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Path, Integer> eldest) {
+                return size() > MAX_CANDIDATES;
+            }
+        };
+    }
+
+    public boolean isEnabled() {
+        return maxBytes > 0 && maxEntrySize > 0;
+    }
+
+    /**
+     * Get cached content of file, file is read into cache when it became hot.
+     * @param file resolved absolute path of file.
+     * @return resource with cached content or null when file is missing, too large or not hot yet.
+     */
+    public CachedFileResource get(Path file) {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (IOException e) {
+            return null;
+        }
+        if (!attributes.isRegularFile() || attributes.size() > maxEntrySize || attributes.size() > maxBytes) {
+            return null;
+        }
+        boolean admit;
+        lock.lock();
+        try {
+            Entry entry = entries.get(file);
+            if (entry != null && entry.matches(attributes)) {
+                hits.increment();
+                bytesSaved.add(attributes.size());
+                return new CachedFileResource(file, entry.content, attributes);
+            }
+            if (entry != null) {
+                remove(file);
+            }
+            misses.increment();
+            int count = candidates.merge(file, 1, Integer::sum);
+            admit = count >= minHits;
+        } finally {
+            lock.unlock();
+        }
+        if (!admit) {
+            return null;
+        }
+        ByteBuffer content;
+        try {
+            content = read(file, attributes);
+        } catch (IOException e) {
+            LOG.debug("cannot cache {}", file, e);
+            return null;
+        }
+        if (content == null) {
+            return null;
+        }
+        lock.lock();
+        try {
+            candidates.remove(file);
+            remove(file);
+            entries.put(file, new Entry(content, attributes));
+            bytes += content.capacity();
+            Iterator<Entry> eldest = entries.values().iterator();
+            while (bytes > maxBytes && eldest.hasNext()) {
+                bytes -= eldest.next().content.capacity();
+                eldest.remove();
+                evictions.increment();
+            }
+        } finally {
+            lock.unlock();
+        }
+        return new CachedFileResource(file, content, attributes);
+    }
+
+    /**
+     * Drops cached content of file.
+     * @param file resolved absolute path of file.
+     */
+    public void invalidate(Path file) {
+        lock.lock();
+        try {
+            remove(file);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drops cached content of all files in directory and its subdirectories.
+     * @param directory resolved absolute path of directory.
+     */
+    public void invalidateTree(Path directory) {
+        lock.lock();
+        try {
+            Iterator<Map.Entry<Path, Entry>> iterator = entries.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Path, Entry> entry = iterator.next();
+                if (entry.getKey().startsWith(directory)) {
+                    bytes -= entry.getValue().content.capacity();
+                    iterator.remove();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public HotCacheStats getStats() {
+        lock.lock();
+        try {
+            return new HotCacheStats(hits.sum(), misses.sum(), evictions.sum(), entries.size(), bytes, bytesSaved.sum());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("fileserver.hotcache.hits", hits, LongAdder::sum)
+                .description("downloads served from hot-file cache").register(registry);
+        FunctionCounter.builder("fileserver.hotcache.misses", misses, LongAdder::sum)
+                .description("downloads of files not in hot-file cache").register(registry);
+        FunctionCounter.builder("fileserver.hotcache.evictions", evictions, LongAdder::sum)
+                .description("entries evicted to keep hot-file cache in budget").register(registry);
+        FunctionCounter.builder("fileserver.hotcache.bytes.saved", bytesSaved, LongAdder::sum)
+                .baseUnit("bytes").description("bytes served without reading the disk").register(registry);
+        Gauge.builder("fileserver.hotcache.entries", this, cache -> cache.getStats().getSize())
+                .description("files held in hot-file cache").register(registry);
+        Gauge.builder("fileserver.hotcache.size", this, cache -> cache.getStats().getBytes())
+                .baseUnit("bytes").description("bytes held in hot-file cache").register(registry);
+    }
+
+    private void remove(Path file) {
+        Entry entry = entries.remove(file);
+        if (entry != null) {
+            bytes -= entry.content.capacity();
+        }
+    }
+
+    /**
+     * Reads whole file into heap buffer, null when the file changed while being read.
+     */
+    private static ByteBuffer read(Path file, BasicFileAttributes attributes) throws IOException {
+        ByteBuffer content = ByteBuffer.allocate((int) attributes.size());
+        try (FileChannel channel = FileChannel.open(file)) {
+            while (content.hasRemaining()) {
+                if (channel.read(content, content.position()) < 0) {
+                    return null;
+                }
+            }
+        }
+        if (!new Entry(content, attributes).matches(Files.readAttributes(file, BasicFileAttributes.class))) {
+            return null;
+        }
+        return content.flip().asReadOnlyBuffer();
+    }
+
+    private static class Entry {
+        private final ByteBuffer content;
+        private final long size;
+        private final long lastModified;
+        private final Object fileKey;
+
+        Entry(ByteBuffer content, BasicFileAttributes attributes) {
+            this.content = content;
+            this.size = attributes.size();
+            this.lastModified = attributes.lastModifiedTime().toMillis();
+            this.fileKey = attributes.fileKey();
+        }
+
+        boolean matches(BasicFileAttributes attributes) {
+            return size == attributes.size()
+                    && lastModified == attributes.lastModifiedTime().toMillis()
+                    && Objects.equals(fileKey, attributes.fileKey());
+        }
+    }
+
+}
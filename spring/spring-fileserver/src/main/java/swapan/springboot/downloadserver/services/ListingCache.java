@@ -0,0 +1,232 @@
+package swapan.springboot.downloadserver.services;
+
+import swapan.springboot.downloadserver.config.FileServerConfig;
+import swapan.springboot.downloadserver.dto.CacheStats;
+import swapan.springboot.downloadserver.dto.FileList;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded LRU cache of directory listings keyed by resolved path. Every cached directory is watched by
+ * {@link WatchService} so changes made outside of this server invalidate the entry as well.
+ * Guarded by {@link ReentrantLock} rather than monitor, virtual threads waiting for it do not pin their carrier.
+ */
+@Component
+public class ListingCache implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ListingCache.class);
+
+    /**
+     * Loads listing on cache miss.
+     */
+    @FunctionalInterface
+    public interface Loader {
+        FileList load() throws IOException;
+    }
+
+    private final int maxEntries;
+    private final Map<Path, Entry> entries;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final ReentrantLock lock = new ReentrantLock();
+    private WatchService watchService;
+
+    @Autowired
+    public ListingCache(FileServerConfig fileServerConfig) {
+        maxEntries = fileServerConfig.getListCacheSize();
+        entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Path, Entry> eldest) {
+                if (size() > maxEntries) {
+                    eldest.getValue().watchKey.cancel();
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Get cached listing of directory or load and cache it.
+     * @param directory resolved absolute path of directory.
+     * @param loader reads the directory on cache miss.
+     * @return listing of the directory, shared between callers and must not be modified.
+     * @throws IOException
+     */
+    public FileList get(Path directory, Loader loader) throws IOException {
+        if (maxEntries <= 0) {
+            return loader.load();
+        }
+        Entry pending;
+        lock.lock();
+        try {
+            Entry entry = entries.get(directory);
+            if (entry != null && entry.fileList != null) {
+                hits.increment();
+                return entry.fileList;
+            }
+            misses.increment();
+            try {
+                // watch before reading, so no change between read and registration is missed
+                WatchKey watchKey = directory.register(watchService(),
+                        StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+                pending = new Entry(watchKey, null);
+                entries.put(directory, pending);
+            } catch (IOException e) {
+                // not a directory or it cannot be watched, do not cache
+                pending = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+        // directory is read without holding the lock
+        FileList fileList = loader.load();
+        if (pending == null) {
+            return fileList;
+        }
+        lock.lock();
+        try {
+            // entry is replaced only when nothing invalidated it while loading
+            if (entries.get(directory) == pending) {
+                entries.put(directory, new Entry(pending.watchKey, fileList));
+            }
+        } finally {
+            lock.unlock();
+        }
+        return fileList;
+    }
+
+    /**
+     * Removes listing of single directory.
+     * @param directory resolved absolute path of directory.
+     */
+    public void invalidate(Path directory) {
+        lock.lock();
+        try {
+            Entry entry = entries.remove(directory);
+            if (entry != null) {
+                entry.watchKey.cancel();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes listings of directory and all its subdirectories.
+     * @param directory resolved absolute path of directory.
+     */
+    public void invalidateTree(Path directory) {
+        lock.lock();
+        try {
+            Iterator<Map.Entry<Path, Entry>> iterator = entries.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Path, Entry> entry = iterator.next();
+                if (entry.getKey().startsWith(directory)) {
+                    entry.getValue().watchKey.cancel();
+                    iterator.remove();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public CacheStats getStats() {
+        lock.lock();
+        try {
+            return new CacheStats(hits.sum(), misses.sum(), evictions.sum(), entries.size());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    @PreDestroy
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            entries.clear();
+            if (watchService != null) {
+                watchService.close();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private WatchService watchService() throws IOException {
+        if (watchService == null) {
+            watchService = FileSystems.getDefault().newWatchService();
+            Thread watcher = new Thread(() -> watch(watchService), "listing-cache-watcher");
+            watcher.setDaemon(true);
+            watcher.start();
+        }
+        return watchService;
+    }
+
+    private void watch(WatchService watchService) {
+        try {
+            while (true) {
+                WatchKey watchKey = watchService.take();
+                boolean overflow = false;
+                for (WatchEvent<?> event : watchKey.pollEvents()) {
+                    overflow |= event.kind() == StandardWatchEventKinds.OVERFLOW;
+                }
+                lock.lock();
+                try {
+                    if (overflow) {
+                        LOG.info("watch events lost, dropping all listings");
+                        entries.values().forEach(entry -> entry.watchKey.cancel());
+                        entries.clear();
+                    } else {
+                        // parent lists the changed directory with its mtime
+                        Path directory = (Path) watchKey.watchable();
+                        invalidate(directory);
+                        if (directory.getParent() != null) {
+                            invalidate(directory.getParent());
+                        }
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // cache closed
+        }
+    }
+
+    private static class Entry {
+        private final WatchKey watchKey;
+        private final FileList fileList;
+
+        Entry(WatchKey watchKey, FileList fileList) {
+            this.watchKey = watchKey;
+            this.fileList = fileList;
+        }
+    }
+
+}
@@ -0,0 +1,52 @@
+package swapan.springboot.downloadserver.services;
+
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Content type detection and compressibility of served files.
+ */
+public final class MediaTypes {
+
+    private static final List<MediaType> COMPRESSIBLE = List.of(
+            MediaType.parseMediaType("text/*"),
+            MediaType.APPLICATION_JSON,
+            MediaType.APPLICATION_NDJSON,
+            MediaType.APPLICATION_XML,
+            MediaType.parseMediaType("application/javascript"),
+            MediaType.parseMediaType("application/x-yaml"),
+            MediaType.parseMediaType("image/svg+xml"));
+
+    private MediaTypes() {
+    }
+
+    /**
+     * Detects content type by file name, falls back to platform detection and application/octet-stream.
+     * @param file path to file, only name is used by the first lookup.
+     * @return detected content type.
+     */
+    public static MediaType detect(Path file) {
+        return MediaTypeFactory.getMediaType(file.getFileName().toString()).orElseGet(() -> {
+            try {
+                String probed = Files.probeContentType(file);
+                return probed == null ? MediaType.APPLICATION_OCTET_STREAM : MediaType.parseMediaType(probed);
+            } catch (IOException | IllegalArgumentException e) {
+                return MediaType.APPLICATION_OCTET_STREAM;
+            }
+        });
+    }
+
+    public static boolean isCompressible(MediaType mediaType) {
+        String suffix = mediaType.getSubtypeSuffix();
+        if ("json".equals(suffix) || "xml".equals(suffix)) {
+            return true;
+        }
+        return COMPRESSIBLE.stream().anyMatch(compressible -> compressible.includes(mediaType));
+    }
+
+}
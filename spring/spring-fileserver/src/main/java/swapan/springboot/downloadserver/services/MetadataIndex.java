@@ -0,0 +1,744 @@
+package swapan.springboot.downloadserver.services;
+
+import swapan.springboot.downloadserver.config.FileServerConfig;
+import swapan.springboot.downloadserver.dto.DirectoryInfo;
+import swapan.springboot.downloadserver.dto.DiskUsage;
+import swapan.springboot.downloadserver.dto.FileEntry;
+import swapan.springboot.downloadserver.dto.FileInfo;
+import swapan.springboot.downloadserver.dto.SearchQuery;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Optional in-process index of file metadata: type, size, modification time and SHA-256 of content when known,
+ * so listings, search and disk usage do not touch slow network file systems.
+ * <p>
+ * Entries are kept in {@link ConcurrentSkipListMap} keyed by relative path, every directory is a contiguous range
+ * of keys: listing skips over subtrees of children, search scans the range and disk usage is read from totals
+ * kept up to date in directory entries. Every change is appended to a log in {@code .index} of the primary root,
+ * the log is compacted into a sorted snapshot after each reconciliation. Writes through {@link FileService} keep
+ * the index current, changes made outside of this server are picked up by periodic reconciliation against the
+ * file system. Blob store, trash, the index itself and unfinished uploads are not indexed.
+ * <p>
+ * Changes are serialized by {@link ReentrantLock}, queries read the map without locking.
+ */
+@Component
+public class MetadataIndex {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MetadataIndex.class);
+
+    public static final String INDEX_DIR = ".index";
+
+    /**
+     * Log is compacted once it has this many records and more records than the index has entries.
+     */
+    static final int COMPACT_MIN_RECORDS = 100_000;
+
+    private static final String SNAPSHOT_FILE = "metadata.snapshot";
+    private static final String LOG_FILE = "metadata.log";
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+
+    private final boolean enabled;
+    private final Duration reconcileInterval;
+    private final StorageRoots storageRoots;
+    private final Path indexLocation;
+    private final ConcurrentSkipListMap<String, Entry> entries = new ConcurrentSkipListMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private DataOutputStream log;
+    private long logRecords;
+    private long version;
+    private long reconciliation;
+    private boolean compactPending;
+    private volatile boolean started;
+    private volatile boolean ready;
+    private ScheduledExecutorService executor;
+
+    @Autowired
+    public MetadataIndex(FileServerConfig fileServerConfig) {
+        enabled = fileServerConfig.isMetadataIndex();
+        reconcileInterval = fileServerConfig.getMetadataIndexReconcileInterval();
+        storageRoots = new StorageRoots(fileServerConfig.getHome());
+        indexLocation = storageRoots.primary().resolve(INDEX_DIR);
+    }
+
+    /**
+     * Loads snapshot and log of previous run and schedules reconciliation, at once when there was nothing to load.
+     * Nothing is scheduled when the reconcile interval is zero.
+     */
+    @PostConstruct
+    public void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        Files.createDirectories(indexLocation);
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metadata-index");
+            thread.setDaemon(true);
+            return thread;
+        });
+        boolean loaded;
+        lock.lock();
+        try {
+            loaded = load();
+            log = openLog(StandardOpenOption.APPEND);
+            started = true;
+            if (!entries.containsKey("")) {
+                put("", true, 0, directoryLastModified(""), null);
+            }
+        } finally {
+            lock.unlock();
+        }
+        ready = loaded;
+        long interval = reconcileInterval.toMillis();
+        // zero interval leaves reconciliation to explicit calls
+        if (interval > 0) {
+            executor.scheduleWithFixedDelay(this::reconcileQuietly, loaded ? interval : 0, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws IOException {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        lock.lock();
+        try {
+            started = false;
+            if (log != null) {
+                log.close();
+                log = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return true once the index covers the whole tree, loaded from previous run or reconciled; queries are
+     * answered from the file system until then.
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Reads current attributes of file or directory after it was written and updates its entry and the entry
+     * of its parent, whose modification time changed too.
+     * @param filePath relative path, its entry is removed when the path no longer exists.
+     * @param sha256 lower case hex SHA-256 of content just written, null when not known.
+     */
+    public void update(Path filePath, String sha256) {
+        String key = key(filePath);
+        if (!started || !isIndexed(key)) {
+            return;
+        }
+        lock.lock();
+        try {
+            refresh(key, sha256);
+            refreshParent(key);
+        } catch (IOException e) {
+            // reconciliation repairs the entry
+            LOG.warn("cannot index {}", filePath, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Indexes directory with all its content again, after it was copied, moved or deleted.
+     * @param filePath relative path of file or directory.
+     */
+    public void updateTree(Path filePath) {
+        String key = key(filePath);
+        if (!started || !isIndexed(key)) {
+            return;
+        }
+        lock.lock();
+        try {
+            remove(key);
+            for (Path copy : storageRoots.locateAll(filePath)) {
+                Path root = storageRoots.rootOf(copy);
+                walk(root, copy, this::refresh);
+            }
+            refreshParent(key);
+        } catch (IOException e) {
+            LOG.warn("cannot index {}", filePath, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Lists directory from the index.
+     * @param directory relative path of directory.
+     * @param after only names ordered after this one are listed, null lists from the first one.
+     * @param limit maximum number of entries.
+     * @return entries in name order, empty for a file.
+     * @throws NoSuchFileException when the path is not indexed.
+     */
+    public List<FileEntry> list(Path directory, String after, int limit) throws NoSuchFileException {
+        String key = clientKey(directory);
+        Entry entry = find(directory, key);
+        List<FileEntry> children = new ArrayList<>();
+        if (!entry.directory) {
+            return children;
+        }
+        String prefix = childPrefix(key);
+        Map.Entry<String, Entry> child = entries.higherEntry(after == null ? prefix : prefix + after);
+        while (child != null && child.getKey().startsWith(prefix) && children.size() < limit) {
+            String name = child.getKey().substring(prefix.length());
+            int slash = name.indexOf('/');
+            if (slash >= 0) {
+                // first key of subdirectory content, the whole subtree is skipped in one step
+                child = entries.ceilingEntry(prefix + name.substring(0, slash) + "0");
+                continue;
+            }
+            children.add(toFileEntry(name, child.getValue()));
+            child = entries.higherEntry(child.getKey());
+        }
+        return children;
+    }
+
+    /**
+     * @param filePath relative path of file or directory.
+     * @return indexed modification time.
+     * @throws NoSuchFileException when the path is not indexed.
+     */
+    public Instant getLastModified(Path filePath) throws NoSuchFileException {
+        return Instant.ofEpochMilli(find(filePath, clientKey(filePath)).lastModified);
+    }
+
+    /**
+     * Searches directory and its subdirectories in the index, like {@link FileTreeSearch} does in the file system.
+     * @param directory relative path of directory.
+     * @param query filters of the search.
+     * @return matching entries with paths relative to the directory, in path order.
+     * @throws NotDirectoryException when the path is not an indexed directory.
+     */
+    public Stream<FileEntry> search(Path directory, SearchQuery query) throws NotDirectoryException {
+        SearchFilter filter = new SearchFilter(query);
+        String key = clientKey(directory);
+        Entry entry = entries.get(key);
+        if (entry == null || !entry.directory) {
+            throw new NotDirectoryException(directory.toString());
+        }
+        String prefix = childPrefix(key);
+        NavigableMap<String, Entry> subtree = key.isEmpty() ? entries.tailMap("", false)
+                : entries.subMap(prefix, true, key + "0", false);
+        return subtree.entrySet().stream()
+                .filter(match -> {
+                    String path = match.getKey().substring(prefix.length());
+                    Entry value = match.getValue();
+                    return depth(path) <= query.getMaxDepth() && filter.matches(Paths.get(path).getFileName(), path,
+                            value.directory, value.size, Instant.ofEpochMilli(value.lastModified));
+                })
+                .map(match -> toFileEntry(match.getKey().substring(prefix.length()), match.getValue()))
+                .limit(query.getLimit());
+    }
+
+    /**
+     * @param filePath relative path of file or directory.
+     * @return totals of the directory subtree, read from its entry without walking it.
+     * @throws NoSuchFileException when the path is not indexed.
+     */
+    public DiskUsage getDiskUsage(Path filePath) throws NoSuchFileException {
+        Entry entry = find(filePath, clientKey(filePath));
+        if (entry.directory) {
+            return new DiskUsage(filePath.toString(), entry.totalSize, entry.totalFiles, entry.totalDirectories);
+        }
+        return new DiskUsage(filePath.toString(), entry.size, 1, 0);
+    }
+
+    /**
+     * Walks all roots, updates entries which differ from the file system and removes entries which were not found.
+     * Entries written while walking are kept even when the walk missed them. Passes run one at a time.
+     */
+    synchronized void reconcile() throws IOException {
+        long id;
+        long startVersion;
+        lock.lock();
+        try {
+            id = ++reconciliation;
+            startVersion = version;
+        } finally {
+            lock.unlock();
+        }
+        long startTime = System.currentTimeMillis();
+        long[] changed = new long[1];
+        for (Path root : storageRoots.all()) {
+            walk(root, root, (key, sha256) -> {
+                if (reconcileEntry(key, root.resolve(key), id)) {
+                    changed[0]++;
+                }
+            });
+        }
+        long removed = 0;
+        lock.lock();
+        try {
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                if (!entry.getKey().isEmpty() && entry.getValue().reconciled != id && entry.getValue().version <= startVersion) {
+                    remove(entry.getKey());
+                    removed++;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        ready = true;
+        LOG.info("reconciled: entries={} changed={} removed={} in {} ms", entries.size(), changed[0], removed,
+                System.currentTimeMillis() - startTime);
+        compact();
+    }
+
+    private void reconcileQuietly() {
+        try {
+            reconcile();
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("reconciliation failed", e);
+        }
+    }
+
+    /**
+     * Marks entry as seen by reconciliation, updates it when it differs from what was walked.
+     * @return true when the entry changed.
+     */
+    private boolean reconcileEntry(String key, Path resolvedPath, long id) throws IOException {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(resolvedPath, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+        Entry entry = entries.get(key);
+        long lastModified = attributes.isDirectory() && storageRoots.isStriped() ? directoryLastModified(key)
+                : attributes.lastModifiedTime().toMillis();
+        boolean changed = entry == null || entry.directory != attributes.isDirectory() || entry.lastModified != lastModified
+                || (!entry.directory && entry.size != attributes.size());
+        if (changed) {
+            lock.lock();
+            try {
+                // attributes are read again under the lock, a writer may have replaced or deleted the path meanwhile
+                refresh(key, null);
+                entry = entries.get(key);
+            } finally {
+                lock.unlock();
+            }
+        }
+        if (entry != null) {
+            entry.reconciled = id;
+        }
+        return changed;
+    }
+
+    /**
+     * Rewrites log into sorted snapshot and starts a new log.
+     */
+    void compact() throws IOException {
+        lock.lock();
+        try {
+            compactPending = false;
+            if (!started) {
+                return;
+            }
+            Path snapshot = indexLocation.resolve(SNAPSHOT_FILE);
+            Path tempFile = indexLocation.resolve(SNAPSHOT_FILE + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile), 64 * 1024))) {
+                for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                    writePut(out, entry.getKey(), entry.getValue());
+                }
+            }
+            Files.move(tempFile, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            // log replayed over the new snapshot after crash right here ends in the same state
+            log.close();
+            log = openLog(StandardOpenOption.TRUNCATE_EXISTING);
+            logRecords = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private DataOutputStream openLog(StandardOpenOption mode) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(indexLocation.resolve(LOG_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, mode), 64 * 1024));
+    }
+
+    /**
+     * Reads snapshot and replays log, totals of directories are computed once at the end.
+     * @return false when there was nothing to load.
+     */
+    private boolean load() throws IOException {
+        Path snapshot = indexLocation.resolve(SNAPSHOT_FILE);
+        Path logFile = indexLocation.resolve(LOG_FILE);
+        if (!Files.exists(snapshot) && !Files.exists(logFile)) {
+            return false;
+        }
+        long records = 0;
+        if (Files.exists(snapshot)) {
+            records = read(snapshot);
+        }
+        if (Files.exists(logFile)) {
+            logRecords = read(logFile);
+            records += logRecords;
+        }
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            Entry value = entry.getValue();
+            if (value.directory) {
+                addToAncestors(entry.getKey(), 0, 0, 1);
+            } else {
+                addToAncestors(entry.getKey(), value.size, 1, 0);
+            }
+        }
+        LOG.info("loaded: entries={} records={}", entries.size(), records);
+        return true;
+    }
+
+    /**
+     * Applies records of file, stops at torn record at the end of log left by a crash.
+     * @return number of records read.
+     */
+    private long read(Path file) throws IOException {
+        long records = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 64 * 1024))) {
+            while (true) {
+                int op = in.read();
+                if (op < 0) {
+                    return records;
+                }
+                try {
+                    String key = in.readUTF();
+                    if (op == PUT) {
+                        boolean directory = in.readBoolean();
+                        long size = in.readLong();
+                        long lastModified = in.readLong();
+                        String sha256 = in.readBoolean() ? in.readUTF() : null;
+                        entries.put(key, new Entry(directory, size, lastModified, sha256, ++version));
+                    } else if (op == REMOVE) {
+                        entries.subMap(childPrefix(key), key + "0").clear();
+                        entries.remove(key);
+                    } else {
+                        throw new IOException("Corrupt record in " + file);
+                    }
+                } catch (EOFException e) {
+                    LOG.warn("torn record at end of {}", file);
+                    return records;
+                }
+                records++;
+            }
+        }
+    }
+
+    /**
+     * Walks tree without following links and calls action for every indexed directory and regular file.
+     */
+    private void walk(Path root, Path start, IndexAction action) throws IOException {
+        Files.walkFileTree(start, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) throws IOException {
+                String key = key(root.relativize(dir));
+                if (!isIndexed(key)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                action.apply(key, null);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                String key = key(root.relativize(file));
+                if (attributes.isRegularFile() && isIndexed(key)) {
+                    action.apply(key, null);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) throws IOException {
+                if (e instanceof NoSuchFileException || e instanceof AccessDeniedException) {
+                    return FileVisitResult.CONTINUE;
+                }
+                throw e;
+            }
+        });
+    }
+
+    @FunctionalInterface
+    private interface IndexAction {
+        void apply(String key, String sha256) throws IOException;
+    }
+
+    /**
+     * Sets entry from current attributes in the file system, directories take newest modification time of all
+     * roots holding them. Hash is kept while size and modification time do not change. Called under the lock.
+     */
+    private void refresh(String key, String sha256) throws IOException {
+        BasicFileAttributes file = null;
+        long directoryModified = -1;
+        for (Path copy : storageRoots.locateAll(Paths.get(key))) {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(copy, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                if (attributes.isDirectory()) {
+                    directoryModified = Math.max(directoryModified, attributes.lastModifiedTime().toMillis());
+                } else if (attributes.isRegularFile() && file == null) {
+                    file = attributes;
+                }
+            } catch (NoSuchFileException e) {
+                // deleted meanwhile
+            }
+        }
+        if (directoryModified >= 0) {
+            put(key, true, 0, directoryModified, null);
+        } else if (file != null) {
+            Entry old = entries.get(key);
+            long lastModified = file.lastModifiedTime().toMillis();
+            if (sha256 == null && old != null && !old.directory && old.size == file.size() && old.lastModified == lastModified) {
+                sha256 = old.sha256;
+            }
+            put(key, false, file.size(), lastModified, sha256);
+        } else {
+            remove(key);
+        }
+    }
+
+    private void refreshParent(String key) throws IOException {
+        String parent = parentKey(key);
+        if (parent != null && entries.containsKey(parent)) {
+            refresh(parent, null);
+        }
+    }
+
+    private long directoryLastModified(String key) throws IOException {
+        long lastModified = 0;
+        for (Path copy : storageRoots.locateAll(Paths.get(key))) {
+            lastModified = Math.max(lastModified, Files.getLastModifiedTime(copy, LinkOption.NOFOLLOW_LINKS).toMillis());
+        }
+        return lastModified;
+    }
+
+    /**
+     * Puts entry, creates missing parents and updates totals of all ancestors. Called under the lock.
+     */
+    private void put(String key, boolean directory, long size, long lastModified, String sha256) throws IOException {
+        Entry old = entries.get(key);
+        if (old != null && old.directory != directory) {
+            remove(key);
+            old = null;
+        }
+        if (old != null && old.size == size && old.lastModified == lastModified && Objects.equals(old.sha256, sha256)) {
+            return;
+        }
+        String parent = parentKey(key);
+        if (parent != null && !entries.containsKey(parent)) {
+            put(parent, true, 0, directoryLastModified(parent), null);
+        }
+        Entry entry = new Entry(directory, size, lastModified, sha256, ++version);
+        if (old != null) {
+            entry.totalSize = old.totalSize;
+            entry.totalFiles = old.totalFiles;
+            entry.totalDirectories = old.totalDirectories;
+            entry.reconciled = old.reconciled;
+        }
+        entries.put(key, entry);
+        if (!directory) {
+            addToAncestors(key, size - (old == null ? 0 : old.size), old == null ? 1 : 0, 0);
+        } else if (old == null) {
+            addToAncestors(key, 0, 0, 1);
+        }
+        writePut(log, key, entry);
+        logged();
+    }
+
+    /**
+     * Removes entry with its subtree and subtracts it from totals of ancestors. Called under the lock.
+     */
+    private void remove(String key) throws IOException {
+        Entry old = entries.get(key);
+        if (old == null || key.isEmpty()) {
+            return;
+        }
+        if (old.directory) {
+            addToAncestors(key, -old.totalSize, -old.totalFiles, -old.totalDirectories - 1);
+            entries.subMap(childPrefix(key), key + "0").clear();
+        } else {
+            addToAncestors(key, -old.size, -1, 0);
+        }
+        entries.remove(key);
+        log.writeByte(REMOVE);
+        log.writeUTF(key);
+        logged();
+    }
+
+    private void addToAncestors(String key, long size, long files, long directories) {
+        for (String ancestor = parentKey(key); ancestor != null; ancestor = parentKey(ancestor)) {
+            Entry entry = entries.get(ancestor);
+            if (entry != null) {
+                entry.totalSize += size;
+                entry.totalFiles += files;
+                entry.totalDirectories += directories;
+            }
+        }
+    }
+
+    private static void writePut(DataOutputStream out, String key, Entry entry) throws IOException {
+        out.writeByte(PUT);
+        out.writeUTF(key);
+        out.writeBoolean(entry.directory);
+        out.writeLong(entry.size);
+        out.writeLong(entry.lastModified);
+        out.writeBoolean(entry.sha256 != null);
+        if (entry.sha256 != null) {
+            out.writeUTF(entry.sha256);
+        }
+    }
+
+    /**
+     * Hands record over to the file system, no fsync: records lost by a crash are repaired by reconciliation.
+     */
+    private void logged() throws IOException {
+        log.flush();
+        logRecords++;
+        if (logRecords >= COMPACT_MIN_RECORDS && logRecords > entries.size() && !compactPending) {
+            compactPending = true;
+            executor.execute(() -> {
+                try {
+                    compact();
+                } catch (IOException e) {
+                    LOG.warn("compaction failed", e);
+                }
+            });
+        }
+    }
+
+    private Entry find(Path filePath, String key) throws NoSuchFileException {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            throw new NoSuchFileException(filePath.toString());
+        }
+        return entry;
+    }
+
+    private static FileEntry toFileEntry(String path, Entry entry) {
+        Instant lastModified = Instant.ofEpochMilli(entry.lastModified);
+        if (entry.directory) {
+            return new DirectoryInfo(path, lastModified, null);
+        }
+        return new FileInfo(path, entry.size, lastModified, null, entry.sha256);
+    }
+
+    /**
+     * Server state and temporary files of uploads, sidecars and rebalance are left out, the same ones
+     * {@link StorageRoots#isServerState(Path, Path)} leaves out of listings of the file system.
+     */
+    static boolean isIndexed(String key) {
+        if (key.isEmpty()) {
+            return true;
+        }
+        int slash = key.indexOf('/');
+        String first = slash < 0 ? key : key.substring(0, slash);
+        return !StorageRoots.RESERVED_NAMES.contains(first) && !StorageRoots.isTemporary(key.substring(key.lastIndexOf('/') + 1));
+    }
+
+    /**
+     * @return relative path separated by '/', empty for base directory.
+     */
+    static String key(Path filePath) {
+        return filePath.normalize().toString().replace(File.separatorChar, '/');
+    }
+
+    /**
+     * Key of path received from a client, which is checked like by every other query of files.
+     * @throws IllegalArgumentException when the path is absolute or leads out of the roots.
+     */
+    private String clientKey(Path filePath) {
+        return key(storageRoots.primary().relativize(storageRoots.resolve(filePath)));
+    }
+
+    private static String parentKey(String key) {
+        if (key.isEmpty()) {
+            return null;
+        }
+        int slash = key.lastIndexOf('/');
+        return slash < 0 ? "" : key.substring(0, slash);
+    }
+
+    /**
+     * Keys of directory content start with this prefix and sort before key + "0", as '0' follows '/'.
+     */
+    private static String childPrefix(String key) {
+        return key.isEmpty() ? "" : key + "/";
+    }
+
+    private static int depth(String path) {
+        int depth = 1;
+        for (int i = 0; i < path.length(); i++) {
+            if (path.charAt(i) == '/') {
+                depth++;
+            }
+        }
+        return depth;
+    }
+
+    private static final class Entry {
+        private final boolean directory;
+        private final long size;
+        private final long lastModified;
+        private final String sha256;
+        private final long version;
+        // totals of directory subtree, changed under the lock and read without it
+        private volatile long totalSize;
+        private volatile long totalFiles;
+        private volatile long totalDirectories;
+        private volatile long reconciled;
+
+        Entry(boolean directory, long size, long lastModified, String sha256, long version) {
+            this.directory = directory;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.sha256 = sha256;
+            this.version = version;
+        }
+    }
+
+}
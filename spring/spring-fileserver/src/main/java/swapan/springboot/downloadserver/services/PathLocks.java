@@ -0,0 +1,34 @@
+package swapan.springboot.downloadserver.services;
+
+import java.nio.file.Path;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Fixed table of locks striped by path hash. Writers of one path always meet on the same lock, writers of
+ * unrelated paths only share one by hash collision, and the table never grows with the number of paths.
+ * Locks are {@link ReentrantLock}s, virtual threads waiting for them do not pin their carrier.
+ */
+final class PathLocks {
+
+    private static final int STRIPES = 256;
+
+    private final ReentrantLock[] locks = new ReentrantLock[STRIPES];
+
+    PathLocks() {
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * @param path resolved absolute path.
+     * @return lock guarding writes of the path.
+     */
+    ReentrantLock get(Path path) {
+        int hash = path.hashCode();
+        // spread high bits, path hashes of siblings differ mostly in low ones
+        hash ^= hash >>> 16;
+        return locks[hash & (STRIPES - 1)];
+    }
+
+}
@@ -0,0 +1,63 @@
+package swapan.springboot.downloadserver.services;
+
+import swapan.springboot.downloadserver.dto.FileInfo;
+import swapan.springboot.downloadserver.dto.FileList;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.file.Path;
+
+/**
+ * Non-blocking counterpart of {@link FileService}. File content is read and written through
+ * {@link java.nio.channels.AsynchronousFileChannel} with backpressure, metadata operations run on bounded elastic scheduler.
+ */
+public interface ReactiveFileService {
+
+    /**
+     * Get list of files and directories.
+     * @param filePath relative path to directory.
+     * @return listing of the directory.
+     */
+    Mono<FileList> getFilesInfo(Path filePath);
+
+    /**
+     * Get size and modification time of regular file.
+     * @param filePath relative path to file.
+     * @return info of the file, error {@link java.nio.file.NoSuchFileException} when it is not regular file.
+     */
+    Mono<FileInfo> getFileInfo(Path filePath);
+
+    /**
+     * Reads content of file, next buffer is read only when subscriber requests it.
+     * @param filePath relative path to file.
+     * @param bufferFactory factory of buffers, usually the one of response.
+     * @return content of the file.
+     */
+    Flux<DataBuffer> readFile(Path filePath, DataBufferFactory bufferFactory);
+
+    /**
+     * Writes content into file specified by relative path, existing file is overwritten.
+     * @param filePath relative path to file, parent directory must exist.
+     * @param content data of the file, released once written.
+     * @return completes when all data has been written.
+     */
+    Mono<Void> saveFile(Path filePath, Flux<DataBuffer> content);
+
+    /**
+     * Delete file or directory recursively.
+     * @param filePath relative path to file or directory.
+     * @return completes when deleted.
+     */
+    Mono<Void> delete(Path filePath);
+
+    /**
+     * Create directory and all missing parent directories.
+     * @param filePath relative path to directory.
+     * @return completes when created.
+     */
+    Mono<Void> createDirectory(Path filePath);
+
+}
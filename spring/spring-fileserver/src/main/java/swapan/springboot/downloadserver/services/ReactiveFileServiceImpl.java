@@ -0,0 +1,136 @@
+package swapan.springboot.downloadserver.services;
+
+import swapan.springboot.downloadserver.config.FileServerConfig;
+import swapan.springboot.downloadserver.dto.FileInfo;
+import swapan.springboot.downloadserver.dto.FileList;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+
+@Service
+public class ReactiveFileServiceImpl implements ReactiveFileService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ReactiveFileServiceImpl.class);
+
+    private final FileService fileService;
+    private final BlobStore blobStore;
+    private final MetadataIndex metadataIndex;
+    private final int bufferSize;
+
+    @Autowired
+    public ReactiveFileServiceImpl(FileServerConfig fileServerConfig, FileService fileService, BlobStore blobStore,
+                                   MetadataIndex metadataIndex) {
+        this.fileService = fileService;
+        this.blobStore = blobStore;
+        this.metadataIndex = metadataIndex;
+        bufferSize = fileServerConfig.getBufferSize();
+    }
+
+    @Override
+    public Mono<FileList> getFilesInfo(Path filePath) {
+        return Mono.fromCallable(() -> fileService.getFilesInfo(filePath))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @Override
+    public Mono<FileInfo> getFileInfo(Path filePath) {
+        return Mono.fromCallable(() -> {
+            Path resolvedFilePath = fileService.resolvePath(filePath);
+            BasicFileAttributes attributes = Files.readAttributes(resolvedFilePath, BasicFileAttributes.class);
+            if (!attributes.isRegularFile()) {
+                throw new NoSuchFileException(filePath.toString());
+            }
+            return new FileInfo(filePath.getFileName().toString(), attributes.size(),
+                    attributes.lastModifiedTime().toInstant(), null);
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @Override
+    public Flux<DataBuffer> readFile(Path filePath, DataBufferFactory bufferFactory) {
+        LOG.info("readFile: {}", filePath);
+        // invalid path is signalled as error, like any other failure
+        return Flux.defer(() -> DataBufferUtils.read(fileService.resolvePath(filePath), bufferFactory, bufferSize));
+    }
+
+    @Override
+    public Mono<Void> saveFile(Path filePath, Flux<DataBuffer> content) {
+        LOG.info("saveFile: {}", filePath);
+        return Mono.defer(() -> {
+            // content is hashed for deduplication and the index on the way through
+            MessageDigest digest = blobStore.isEnabled() || metadataIndex.isEnabled() ? BlobStore.newDigest() : null;
+            return saveAtomically(filePath, digest == null ? content : content.doOnNext(buffer -> update(digest, buffer)),
+                    digest);
+        });
+    }
+
+    /**
+     * Content is written next to the file and renamed over it or linked into the blob store by
+     * {@link FileService#commitFile}, so it is serialized with servlet writes of the same path and readers never
+     * see partial content. Next buffer is requested only after the previous one has been written. Temporary file
+     * left after failure or cancel, e.g. by client gone away, is removed.
+     * @param digest digest updated with the content while written, null when the content is not hashed.
+     */
+    private Mono<Void> saveAtomically(Path filePath, Flux<DataBuffer> content, MessageDigest digest) {
+        return Mono.usingWhen(
+                Mono.fromCallable(() -> fileService.createTempFile(filePath)).subscribeOn(Schedulers.boundedElastic()),
+                tempFile -> DataBufferUtils.write(content, tempFile, StandardOpenOption.WRITE)
+                        .then(Mono.<Void>fromCallable(() -> {
+                            if (digest == null) {
+                                fileService.commitFile(tempFile, filePath);
+                            } else {
+                                fileService.commitFile(tempFile, filePath, HexFormat.of().formatHex(digest.digest()));
+                            }
+                            return null;
+                        }).subscribeOn(Schedulers.boundedElastic())),
+                ReactiveFileServiceImpl::deleteIfExists);
+    }
+
+    /**
+     * Committed content has been renamed away, whatever is left is a partial upload.
+     */
+    private static Mono<Void> deleteIfExists(Path tempFile) {
+        return Mono.<Void>fromCallable(() -> {
+            Files.deleteIfExists(tempFile);
+            return null;
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private static void update(MessageDigest digest, DataBuffer buffer) {
+        try (DataBuffer.ByteBufferIterator iterator = buffer.readableByteBuffers()) {
+            iterator.forEachRemaining(digest::update);
+        }
+    }
+
+    @Override
+    public Mono<Void> delete(Path filePath) {
+        return Mono.<Void>fromCallable(() -> {
+            fileService.delete(filePath);
+            return null;
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @Override
+    public Mono<Void> createDirectory(Path filePath) {
+        return Mono.<Void>fromCallable(() -> {
+            fileService.createDirectory(filePath);
+            return null;
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+
+}
@@ -0,0 +1,65 @@
+package swapan.springboot.downloadserver.services;
+
+import swapan.springboot.downloadserver.dto.SearchQuery;
+
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.time.Instant;
+import java.util.regex.Pattern;
+
+/**
+ * Filters of {@link SearchQuery} compiled once, shared by search of file system and of {@link MetadataIndex}.
+ */
+final class SearchFilter {
+
+    private final SearchQuery query;
+    private final PathMatcher nameMatcher;
+    private final Pattern pathPattern;
+
+    /**
+     * @throws IllegalArgumentException when the query is invalid.
+     */
+    SearchFilter(SearchQuery query) {
+        if (query.getLimit() <= 0 || query.getMaxDepth() <= 0) {
+            throw new IllegalArgumentException("Invalid limit " + query.getLimit() + " or max depth " + query.getMaxDepth());
+        }
+        if (query.getType() != null && !query.getType().equals("file") && !query.getType().equals("directory")) {
+            throw new IllegalArgumentException("Invalid type " + query.getType());
+        }
+        this.query = query;
+        nameMatcher = query.getGlob() == null ? null : FileSystems.getDefault().getPathMatcher("glob:" + query.getGlob());
+        pathPattern = query.getRegex() == null ? null : Pattern.compile(query.getRegex());
+    }
+
+    /**
+     * @param name file name of the entry.
+     * @param path path of the entry relative to searched directory, separated by '/'.
+     * @param directory true for directory.
+     * @param size size of file, ignored for directory.
+     * @param lastModified modification time of the entry.
+     * @return true when the entry passes all filters.
+     */
+    boolean matches(Path name, String path, boolean directory, long size, Instant lastModified) {
+        if (query.getType() != null && query.getType().equals("directory") != directory) {
+            return false;
+        }
+        if (nameMatcher != null && !nameMatcher.matches(name)) {
+            return false;
+        }
+        if (pathPattern != null && !pathPattern.matcher(path).matches()) {
+            return false;
+        }
+        if (query.getMinSize() != null && (directory || size < query.getMinSize())) {
+            return false;
+        }
+        if (query.getMaxSize() != null && (directory || size > query.getMaxSize())) {
+            return false;
+        }
+        if (query.getModifiedAfter() != null && lastModified.isBefore(query.getModifiedAfter())) {
+            return false;
+        }
+        return query.getModifiedBefore() == null || lastModified.isBefore(query.getModifiedBefore());
+    }
+
+}
@@ -0,0 +1,153 @@
+package swapan.springboot.downloadserver.services;
+
+import swapan.springboot.downloadserver.config.FileServerConfig;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Background job writing precompressed .gz sidecars for frequently downloaded compressible files,
+ * so later downloads are served without compressing on the fly. Sidecars are siblings named after the file with
+ * one of {@link #SUFFIXES}, they are removed when the file is deleted, moved or replaced.
+ */
+@Component
+public class SidecarCompressor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SidecarCompressor.class);
+
+    public static final String GZIP_SUFFIX = ".gz";
+    public static final String BROTLI_SUFFIX = ".br";
+    public static final String ZSTD_SUFFIX = ".zst";
+
+    /**
+     * Suffixes of sidecars, whether written by this job or placed next to the file by someone else.
+     */
+    public static final List<String> SUFFIXES = List.of(BROTLI_SUFFIX, ZSTD_SUFFIX, GZIP_SUFFIX);
+
+    private final Duration interval;
+    private final int minHits;
+    private final long minSize;
+    private final int bufferSize;
+    private final Map<Path, LongAdder> hits = new ConcurrentHashMap<>();
+    private ScheduledExecutorService executor;
+
+    @Autowired
+    public SidecarCompressor(FileServerConfig fileServerConfig) {
+        interval = fileServerConfig.getSidecarInterval();
+        minHits = fileServerConfig.getSidecarMinHits();
+        minSize = fileServerConfig.getCompressionMinSize();
+        bufferSize = fileServerConfig.getBufferSize();
+    }
+
+    @PostConstruct
+    public void start() {
+        if (isEnabled()) {
+            executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "sidecar-compressor");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.scheduleWithFixedDelay(this::compressHotFiles, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Counts one download of file.
+     * @param file resolved absolute path of downloaded file.
+     */
+    public void recordHit(Path file) {
+        if (isEnabled()) {
+            hits.computeIfAbsent(file, key -> new LongAdder()).increment();
+        }
+    }
+
+    /**
+     * Writes sidecars for files downloaded at least min-hits times since last run and resets the counters.
+     */
+    public void compressHotFiles() {
+        for (Path file : hits.keySet()) {
+            LongAdder counter = hits.remove(file);
+            if (counter != null && counter.sum() >= minHits) {
+                try {
+                    compress(file);
+                } catch (IOException e) {
+                    LOG.warn("cannot compress {}", file, e);
+                }
+            }
+        }
+    }
+
+    private void compress(Path file) throws IOException {
+        if (!Files.isRegularFile(file) || Files.size(file) < minSize || !MediaTypes.isCompressible(MediaTypes.detect(file))) {
+            return;
+        }
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        Path sidecar = file.resolveSibling(file.getFileName() + GZIP_SUFFIX);
+        if (Files.exists(sidecar) && Files.getLastModifiedTime(sidecar).compareTo(attributes.lastModifiedTime()) > 0) {
+            return;
+        }
+        LOG.info("compress: {}", file);
+        Path tempFile = file.resolveSibling("." + file.getFileName() + GZIP_SUFFIX + ".tmp");
+        try (InputStream in = Files.newInputStream(file);
+             OutputStream out = new GZIPOutputStream(Files.newOutputStream(tempFile), bufferSize)) {
+            in.transferTo(out);
+        } catch (IOException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+        // readers see either no sidecar or complete one
+        Files.move(tempFile, sidecar, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        // file replaced while compressed, its cleanup may have run before the sidecar was in place
+        if (!isUnchanged(file, attributes)) {
+            Files.deleteIfExists(sidecar);
+        }
+    }
+
+    /**
+     * Replaced file has another inode, deduplicated content may keep an older modification time.
+     */
+    private static boolean isUnchanged(Path file, BasicFileAttributes attributes) {
+        try {
+            BasicFileAttributes current = Files.readAttributes(file, BasicFileAttributes.class);
+            return Objects.equals(current.fileKey(), attributes.fileKey())
+                    && current.lastModifiedTime().equals(attributes.lastModifiedTime())
+                    && current.size() == attributes.size();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private boolean isEnabled() {
+        return !interval.isZero() && !interval.isNegative();
+    }
+
+}
@@ -0,0 +1,188 @@
+package swapan.springboot.downloadserver.services;
+
+import swapan.springboot.downloadserver.dto.RebalanceStats;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Moves files which are not in the root they are placed to, typically after a root was added. Runs in background
+ * while the server keeps serving: a file is copied to its placement root aside, then under the lock of its path
+ * the copy is renamed into place and the original removed, unless a writer changed the file meanwhile.
+ * Readers find the file in either root during the move.
+ */
+final class StorageRebalancer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StorageRebalancer.class);
+
+    private final StorageRoots storageRoots;
+    private final PathLocks pathLocks;
+    private final HotFileCache hotFileCache;
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final LongAdder scannedFiles = new LongAdder();
+    private final LongAdder movedFiles = new LongAdder();
+    private final LongAdder movedBytes = new LongAdder();
+    private final LongAdder failedFiles = new LongAdder();
+    private volatile boolean stopped;
+    private ExecutorService executor;
+
+    StorageRebalancer(StorageRoots storageRoots, PathLocks pathLocks, HotFileCache hotFileCache) {
+        this.storageRoots = storageRoots;
+        this.pathLocks = pathLocks;
+        this.hotFileCache = hotFileCache;
+    }
+
+    /**
+     * Starts one pass in background thread, nothing to do with single root.
+     */
+    synchronized void start() {
+        if (!storageRoots.isStriped() || stopped) {
+            return;
+        }
+        if (executor == null) {
+            executor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "storage-rebalancer");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        executor.execute(this::run);
+    }
+
+    synchronized void stop() {
+        stopped = true;
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Walks all roots once and moves misplaced files, returns at once when another pass is running.
+     */
+    void run() {
+        if (!running.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            LOG.info("rebalance started: roots={}", storageRoots.all());
+            for (Path root : storageRoots.all()) {
+                rebalance(root);
+            }
+            LOG.info("rebalance finished: scanned={} moved={} bytes={} failed={}",
+                    scannedFiles.sum(), movedFiles.sum(), movedBytes.sum(), failedFiles.sum());
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("rebalance failed", e);
+        } finally {
+            running.set(false);
+        }
+    }
+
+    RebalanceStats getStats() {
+        return new RebalanceStats(storageRoots.all().size(), running.get(), scannedFiles.sum(), movedFiles.sum(),
+                movedBytes.sum(), failedFiles.sum());
+    }
+
+    private void rebalance(Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) {
+                if (stopped) {
+                    return FileVisitResult.TERMINATE;
+                }
+                // blob store, trash and other server state stay where they are
+                return dir.equals(root) || !isHidden(dir) ? FileVisitResult.CONTINUE : FileVisitResult.SKIP_SUBTREE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                // unfinished uploads are hidden, links and special files are not moved
+                if (!attributes.isRegularFile() || isHidden(file)) {
+                    return FileVisitResult.CONTINUE;
+                }
+                scannedFiles.increment();
+                Path filePath = root.relativize(file);
+                Path placement = storageRoots.placement(filePath);
+                if (!placement.equals(root)) {
+                    try {
+                        move(filePath, file, placement.resolve(filePath).normalize());
+                    } catch (IOException e) {
+                        LOG.warn("cannot move {} to {}", file, placement, e);
+                        failedFiles.increment();
+                    }
+                }
+                return stopped ? FileVisitResult.TERMINATE : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) throws IOException {
+                if (e instanceof NoSuchFileException) {
+                    // deleted while walking
+                    return FileVisitResult.CONTINUE;
+                }
+                throw e;
+            }
+        });
+    }
+
+    private void move(Path filePath, Path source, Path target) throws IOException {
+        BasicFileAttributes copied = Files.readAttributes(source, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        Files.createDirectories(target.getParent());
+        Path tempFile = target.resolveSibling("." + target.getFileName() + "." + UUID.randomUUID() + ".part");
+        try {
+            // the slow part, another file system is written without holding the lock
+            Files.copy(source, tempFile, StandardCopyOption.COPY_ATTRIBUTES);
+            ReentrantLock lock = pathLocks.get(storageRoots.primary().resolve(filePath).normalize());
+            lock.lock();
+            try {
+                BasicFileAttributes current;
+                try {
+                    current = Files.readAttributes(source, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                } catch (NoSuchFileException e) {
+                    // deleted meanwhile
+                    return;
+                }
+                if (!isSameContent(copied, current) || Files.exists(target, LinkOption.NOFOLLOW_LINKS)) {
+                    // replaced meanwhile, next pass moves it if it is still misplaced
+                    LOG.info("rebalance skipped changed file {}", source);
+                    return;
+                }
+                Files.move(tempFile, target, StandardCopyOption.ATOMIC_MOVE);
+                Files.delete(source);
+                hotFileCache.invalidate(source);
+            } finally {
+                lock.unlock();
+            }
+            movedFiles.increment();
+            movedBytes.add(copied.size());
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    private static boolean isSameContent(BasicFileAttributes copied, BasicFileAttributes current) {
+        return Objects.equals(copied.fileKey(), current.fileKey()) && copied.size() == current.size()
+                && copied.lastModifiedTime().equals(current.lastModifiedTime());
+    }
+
+    private static boolean isHidden(Path path) {
+        return path.getFileName().toString().startsWith(".");
+    }
+
+}
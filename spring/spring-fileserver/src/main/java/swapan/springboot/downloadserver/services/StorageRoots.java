@@ -0,0 +1,217 @@
+package swapan.springboot.downloadserver.services;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Storage roots parsed from comma separated {@code file.server.home}, each usually on its own disk or mount.
+ * Files are placed by consistent hashing of their relative path: every root owns many points on a hash ring and
+ * a file belongs to the root owning the first point at or after the hash of its path. Points of a root depend on
+ * its path only, so adding a root moves just the files that land on its new points, about 1/n of them.
+ * Directories may exist on any number of roots, their listing is the union of all of them.
+ * The first root is the primary one, it holds blob store, trash and other server state.
+ */
+final class StorageRoots {
+
+    /**
+     * Points per root, enough to keep share of every root within few percent of 1/n.
+     */
+    static final int VIRTUAL_NODES = 160;
+
+    /**
+     * Top level directories of server state, clients can neither address them nor see them in listings.
+     */
+    static final Set<String> RESERVED_NAMES = Set.of(BlobStore.BLOB_DIR, DeleteJobServiceImpl.TRASH_DIR,
+            MetadataIndex.INDEX_DIR);
+
+    private final List<Path> roots;
+    private final TreeMap<Long, Path> ring = new TreeMap<>();
+
+    StorageRoots(String home) {
+        roots = parse(home);
+        for (Path root : roots) {
+            for (int i = 0; i < VIRTUAL_NODES; i++) {
+                ring.put(hash(root + "#" + i), root);
+            }
+        }
+    }
+
+    /**
+     * @param home one or more comma separated directories.
+     * @return absolute normalized roots, primary first.
+     */
+    static List<Path> parse(String home) {
+        List<Path> roots = Arrays.stream(home.split(","))
+                .map(String::trim)
+                .filter(root -> !root.isEmpty())
+                .map(root -> Paths.get(root).toAbsolutePath().normalize())
+                .distinct()
+                .toList();
+        if (roots.isEmpty()) {
+            throw new IllegalArgumentException("No storage root in " + home);
+        }
+        return roots;
+    }
+
+    /**
+     * Resolves path received from a client, every client path goes through here before the file system is touched.
+     * @param root one of the storage roots.
+     * @param filePath relative path to file or directory.
+     * @return absolute normalized path within the root.
+     * @throws IllegalArgumentException when the path is absolute, leads out of the root or into server state.
+     */
+    static Path resolve(Path root, Path filePath) {
+        Path resolved = root.resolve(filePath).normalize();
+        if (filePath.isAbsolute() || !resolved.startsWith(root) || isServerState(root, resolved)) {
+            throw new IllegalArgumentException("Invalid path " + filePath);
+        }
+        return resolved;
+    }
+
+    /**
+     * One filter of listings, searches, archives and the metadata index.
+     * @param root storage root.
+     * @param entry absolute normalized path within the root.
+     * @return true for server state and temporary files, which are neither listed nor served.
+     */
+    static boolean isServerState(Path root, Path entry) {
+        Path relative = root.relativize(entry);
+        if (relative.toString().isEmpty()) {
+            return false;
+        }
+        return RESERVED_NAMES.contains(relative.getName(0).toString()) || isTemporary(entry.getFileName().toString());
+    }
+
+    /**
+     * @param name file name.
+     * @return true for temporary file of upload ({@code .part}), blob link ({@code .link}) or sidecar
+     * ({@code .tmp}), which becomes visible only when renamed to its final name.
+     */
+    static boolean isTemporary(String name) {
+        return name.startsWith(".") && (name.endsWith(".part") || name.endsWith(".link") || name.endsWith(".tmp"));
+    }
+
+    /**
+     * @param entry absolute normalized path within one of the roots.
+     * @return true for server state, which is left out of listings, searches and archives.
+     */
+    boolean isServerState(Path entry) {
+        Path root = rootOf(entry);
+        return root != null && isServerState(root, entry);
+    }
+
+    Path primary() {
+        return roots.get(0);
+    }
+
+    /**
+     * @param filePath relative path to file or directory.
+     * @return absolute path in the primary root, also key of path locks and caches.
+     * @throws IllegalArgumentException when the path is absolute, leads out of the roots or into server state.
+     */
+    Path resolve(Path filePath) {
+        return resolve(primary(), filePath);
+    }
+
+    List<Path> all() {
+        return roots;
+    }
+
+    boolean isStriped() {
+        return roots.size() > 1;
+    }
+
+    /**
+     * @param filePath relative path to file.
+     * @return root new content of the file is written to.
+     */
+    Path placement(Path filePath) {
+        if (!isStriped()) {
+            return primary();
+        }
+        String key = filePath.normalize().toString().replace(File.separatorChar, '/');
+        Map.Entry<Long, Path> point = ring.ceilingEntry(hash(key));
+        return point != null ? point.getValue() : ring.firstEntry().getValue();
+    }
+
+    /**
+     * @param filePath relative path to file.
+     * @return absolute path new content of the file is written to.
+     */
+    Path place(Path filePath) {
+        return resolve(placement(filePath), filePath);
+    }
+
+    /**
+     * Finds the file in its placement root first, then in the others, where it stays until rebalanced.
+     * @param filePath relative path to file or directory.
+     * @return absolute path of existing file or the path it would be placed at.
+     */
+    Path locate(Path filePath) {
+        Path placed = place(filePath);
+        if (!isStriped() || Files.exists(placed, LinkOption.NOFOLLOW_LINKS)) {
+            return placed;
+        }
+        for (Path root : roots) {
+            Path resolved = resolve(root, filePath);
+            if (Files.exists(resolved, LinkOption.NOFOLLOW_LINKS)) {
+                return resolved;
+            }
+        }
+        return placed;
+    }
+
+    /**
+     * @param filePath relative path to file or directory.
+     * @return absolute paths of all existing copies, directories usually have one in several roots.
+     */
+    List<Path> locateAll(Path filePath) {
+        List<Path> copies = new ArrayList<>(roots.size());
+        for (Path root : roots) {
+            Path resolved = resolve(root, filePath);
+            if (Files.exists(resolved, LinkOption.NOFOLLOW_LINKS)) {
+                copies.add(resolved);
+            }
+        }
+        return copies;
+    }
+
+    /**
+     * @param resolvedPath absolute path within one of the roots.
+     * @return the root containing the path, null when it is in none.
+     */
+    Path rootOf(Path resolvedPath) {
+        for (Path root : roots) {
+            if (resolvedPath.startsWith(root)) {
+                return root;
+            }
+        }
+        return null;
+    }
+
+    private static long hash(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes(StandardCharsets.UTF_8));
+            long hash = 0;
+            for (int i = 0; i < Long.BYTES; i++) {
+                hash = (hash << 8) | (digest[i] & 0xff);
+            }
+            return hash;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
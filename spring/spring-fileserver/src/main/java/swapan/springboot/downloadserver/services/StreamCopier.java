@@ -0,0 +1,45 @@
+package swapan.springboot.downloadserver.services;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Copies {@link InputStream} into {@link FileChannel} through one fixed size heap buffer, memory usage does not
+ * depend on amount of copied data. The stream fills the array directly; for the write the JDK copies it into its
+ * direct buffer cached per thread, so no direct memory is allocated per copy.
+ */
+final class StreamCopier {
+
+    private StreamCopier() {
+    }
+
+    /**
+     * Copies whole stream into channel starting at given position. Stream is not closed.
+     * @param inputStream source data.
+     * @param target channel to write into.
+     * @param position position in target where first byte is written.
+     * @param limit maximum number of bytes accepted, stream is rejected when it holds more.
+     * @param bufferSize size of copy buffer.
+     * @return number of bytes copied.
+     * @throws IOException
+     */
+    static long copy(InputStream inputStream, FileChannel target, long position, long limit, int bufferSize) throws IOException {
+        byte[] bytes = new byte[bufferSize];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        long copied = 0;
+        int read;
+        while ((read = inputStream.read(bytes)) != -1) {
+            if (copied + read > limit) {
+                throw new IOException("Stream is longer than " + limit + " bytes");
+            }
+            buffer.clear().limit(read);
+            while (buffer.hasRemaining()) {
+                copied += target.write(buffer, position + copied);
+            }
+        }
+        return copied;
+    }
+
+}
@@ -0,0 +1,99 @@
+package swapan.springboot.downloadserver.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Removes temporary files of uploads, blob links and sidecars left behind by a crash, they would never be renamed
+ * to their final name. Runs once in background after start. Files modified since start belong to running writes
+ * and are kept.
+ */
+final class TempFileSweeper {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TempFileSweeper.class);
+
+    private final StorageRoots storageRoots;
+    private final FileTime startTime = FileTime.from(Instant.now());
+    private final LongAdder removedFiles = new LongAdder();
+    private volatile boolean stopped;
+    private Thread thread;
+
+    TempFileSweeper(StorageRoots storageRoots) {
+        this.storageRoots = storageRoots;
+    }
+
+    synchronized void start() {
+        if (thread != null || stopped) {
+            return;
+        }
+        thread = new Thread(this::run, "temp-file-sweeper");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    synchronized void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Walks all roots once in calling thread.
+     */
+    void run() {
+        for (Path root : storageRoots.all()) {
+            try {
+                sweep(root);
+            } catch (IOException | RuntimeException e) {
+                LOG.warn("cannot sweep {}", root, e);
+            }
+        }
+        LOG.info("temporary files removed: {}", removedFiles.sum());
+    }
+
+    private void sweep(Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) {
+                if (stopped) {
+                    return FileVisitResult.TERMINATE;
+                }
+                // blob store, trash and index clean up after themselves
+                return dir.equals(root) || !StorageRoots.isServerState(root, dir) ? FileVisitResult.CONTINUE
+                        : FileVisitResult.SKIP_SUBTREE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                if (attributes.isRegularFile() && StorageRoots.isTemporary(file.getFileName().toString())
+                        && attributes.lastModifiedTime().compareTo(startTime) < 0) {
+                    try {
+                        Files.deleteIfExists(file);
+                        removedFiles.increment();
+                    } catch (IOException e) {
+                        LOG.warn("cannot delete {}", file, e);
+                    }
+                }
+                return stopped ? FileVisitResult.TERMINATE : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                if (!(e instanceof NoSuchFileException)) {
+                    LOG.warn("cannot sweep {}", file, e);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+}
@@ -0,0 +1,76 @@
+package swapan.springboot.downloadserver.services;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket of bytes. Reservations never wait inside the bucket, they may take more tokens than there are
+ * and return how long the caller has to wait until the debt is paid off. Not thread safe, guarded by owner.
+ */
+final class TokenBucket {
+
+    /**
+     * Bytes that may be sent at once after a pause, as time at the current rate.
+     */
+    private static final double BURST_SECONDS = 0.1;
+    private static final long MIN_BURST = 64 * 1024;
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private double rate;
+    private double tokens;
+    private long updated;
+
+    /**
+     * @param rate bytes per second.
+     * @param now {@link System#nanoTime()}.
+     */
+    TokenBucket(double rate, long now) {
+        this.rate = rate;
+        this.updated = now;
+        this.tokens = capacity();
+    }
+
+    double getRate() {
+        return rate;
+    }
+
+    /**
+     * Changes rate from now on, tokens collected so far are kept.
+     */
+    void setRate(double rate, long now) {
+        refill(now);
+        this.rate = rate;
+        tokens = Math.min(tokens, capacity());
+    }
+
+    /**
+     * @return nanoseconds to wait before the bytes may be sent, 0 when they may be sent right away.
+     */
+    long reserve(long bytes, long now) {
+        refill(now);
+        tokens -= bytes;
+        if (tokens >= 0) {
+            return 0;
+        }
+        return (long) Math.ceil(-tokens / rate * NANOS_PER_SECOND);
+    }
+
+    /**
+     * @return true while reservations have taken more tokens than have been collected.
+     */
+    boolean isInDebt(long now) {
+        refill(now);
+        return tokens < 0;
+    }
+
+    private void refill(long now) {
+        if (now > updated) {
+            tokens = Math.min(capacity(), tokens + (now - updated) * rate / NANOS_PER_SECOND);
+            updated = now;
+        }
+    }
+
+    private double capacity() {
+        return Math.max(rate * BURST_SECONDS, MIN_BURST);
+    }
+
+}
@@ -0,0 +1,56 @@
+package swapan.springboot.downloadserver.services;
+
+import swapan.springboot.downloadserver.dto.UploadSessionInfo;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+
+/**
+ * Resumable uploads split into fixed size chunks. Chunks may arrive concurrently and in any order,
+ * each one is written straight into its position of a preallocated file next to the target.
+ */
+public interface UploadSessionService {
+
+    /**
+     * Opens new upload session.
+     * @param filePath relative path to target file, parent directory must exist.
+     * @param size total size of the file in bytes.
+     * @param chunkSize size of every chunk except the last one.
+     * @return state of the new session.
+     * @throws IOException
+     */
+    UploadSessionInfo open(Path filePath, long size, long chunkSize) throws IOException;
+
+    /**
+     * Writes one chunk. Sending chunk again overwrites previous data.
+     * @param sessionId id of open session.
+     * @param index zero based chunk index.
+     * @param inputStream chunk data, must contain exactly the chunk length.
+     * @return state of the session after the write.
+     * @throws IOException
+     */
+    UploadSessionInfo writeChunk(String sessionId, int index, InputStream inputStream) throws IOException;
+
+    /**
+     * Get state of session, including chunks already received.
+     * @param sessionId id of open session.
+     * @return state of the session.
+     */
+    UploadSessionInfo getSession(String sessionId);
+
+    /**
+     * Moves fully received file into its target path and closes the session.
+     * @param sessionId id of open session.
+     * @throws IOException
+     */
+    void commit(String sessionId) throws IOException;
+
+    /**
+     * Closes the session and discards received data.
+     * @param sessionId id of open session.
+     * @throws IOException
+     */
+    void abort(String sessionId) throws IOException;
+
+}
@@ -0,0 +1,250 @@
+package swapan.springboot.downloadserver.services;
+
+import swapan.springboot.downloadserver.config.FileServerConfig;
+import swapan.springboot.downloadserver.dto.UploadSessionInfo;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+@Service
+public class UploadSessionServiceImpl implements UploadSessionService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(UploadSessionServiceImpl.class);
+
+    private final Map<String, UploadSession> sessions = new ConcurrentHashMap<>();
+    private final FileService fileService;
+    private final int bufferSize;
+    private final Duration sessionTimeout;
+    private ScheduledExecutorService executor;
+
+    @Autowired
+    public UploadSessionServiceImpl(FileServerConfig fileServerConfig, FileService fileService) {
+        this.fileService = fileService;
+        bufferSize = fileServerConfig.getBufferSize();
+        sessionTimeout = fileServerConfig.getUploadSessionTimeout();
+    }
+
+    /**
+     * Abandoned sessions are discarded with their preallocated part files even when no new session is opened.
+     */
+    @PostConstruct
+    public void start() {
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "upload-session-expiry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(1000, sessionTimeout.toMillis() / 4);
+        executor.scheduleWithFixedDelay(this::expireSessions, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    @Override
+    public UploadSessionInfo open(Path filePath, long size, long chunkSize) throws IOException {
+        LOG.info("open: {} size={} chunkSize={}", filePath, size, chunkSize);
+        if (size < 0 || chunkSize <= 0 || (size + chunkSize - 1) / chunkSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid size " + size + " or chunk size " + chunkSize);
+        }
+        expireSessions();
+        String id = UUID.randomUUID().toString();
+        // part file lives next to the target in its storage root, so commit is a rename within one file system;
+        // path leading out of the roots is rejected here
+        Path partFile = fileService.createTempFile(filePath);
+        try (FileChannel channel = FileChannel.open(partFile, StandardOpenOption.WRITE)) {
+            if (size > 0) {
+                channel.write(ByteBuffer.allocate(1), size - 1);
+            }
+        }
+        UploadSession session = new UploadSession(id, filePath, partFile, size, chunkSize);
+        sessions.put(id, session);
+        return session.toInfo();
+    }
+
+    @Override
+    public UploadSessionInfo writeChunk(String sessionId, int index, InputStream inputStream) throws IOException {
+        UploadSession session = findSession(sessionId);
+        LOG.info("writeChunk: {} index={}", session.filePath, index);
+        long chunkLength = session.chunkLength(index);
+        long position = (long) index * session.chunkSize;
+        boolean complete = false;
+        session.beginWrite();
+        try (FileChannel channel = FileChannel.open(session.partFile, StandardOpenOption.WRITE)) {
+            long written = StreamCopier.copy(inputStream, channel, position, chunkLength, bufferSize);
+            if (written != chunkLength) {
+                throw new IOException("Chunk " + index + " has " + written + " bytes, expected " + chunkLength);
+            }
+            complete = true;
+        } finally {
+            session.endWrite(index, complete);
+        }
+        return session.toInfo();
+    }
+
+    @Override
+    public UploadSessionInfo getSession(String sessionId) {
+        return findSession(sessionId).toInfo();
+    }
+
+    @Override
+    public void commit(String sessionId) throws IOException {
+        UploadSession session = findSession(sessionId);
+        LOG.info("commit: {}", session.filePath);
+        session.close();
+        boolean committed = false;
+        try {
+            try (FileChannel channel = FileChannel.open(session.partFile, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            fileService.commitFile(session.partFile, session.filePath);
+            committed = true;
+        } finally {
+            // failed commit keeps the session and its part file, so it can be retried or aborted
+            if (committed) {
+                sessions.remove(sessionId);
+            } else {
+                session.reopen();
+            }
+        }
+    }
+
+    @Override
+    public void abort(String sessionId) throws IOException {
+        UploadSession session = findSession(sessionId);
+        LOG.info("abort: {}", session.filePath);
+        sessions.remove(sessionId);
+        Files.deleteIfExists(session.partFile);
+    }
+
+    private UploadSession findSession(String sessionId) {
+        UploadSession session = sessions.get(sessionId);
+        if (session == null) {
+            throw new NoSuchElementException("Upload session not found " + sessionId);
+        }
+        return session;
+    }
+
+    void expireSessions() {
+        long deadline = System.currentTimeMillis() - sessionTimeout.toMillis();
+        sessions.values().removeIf(session -> {
+            if (!session.expire(deadline)) {
+                return false;
+            }
+            LOG.info("expired: {}", session.filePath);
+            try {
+                Files.deleteIfExists(session.partFile);
+            } catch (IOException e) {
+                LOG.warn("cannot delete {}", session.partFile, e);
+            }
+            return true;
+        });
+    }
+
+    private static class UploadSession {
+        private final String id;
+        private final Path filePath;
+        private final Path partFile;
+        private final long size;
+        private final long chunkSize;
+        private final int chunkCount;
+        private final BitSet received;
+        private int writesInProgress;
+        private boolean closed;
+        private volatile long lastActivity;
+
+        UploadSession(String id, Path filePath, Path partFile, long size, long chunkSize) {
+            this.id = id;
+            this.filePath = filePath;
+            this.partFile = partFile;
+            this.size = size;
+            this.chunkSize = chunkSize;
+            this.chunkCount = (int) ((size + chunkSize - 1) / chunkSize);
+            this.received = new BitSet(chunkCount);
+            this.lastActivity = System.currentTimeMillis();
+        }
+
+        long chunkLength(int index) {
+            if (index < 0 || index >= chunkCount) {
+                throw new IllegalArgumentException("Chunk index " + index + " out of range 0.." + (chunkCount - 1));
+            }
+            return Math.min(chunkSize, size - index * chunkSize);
+        }
+
+        synchronized void beginWrite() {
+            if (closed) {
+                throw new IllegalStateException("Upload session is being committed " + id);
+            }
+            writesInProgress++;
+            lastActivity = System.currentTimeMillis();
+        }
+
+        synchronized void endWrite(int index, boolean complete) {
+            if (complete) {
+                received.set(index);
+            }
+            writesInProgress--;
+            lastActivity = System.currentTimeMillis();
+        }
+
+        synchronized void close() {
+            if (closed) {
+                throw new IllegalStateException("Upload session is being committed " + id);
+            }
+            if (writesInProgress > 0 || received.cardinality() != chunkCount) {
+                throw new IllegalStateException("Upload session is not complete " + id);
+            }
+            closed = true;
+        }
+
+        synchronized void reopen() {
+            closed = false;
+            lastActivity = System.currentTimeMillis();
+        }
+
+        /**
+         * Closes idle session for good, session being written or committed is not idle.
+         */
+        synchronized boolean expire(long deadline) {
+            if (closed || writesInProgress > 0 || lastActivity >= deadline) {
+                return false;
+            }
+            closed = true;
+            return true;
+        }
+
+        synchronized UploadSessionInfo toInfo() {
+            List<Integer> receivedChunks = new ArrayList<>(received.cardinality());
+            received.stream().forEach(receivedChunks::add);
+            return new UploadSessionInfo(id, filePath.toString(), size, chunkSize, chunkCount, receivedChunks);
+        }
+    }
+
+}
@@ -0,0 +1,219 @@
+package swapan.springboot.downloadserver.rest;
+
+import swapan.springboot.downloadserver.config.FileServerConfigImpl;
+import swapan.springboot.downloadserver.services.BandwidthLimiter;
+import swapan.springboot.downloadserver.services.BlobStore;
+import swapan.springboot.downloadserver.services.FileService;
+import swapan.springboot.downloadserver.services.FileServiceImpl;
+import swapan.springboot.downloadserver.services.HotFileCache;
+import swapan.springboot.downloadserver.services.ListingCache;
+import swapan.springboot.downloadserver.services.MetadataIndex;
+import swapan.springboot.downloadserver.services.ReactiveFileServiceImpl;
+import swapan.springboot.downloadserver.services.SidecarCompressor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.MultipartBodyBuilder;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.web.reactive.function.BodyInserters;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * API tests run against both servlet and reactive implementation of {@code /services/files}, on real files.
+ */
+abstract class AbstractFileServerApiTest {
+
+    @Autowired
+    private FileService fileService;
+
+    private Path home;
+
+    protected abstract WebTestClient client();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        home = fileService.getBasePath();
+        try (Stream<Path> entries = Files.list(home)) {
+            for (Path entry : entries.toList()) {
+                FileSystemUtils.deleteRecursively(entry);
+            }
+        }
+    }
+
+    @Test
+    void testCreateDirectory() {
+        client().post().uri("/services/files/createdir/a/b")
+                .exchange()
+                .expectStatus().isOk();
+
+        assertTrue(Files.isDirectory(home.resolve("a/b")));
+    }
+
+    @Test
+    void testUploadFile() throws IOException {
+        MultipartBodyBuilder body = new MultipartBodyBuilder();
+        body.part("file", "Hello, World!".getBytes(StandardCharsets.UTF_8)).filename("test.txt");
+
+        client().post().uri("/services/files/upload/test.txt")
+                .body(BodyInserters.fromMultipartData(body.build()))
+                .exchange()
+                .expectStatus().isOk();
+
+        assertEquals("Hello, World!", Files.readString(home.resolve("test.txt")));
+    }
+
+    @Test
+    void testUploadFileRaw() throws IOException {
+        byte[] content = randomBytes(1024 * 1024);
+        Files.write(home.resolve("test.bin"), new byte[10]);
+
+        client().put().uri("/services/files/upload/test.bin")
+                .bodyValue(content)
+                .exchange()
+                .expectStatus().isOk();
+
+        assertArrayEquals(content, Files.readAllBytes(home.resolve("test.bin")));
+    }
+
+    @Test
+    void testListFiles() throws IOException {
+        Files.createDirectories(home.resolve("testdir/sub"));
+        Files.writeString(home.resolve("testdir/a.txt"), "abc");
+
+        client().get().uri("/services/files/list/testdir")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_JSON)
+                .expectBody()
+                .jsonPath("$.fileInfo[0].filePath").isEqualTo("a.txt")
+                .jsonPath("$.fileInfo[0].size").isEqualTo(3)
+                .jsonPath("$.directoryInfo[0].filePath").isEqualTo("sub");
+    }
+
+    @Test
+    void testDownloadFile() throws IOException {
+        byte[] content = randomBytes(1024 * 1024 + 17);
+        Files.write(home.resolve("test.bin"), content);
+
+        byte[] body = client().mutate().codecs(codecs -> codecs.defaultCodecs().maxInMemorySize(content.length)).build()
+                .get().uri("/services/files/download/test.bin")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentLength(content.length)
+                .expectHeader().valueEquals("Content-Disposition", "attachment; filename=\"test.bin\"")
+                .expectBody(byte[].class)
+                .returnResult().getResponseBody();
+
+        assertArrayEquals(content, body);
+    }
+
+    @Test
+    void testRepeatedDownloadOfSmallFile() throws IOException {
+        byte[] content = randomBytes(1000);
+        Files.write(home.resolve("small.bin"), content);
+
+        for (int i = 0; i < 3; i++) {
+            byte[] body = client().get().uri("/services/files/download/small.bin")
+                    .exchange()
+                    .expectStatus().isOk()
+                    .expectHeader().contentLength(content.length)
+                    .expectBody(byte[].class)
+                    .returnResult().getResponseBody();
+            assertArrayEquals(content, body);
+        }
+    }
+
+    @Test
+    void testDownloadFileNotFound() {
+        client().get().uri("/services/files/download/nonexistent.txt")
+                .exchange()
+                .expectStatus().is5xxServerError();
+    }
+
+    @Test
+    void testDelete() throws IOException {
+        Files.createDirectories(home.resolve("testdir/sub"));
+        Files.writeString(home.resolve("testdir/sub/a.txt"), "abc");
+
+        client().delete().uri("/services/files/delete/testdir")
+                .exchange()
+                .expectStatus().isOk();
+
+        assertFalse(Files.exists(home.resolve("testdir")));
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+
+    @TestConfiguration
+    static class FileServiceTestConfig implements DisposableBean {
+
+        private final Path home;
+        private final FileServerConfigImpl fileServerConfig;
+
+        FileServiceTestConfig() throws IOException {
+            home = Files.createTempDirectory("fileserver-api");
+            fileServerConfig = new FileServerConfigImpl();
+            fileServerConfig.setHome(home.toString());
+        }
+
+        @Bean
+        FileServerConfigImpl fileServerConfig() {
+            return fileServerConfig;
+        }
+
+        @Bean
+        ListingCache listingCache() {
+            return new ListingCache(fileServerConfig);
+        }
+
+        @Bean
+        BandwidthLimiter bandwidthLimiter() {
+            return new BandwidthLimiter(fileServerConfig);
+        }
+
+        @Bean
+        BlobStore blobStore() {
+            return new BlobStore(fileServerConfig);
+        }
+
+        @Bean
+        MetadataIndex metadataIndex() {
+            return new MetadataIndex(fileServerConfig);
+        }
+
+        @Bean
+        FileServiceImpl fileService(ListingCache listingCache, BlobStore blobStore, MetadataIndex metadataIndex) {
+            return new FileServiceImpl(fileServerConfig, listingCache, new SidecarCompressor(fileServerConfig),
+                    new HotFileCache(fileServerConfig), blobStore, metadataIndex);
+        }
+
+        @Bean
+        ReactiveFileServiceImpl reactiveFileService(FileServiceImpl fileService, BlobStore blobStore,
+                                                    MetadataIndex metadataIndex) {
+            return new ReactiveFileServiceImpl(fileServerConfig, fileService, blobStore, metadataIndex);
+        }
+
+        @Override
+        public void destroy() throws IOException {
+            FileSystemUtils.deleteRecursively(home);
+        }
+    }
+
+}
@@ -1,6 +1,13 @@
 package swapan.springboot.downloadserver.rest;
 
+import swapan.springboot.downloadserver.config.FileServerConfigImpl;
+import swapan.springboot.downloadserver.services.ArchiveFormat;
+import swapan.springboot.downloadserver.services.ArchiveService;
+import swapan.springboot.downloadserver.services.BandwidthLimiter;
 import swapan.springboot.downloadserver.services.FileService;
+import swapan.springboot.downloadserver.dto.DirectoryInfo;
+import swapan.springboot.downloadserver.dto.DiskUsage;
+import swapan.springboot.downloadserver.dto.FileInfo;
 import swapan.springboot.downloadserver.dto.FileList;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -8,28 +15,62 @@ import org.junit.jupiter.api.io.TempDir;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
+import org.springframework.http.MediaType;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
 
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 @WebMvcTest(FileServerController.class)
+@Import(FileServerConfigImpl.class)
 class FileServerControllerTest {
 
     @Autowired
     private MockMvc mockMvc;
 
+    @Autowired
+    private FileServerConfigImpl fileServerConfig;
+
     @MockBean
     private FileService fileService;
 
+    @MockBean
+    private ArchiveService archiveService;
+
+    @MockBean
+    private BandwidthLimiter bandwidthLimiter;
+
     @TempDir
     Path tempDir;
 
@@ -57,6 +98,54 @@ class FileServerControllerTest {
                 .andExpect(status().isOk());
     }
 
+    @Test
+    void testUploadFileRaw() throws Exception {
+        mockMvc.perform(put("/services/files/upload/test.txt")
+                        .contentType("application/octet-stream")
+                        .content("Hello, World!".getBytes()))
+                .andExpect(status().isOk());
+
+        verify(fileService).saveFile(eq(Paths.get("test.txt")), any(InputStream.class), eq(13L));
+    }
+
+    @Test
+    void testMoveAndCopy() throws Exception {
+        doThrow(new FileAlreadyExistsException("b")).when(fileService).copy(Paths.get("a"), Paths.get("b"));
+
+        mockMvc.perform(post("/services/files/move/a/x.txt").param("target", "b/x.txt"))
+                .andExpect(status().isOk());
+        mockMvc.perform(post("/services/files/copy/a").param("target", "b"))
+                .andExpect(status().isConflict());
+
+        verify(fileService).move(Paths.get("a/x.txt"), Paths.get("b/x.txt"));
+    }
+
+    @Test
+    void testContentByHash() throws Exception {
+        String sha256 = "a".repeat(64);
+        when(fileService.hasContent(sha256)).thenReturn(true);
+
+        mockMvc.perform(get("/services/files/content/" + sha256))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/services/files/content/" + "b".repeat(64)))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(post("/services/files/content/" + sha256 + "/libs/lib.jar"))
+                .andExpect(status().isOk());
+
+        verify(fileService).linkContent(sha256, Paths.get("libs/lib.jar"));
+    }
+
+    @Test
+    void testDiskUsage() throws Exception {
+        when(fileService.getDiskUsage(Paths.get("a/b"))).thenReturn(new DiskUsage("a/b", 1024, 3, 1));
+
+        mockMvc.perform(get("/services/files/du/a/b"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.size").value(1024))
+                .andExpect(jsonPath("$.files").value(3))
+                .andExpect(jsonPath("$.directories").value(1));
+    }
+
     @Test
     void testDownloadFile() throws Exception {
         Resource resource = new ByteArrayResource("Hello, World!".getBytes());
@@ -68,6 +157,223 @@ class FileServerControllerTest {
                 .andExpect(content().string("Hello, World!"));
     }
 
+    @Test
+    void testDownloadFileFromDisk() throws Exception {
+        Path file = Files.writeString(tempDir.resolve("test.txt"), "Hello, World!");
+        when(fileService.loadFileAsResource(any(Path.class))).thenReturn(new FileSystemResource(file));
+
+        mockMvc.perform(get("/services/files/download/test.txt"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Accept-Ranges", "bytes"))
+                .andExpect(header().longValue("Content-Length", 13))
+                .andExpect(header().string("Content-Disposition", "attachment; filename=\"test.txt\""))
+                .andExpect(content().string("Hello, World!"));
+    }
+
+    @Test
+    void testDownloadFileThrottled() throws Exception {
+        Path file = Files.writeString(tempDir.resolve("test.txt"), "Hello, World!");
+        when(fileService.loadFileAsResource(any(Path.class))).thenReturn(new FileSystemResource(file));
+        BandwidthLimiter.Transfer transfer = mock(BandwidthLimiter.Transfer.class);
+        when(bandwidthLimiter.openDownload(any(), eq(Paths.get("test.txt")))).thenReturn(transfer);
+
+        // without async support the request thread paces the body itself
+        mockMvc.perform(get("/services/files/download/test.txt").requestAttr(FileRangeWriter.SENDFILE_SUPPORT, true)
+                        .with(request -> {
+                            request.setAsyncSupported(false);
+                            return request;
+                        }))
+                .andExpect(status().isOk())
+                .andExpect(request().attribute(FileRangeWriter.SENDFILE_FILENAME, (Object) null))
+                .andExpect(content().string("Hello, World!"));
+
+        verify(transfer).reserve(13);
+        verify(transfer).close();
+    }
+
+    @Test
+    void testDownloadFileSingleRange() throws Exception {
+        Path file = Files.writeString(tempDir.resolve("test.txt"), "Hello, World!");
+        when(fileService.loadFileAsResource(any(Path.class))).thenReturn(new FileSystemResource(file));
+
+        mockMvc.perform(get("/services/files/download/test.txt").header("Range", "bytes=7-"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string("Content-Range", "bytes 7-12/13"))
+                .andExpect(content().string("World!"));
+    }
+
+    @Test
+    void testDownloadFileMultipleRanges() throws Exception {
+        Path file = Files.writeString(tempDir.resolve("test.txt"), "Hello, World!");
+        when(fileService.loadFileAsResource(any(Path.class))).thenReturn(new FileSystemResource(file));
+
+        String body = mockMvc.perform(get("/services/files/download/test.txt").header("Range", "bytes=0-4,-6"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string("Content-Type", startsWith("multipart/byteranges; boundary=")))
+                .andReturn().getResponse().getContentAsString();
+        assertTrue(body.contains("Content-Range: bytes 0-4/13\r\n\r\nHello\r\n"));
+        assertTrue(body.contains("Content-Range: bytes 7-12/13\r\n\r\nWorld!\r\n"));
+    }
+
+    @Test
+    void testDownloadFileOverlappingRangesAreMerged() throws Exception {
+        Path file = Files.writeString(tempDir.resolve("test.txt"), "Hello, World!");
+        when(fileService.loadFileAsResource(any(Path.class))).thenReturn(new FileSystemResource(file));
+
+        mockMvc.perform(get("/services/files/download/test.txt").header("Range", "bytes=0-,0-,0-4,5-"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string("Content-Range", "bytes 0-12/13"))
+                .andExpect(content().string("Hello, World!"));
+    }
+
+    @Test
+    void testDownloadFileTooManyRanges() throws Exception {
+        String content = "0123456789".repeat(10);
+        Path file = Files.writeString(tempDir.resolve("test.txt"), content);
+        when(fileService.loadFileAsResource(any(Path.class))).thenReturn(new FileSystemResource(file));
+        StringBuilder range = new StringBuilder("bytes=0-0");
+        for (int i = 1; i <= FileRangeWriter.MAX_RANGES; i++) {
+            // gaps keep the ranges apart
+            range.append(',').append(i * 2).append('-').append(i * 2);
+        }
+
+        mockMvc.perform(get("/services/files/download/test.txt").header("Range", range.toString()))
+                .andExpect(status().isOk())
+                .andExpect(content().string(content));
+    }
+
+    @Test
+    void testDownloadFileIfRangeMismatch() throws Exception {
+        Path file = Files.writeString(tempDir.resolve("test.txt"), "Hello, World!");
+        when(fileService.loadFileAsResource(any(Path.class))).thenReturn(new FileSystemResource(file));
+
+        mockMvc.perform(get("/services/files/download/test.txt")
+                        .header("Range", "bytes=7-")
+                        .header("If-Range", "\"stale\""))
+                .andExpect(status().isOk())
+                .andExpect(content().string("Hello, World!"));
+    }
+
+    @Test
+    void testDownloadFileRangeNotSatisfiable() throws Exception {
+        Path file = Files.writeString(tempDir.resolve("test.txt"), "Hello, World!");
+        when(fileService.loadFileAsResource(any(Path.class))).thenReturn(new FileSystemResource(file));
+
+        mockMvc.perform(get("/services/files/download/test.txt").header("Range", "bytes=100-200"))
+                .andExpect(status().isRequestedRangeNotSatisfiable())
+                .andExpect(header().string("Content-Range", "bytes */13"));
+    }
+
+    @Test
+    void testDownloadFileNotModified() throws Exception {
+        Path file = Files.writeString(tempDir.resolve("test.txt"), "Hello, World!");
+        when(fileService.loadFileAsResource(any(Path.class))).thenReturn(new FileSystemResource(file));
+
+        MvcResult result = mockMvc.perform(get("/services/files/download/test.txt"))
+                .andExpect(status().isOk())
+                .andExpect(header().exists("Last-Modified"))
+                .andReturn();
+        String eTag = result.getResponse().getHeader("ETag");
+        assertNotNull(eTag);
+
+        mockMvc.perform(get("/services/files/download/test.txt").header("If-None-Match", eTag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+        mockMvc.perform(get("/services/files/download/test.txt")
+                        .header("If-Modified-Since", result.getResponse().getHeader("Last-Modified")))
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    void testDownloadDeduplicatedFileIsValidatedByETagOnly() throws Exception {
+        Path file = Files.writeString(tempDir.resolve("test.txt"), "Hello, World!");
+        when(fileService.loadFileAsResource(any(Path.class))).thenReturn(new FileSystemResource(file));
+        fileServerConfig.setDedup(true);
+        try {
+            MvcResult result = mockMvc.perform(get("/services/files/download/test.txt"))
+                    .andExpect(status().isOk())
+                    .andExpect(header().doesNotExist("Last-Modified"))
+                    .andReturn();
+
+            // replaced content may have been stored earlier than the old one
+            mockMvc.perform(get("/services/files/download/test.txt")
+                            .header("If-Modified-Since", "Fri, 01 Jan 2100 00:00:00 GMT"))
+                    .andExpect(status().isOk());
+            mockMvc.perform(get("/services/files/download/test.txt")
+                            .header("If-None-Match", result.getResponse().getHeader("ETag")))
+                    .andExpect(status().isNotModified());
+        } finally {
+            fileServerConfig.setDedup(false);
+        }
+    }
+
+    @Test
+    void testListFilesNotModified() throws Exception {
+        FileList fileList = new FileList("testdir");
+        fileList.add(new FileInfo("a.txt", 10L, Instant.parse("2024-01-01T00:00:00Z"), null));
+        fileList.setLastModified(Instant.parse("2024-01-01T00:00:00Z"));
+        when(fileService.getFilesInfo(any(Path.class))).thenReturn(fileList);
+
+        String eTag = mockMvc.perform(get("/services/files/list/testdir"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Last-Modified", "Mon, 01 Jan 2024 00:00:00 GMT"))
+                .andReturn().getResponse().getHeader("ETag");
+        assertTrue(eTag.startsWith("W/"));
+
+        mockMvc.perform(get("/services/files/list/testdir").header("If-None-Match", eTag))
+                .andExpect(status().isNotModified());
+
+        fileList.add(new FileInfo("b.txt", 10L, Instant.parse("2024-01-01T00:00:00Z"), null));
+        mockMvc.perform(get("/services/files/list/testdir").header("If-None-Match", eTag))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void testDownloadFilePrecompressedSidecar() throws Exception {
+        Path file = Files.writeString(tempDir.resolve("report.json"), "{}");
+        Path sidecar = Files.write(tempDir.resolve("report.json.gz"), new byte[] { 1, 2, 3 });
+        // sidecar made in the same clock tick as the file may be stale
+        Files.setLastModifiedTime(sidecar, Files.getLastModifiedTime(file));
+        when(fileService.loadFileAsResource(any(Path.class))).thenReturn(new FileSystemResource(file));
+        mockMvc.perform(get("/services/files/download/report.json").header("Accept-Encoding", "gzip, deflate"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("Content-Encoding"))
+                .andExpect(content().string("{}"));
+
+        Files.setLastModifiedTime(sidecar, FileTime.from(Files.getLastModifiedTime(file).toInstant().plusSeconds(1)));
+
+        mockMvc.perform(get("/services/files/download/report.json").header("Accept-Encoding", "gzip, deflate"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Encoding", "gzip"))
+                .andExpect(header().string("Vary", "Accept-Encoding"))
+                .andExpect(header().longValue("Content-Length", 3))
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(content().bytes(new byte[] { 1, 2, 3 }));
+    }
+
+    @Test
+    void testDownloadFileCompressedOnTheFly() throws Exception {
+        String text = "line of log output\n".repeat(200);
+        Path file = Files.writeString(tempDir.resolve("build.txt"), text);
+        when(fileService.loadFileAsResource(any(Path.class))).thenReturn(new FileSystemResource(file));
+
+        byte[] body = mockMvc.perform(get("/services/files/download/build.txt").header("Accept-Encoding", "br;q=1, gzip;q=0.5"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Encoding", "gzip"))
+                .andExpect(header().doesNotExist("Content-Length"))
+                .andExpect(content().contentTypeCompatibleWith(MediaType.TEXT_PLAIN))
+                .andReturn().getResponse().getContentAsByteArray();
+        assertTrue(body.length < text.length());
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            assertEquals(text, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+
+        mockMvc.perform(get("/services/files/download/build.txt"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("Content-Encoding"))
+                .andExpect(content().string(text));
+    }
+
     @Test
     void testListFiles() throws Exception {
         FileList fileList = new FileList("testdir");
@@ -78,12 +384,48 @@ class FileServerControllerTest {
                 .andExpect(content().contentType("application/json"));
     }
 
+    @Test
+    void testListFilesPage() throws Exception {
+        FileList fileList = new FileList("testdir");
+        fileList.add(new FileInfo("a.txt"));
+        fileList.setNextCursor("YS50eHQ");
+        when(fileService.getFilesInfo(any(Path.class), eq("cursor"), eq(1))).thenReturn(fileList);
+
+        mockMvc.perform(get("/services/files/list/testdir").param("limit", "1").param("cursor", "cursor"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.fileInfo[0].filePath").value("a.txt"))
+                .andExpect(jsonPath("$.nextCursor").value("YS50eHQ"));
+    }
+
+    @Test
+    void testListFilesNdjson() throws Exception {
+        when(fileService.streamFilesInfo(any(Path.class)))
+                .thenReturn(Stream.of(new DirectoryInfo("subdir"), new FileInfo("a.txt")));
+
+        mockMvc.perform(get("/services/files/list/testdir").accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andExpect(content().string("{\"filePath\":\"subdir\",\"type\":\"directory\"}\n"
+                        + "{\"filePath\":\"a.txt\",\"type\":\"file\"}\n"));
+    }
+
     @Test
     void testDeleteFile() throws Exception {
         mockMvc.perform(delete("/services/files/delete/test.txt"))
                 .andExpect(status().isOk());
     }
 
+    @Test
+    void testPathOutsideRoot() throws Exception {
+        doThrow(new IllegalArgumentException("Invalid path")).when(fileService).move(Paths.get("a"), Paths.get("../../etc"));
+        doThrow(new IllegalArgumentException("Invalid path")).when(fileService).delete(Paths.get("x"));
+
+        mockMvc.perform(post("/services/files/move/a").param("target", "../../etc"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(delete("/services/files/delete/x"))
+                .andExpect(status().isBadRequest());
+    }
+
     @Test
     void testDownloadFileNotFound() throws Exception {
         when(fileService.loadFileAsResource(any(Path.class)))
@@ -92,4 +434,35 @@ class FileServerControllerTest {
         mockMvc.perform(get("/services/files/download/nonexistent.txt"))
                 .andExpect(status().isInternalServerError());
     }
-} 
\ No newline at end of file
+
+    @Test
+    void testDownloadArchive() throws Exception {
+        doAnswer(invocation -> {
+            invocation.getArgument(2, OutputStream.class).write("archive".getBytes(StandardCharsets.UTF_8));
+            return null;
+        }).when(archiveService).writeArchive(eq(Paths.get("path/to/build")), eq(ArchiveFormat.TAR_GZ), any());
+
+        mockMvc.perform(get("/services/files/archive/path/to/build").param("format", "tar.gz"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/gzip"))
+                .andExpect(header().string("Content-Disposition", "attachment; filename=\"build.tar.gz\""))
+                .andExpect(content().string("archive"));
+    }
+
+    @Test
+    void testDownloadArchiveUnknownFormat() throws Exception {
+        mockMvc.perform(get("/services/files/archive/build").param("format", "rar"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void testSearch() throws Exception {
+        when(fileService.search(eq(Paths.get("testdir")), any()))
+                .thenReturn(Stream.of(new FileInfo("a/b.jar", 10L, null, null)));
+
+        mockMvc.perform(get("/services/files/search/testdir").param("glob", "*.jar").param("maxDepth", "3"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andExpect(content().string("{\"filePath\":\"a/b.jar\",\"size\":10,\"type\":\"file\"}\n"));
+    }
+}
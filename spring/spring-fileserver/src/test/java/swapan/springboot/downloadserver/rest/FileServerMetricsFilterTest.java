@@ -0,0 +1,108 @@
+package swapan.springboot.downloadserver.rest;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileServerMetricsFilterTest {
+
+    @Test
+    void testRequestsAndBytes() throws Exception {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        FileServerMetricsFilter filter = new FileServerMetricsFilter(1, registry);
+
+        MockHttpServletRequest upload = new MockHttpServletRequest("PUT", "/services/files/upload/builds/1/app.jar");
+        upload.setContent(new byte[100]);
+        filter.doFilter(upload, new MockHttpServletResponse(), (request, response) -> request.getInputStream().readAllBytes());
+
+        MockHttpServletRequest download = new MockHttpServletRequest("GET", "/services/files/download/app.jar");
+        filter.doFilter(download, new MockHttpServletResponse(),
+                (request, response) -> response.getOutputStream().write("Hello".getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(1, registry.get(FileServerMetricsFilter.REQUESTS)
+                .tags("operation", "upload", "prefix", "builds", "status", "200").timer().count());
+        assertEquals(100, registry.get(FileServerMetricsFilter.BYTES_IN).tags("operation", "upload").counter().count());
+        assertEquals(5, registry.get(FileServerMetricsFilter.BYTES_OUT)
+                .tags("operation", "download", "prefix", "").counter().count());
+        assertEquals(0, registry.get(FileServerMetricsFilter.ACTIVE_REQUESTS).tags("operation", "download")
+                .longTaskTimer().activeTasks());
+    }
+
+    @Test
+    void testErrors() throws Exception {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        FileServerMetricsFilter filter = new FileServerMetricsFilter(0, registry);
+
+        MockHttpServletRequest handled = new MockHttpServletRequest("DELETE", "/services/files/delete/a");
+        filter.doFilter(handled, new MockHttpServletResponse(), (request, response) -> {
+            FileServerMetricsFilter.recordError(handled, new IOException("disk"));
+            ((HttpServletResponse) response).setStatus(500);
+        });
+        MockHttpServletRequest thrown = new MockHttpServletRequest("GET", "/services/files/unknown");
+        assertThrows(IllegalStateException.class, () -> filter.doFilter(thrown, new MockHttpServletResponse(),
+                (request, response) -> {
+                    throw new IllegalStateException();
+                }));
+        filter.doFilter(new MockHttpServletRequest("GET", "/actuator/health"), new MockHttpServletResponse(),
+                new MockFilterChain());
+
+        assertEquals(1, registry.get(FileServerMetricsFilter.ERRORS)
+                .tags("operation", "delete", "exception", "IOException").counter().count());
+        assertEquals(1, registry.get(FileServerMetricsFilter.ERRORS)
+                .tags("operation", "other", "exception", "IllegalStateException").counter().count());
+        assertEquals(1, registry.get(FileServerMetricsFilter.REQUESTS).tags("status", "500", "operation", "other")
+                .timer().count());
+        assertEquals(2, registry.get(FileServerMetricsFilter.REQUESTS).timers().size());
+    }
+
+    @Test
+    void testPrefixValuesAreLimited() throws Exception {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        registry.config().meterFilter(FileServerMetricsFilter.prefixLimit(2));
+        FileServerMetricsFilter filter = new FileServerMetricsFilter(1, registry);
+
+        for (String prefix : new String[] {"a", "b", "c", "a", "d"}) {
+            filter.doFilter(new MockHttpServletRequest("GET", "/services/files/download/" + prefix + "/app.jar"),
+                    new MockHttpServletResponse(), new MockFilterChain());
+        }
+
+        assertEquals(2, registry.get(FileServerMetricsFilter.REQUESTS).tags("prefix", "a").timer().count());
+        assertEquals(1, registry.get(FileServerMetricsFilter.REQUESTS).tags("prefix", "b").timer().count());
+        assertEquals(2, registry.get(FileServerMetricsFilter.REQUESTS).tags("prefix", "other").timer().count());
+        assertTrue(registry.find(FileServerMetricsFilter.REQUESTS).tags("prefix", "c").timers().isEmpty());
+        // every request is counted
+        assertEquals(5, registry.get(FileServerMetricsFilter.REQUESTS).timers().stream().mapToLong(Timer::count).sum());
+    }
+
+    @Test
+    void testAsyncRequestIsRecordedOnCompletion() throws Exception {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        FileServerMetricsFilter filter = new FileServerMetricsFilter(0, registry);
+        MockHttpServletRequest download = new MockHttpServletRequest("GET", "/services/files/download/app.jar");
+        download.setAsyncSupported(true);
+
+        filter.doFilter(download, new MockHttpServletResponse(),
+                (request, response) -> request.startAsync(request, response));
+        assertEquals(1, registry.get(FileServerMetricsFilter.ACTIVE_REQUESTS).tags("operation", "download")
+                .longTaskTimer().activeTasks());
+
+        download.getAsyncContext().getResponse().getOutputStream().write("Hello".getBytes(StandardCharsets.UTF_8));
+        download.getAsyncContext().complete();
+
+        assertEquals(0, registry.get(FileServerMetricsFilter.ACTIVE_REQUESTS).tags("operation", "download")
+                .longTaskTimer().activeTasks());
+        assertEquals(1, registry.get(FileServerMetricsFilter.REQUESTS).tags("operation", "download", "status", "200")
+                .timer().count());
+    }
+
+}
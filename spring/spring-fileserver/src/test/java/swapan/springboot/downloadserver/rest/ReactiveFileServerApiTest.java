@@ -0,0 +1,20 @@
+package swapan.springboot.downloadserver.rest;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+@WebFluxTest(ReactiveFileServerController.class)
+@Import(AbstractFileServerApiTest.FileServiceTestConfig.class)
+class ReactiveFileServerApiTest extends AbstractFileServerApiTest {
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @Override
+    protected WebTestClient client() {
+        return webTestClient;
+    }
+
+}
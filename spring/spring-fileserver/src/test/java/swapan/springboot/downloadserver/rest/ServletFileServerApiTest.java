@@ -0,0 +1,27 @@
+package swapan.springboot.downloadserver.rest;
+
+import swapan.springboot.downloadserver.services.ArchiveService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.client.MockMvcWebTestClient;
+
+@WebMvcTest(FileServerController.class)
+@Import(AbstractFileServerApiTest.FileServiceTestConfig.class)
+class ServletFileServerApiTest extends AbstractFileServerApiTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private ArchiveService archiveService;
+
+    @Override
+    protected WebTestClient client() {
+        return MockMvcWebTestClient.bindTo(mockMvc).build();
+    }
+
+}
@@ -0,0 +1,174 @@
+package swapan.springboot.downloadserver.rest;
+
+import swapan.springboot.downloadserver.services.BandwidthLimiter;
+
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ThrottledStreamsTest {
+
+    @Test
+    void testSendReturnsBeforeBodyIsSent() throws Exception {
+        byte[] body = new byte[40 * 1024];
+        new Random(1).nextBytes(body);
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setAsyncSupported(true);
+        ReadyOutputStream out = new ReadyOutputStream();
+        MockHttpServletResponse response = new MockHttpServletResponse() {
+            @Override
+            public ServletOutputStream getOutputStream() {
+                return out;
+            }
+        };
+        PausingTransfer transfer = new PausingTransfer();
+
+        ThrottledStreams.send(request, response, new ByteArrayInputStream(body), transfer);
+
+        // first chunk waits for tokens on the timer, not on the request thread
+        assertEquals(0, out.content.size());
+        assertTrue(transfer.closed.await(5, TimeUnit.SECONDS));
+        assertArrayEquals(body, out.content.toByteArray());
+        assertEquals(body.length, transfer.reserved);
+        assertFalse(request.isAsyncStarted());
+    }
+
+    @Test
+    void testReceiveCompletesResponseOnceBodyIsReceived() throws Exception {
+        byte[] body = new byte[40 * 1024];
+        new Random(2).nextBytes(body);
+        ReadyInputStream in = new ReadyInputStream(body);
+        MockHttpServletRequest request = new MockHttpServletRequest() {
+            @Override
+            public ServletInputStream getInputStream() {
+                return in;
+            }
+        };
+        request.setAsyncSupported(true);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        PausingTransfer transfer = new PausingTransfer();
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        CountDownLatch completed = new CountDownLatch(1);
+
+        ThrottledStreams.receive(request, response, transfer, new ThrottledStreams.BodyConsumer() {
+            @Override
+            public void accept(byte[] b, int off, int len) {
+                received.write(b, off, len);
+            }
+
+            @Override
+            public void complete(HttpServletRequest request, HttpServletResponse response) {
+                response.setStatus(HttpServletResponse.SC_CREATED);
+                completed.countDown();
+            }
+
+            @Override
+            public void failed(HttpServletRequest request, HttpServletResponse response, Throwable e) {
+                fail(e);
+            }
+        });
+
+        assertTrue(received.size() < body.length);
+        assertTrue(transfer.closed.await(5, TimeUnit.SECONDS));
+        assertEquals(0, completed.getCount());
+        assertArrayEquals(body, received.toByteArray());
+        assertEquals(HttpServletResponse.SC_CREATED, response.getStatus());
+    }
+
+    /**
+     * Every chunk waits a little, so the transfer is resumed by the timer.
+     */
+    private static class PausingTransfer implements BandwidthLimiter.Transfer {
+        private final CountDownLatch closed = new CountDownLatch(1);
+        private long reserved;
+
+        @Override
+        public long reserve(long bytes) {
+            reserved += bytes;
+            return TimeUnit.MILLISECONDS.toNanos(20);
+        }
+
+        @Override
+        public void close() {
+            closed.countDown();
+        }
+    }
+
+    /**
+     * Output which is always ready, like a socket with empty send buffer.
+     */
+    private static class ReadyOutputStream extends ServletOutputStream {
+        private final ByteArrayOutputStream content = new ByteArrayOutputStream();
+
+        @Override
+        public void write(int b) {
+            content.write(b);
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            try {
+                writeListener.onWritePossible();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Input whose whole content has arrived.
+     */
+    private static class ReadyInputStream extends ServletInputStream {
+        private final ByteArrayInputStream content;
+
+        ReadyInputStream(byte[] content) {
+            this.content = new ByteArrayInputStream(content);
+        }
+
+        @Override
+        public int read() {
+            return content.read();
+        }
+
+        @Override
+        public boolean isFinished() {
+            return content.available() == 0;
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setReadListener(ReadListener readListener) {
+            try {
+                readListener.onDataAvailable();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,135 @@
+package swapan.springboot.downloadserver.services;
+
+import swapan.springboot.downloadserver.config.FileServerConfigImpl;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ArchiveServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private ArchiveServiceImpl archiveService;
+    private Map<String, byte[]> contents;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        FileServerConfigImpl config = new FileServerConfigImpl();
+        config.setHome(tempDir.toString());
+        config.setArchiveParallelism(2);
+        archiveService = new ArchiveServiceImpl(config, new FileServiceImpl(config));
+
+        Random random = new Random(42);
+        byte[] image = new byte[10_000];
+        random.nextBytes(image);
+        byte[] large = "large text line\n".repeat(ArchiveServiceImpl.PARALLEL_MAX_SIZE / 10).getBytes(StandardCharsets.UTF_8);
+        contents = new HashMap<>();
+        Files.createDirectories(tempDir.resolve("build/sub/empty"));
+        for (int i = 0; i < 20; i++) {
+            contents.put("build/file-" + i + ".txt", ("text " + i + "\n").repeat(i * 100).getBytes(StandardCharsets.UTF_8));
+        }
+        contents.put("build/sub/image.png", image);
+        contents.put("build/sub/large.log", large);
+        for (Map.Entry<String, byte[]> entry : contents.entrySet()) {
+            Files.write(tempDir.resolve(entry.getKey()), entry.getValue());
+        }
+    }
+
+    @Test
+    void testZip() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        archiveService.writeArchive(Paths.get("build"), ArchiveFormat.ZIP, out);
+
+        Map<String, byte[]> files = new HashMap<>();
+        int directories = 0;
+        try (ZipArchiveInputStream zip = new ZipArchiveInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            ZipArchiveEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                if (entry.isDirectory()) {
+                    directories++;
+                    continue;
+                }
+                int expectedMethod = entry.getName().endsWith(".png") ? ZipEntry.STORED : ZipEntry.DEFLATED;
+                assertEquals(expectedMethod, entry.getMethod(), entry.getName());
+                files.put(entry.getName(), zip.readAllBytes());
+            }
+        }
+        assertEquals(2, directories);
+        assertContents(files);
+    }
+
+    @Test
+    void testZipLargeCompressedFile() throws IOException {
+        byte[] video = new byte[ArchiveServiceImpl.PARALLEL_MAX_SIZE + 1];
+        new Random(7).nextBytes(video);
+        Files.write(tempDir.resolve("build/sub/video.mp4"), video);
+        contents.put("build/sub/video.mp4", video);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        archiveService.writeArchive(Paths.get("build"), ArchiveFormat.ZIP, out);
+
+        Map<String, byte[]> files = new HashMap<>();
+        try (ZipArchiveInputStream zip = new ZipArchiveInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            ZipArchiveEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                if (!entry.isDirectory()) {
+                    files.put(entry.getName(), zip.readAllBytes());
+                }
+            }
+        }
+        // too large to be held in memory, written in one pass at deflate level 0
+        assertContents(files);
+    }
+
+    @Test
+    void testTarGz() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        archiveService.writeArchive(Paths.get("build"), ArchiveFormat.TAR_GZ, out);
+
+        Map<String, byte[]> files = new HashMap<>();
+        try (TarArchiveInputStream tar = new TarArchiveInputStream(new GZIPInputStream(new ByteArrayInputStream(out.toByteArray())))) {
+            TarArchiveEntry entry;
+            while ((entry = tar.getNextEntry()) != null) {
+                if (!entry.isDirectory()) {
+                    files.put(entry.getName(), tar.readAllBytes());
+                }
+            }
+        }
+        assertContents(files);
+    }
+
+    @Test
+    void testNotDirectory() {
+        assertThrows(NotDirectoryException.class,
+                () -> archiveService.writeArchive(Paths.get("build/file-1.txt"), ArchiveFormat.ZIP, new ByteArrayOutputStream()));
+    }
+
+    private void assertContents(Map<String, byte[]> files) {
+        assertEquals(contents.keySet(), files.keySet());
+        for (Map.Entry<String, byte[]> entry : contents.entrySet()) {
+            assertArrayEquals(entry.getValue(), files.get(entry.getKey()), entry.getKey());
+        }
+    }
+
+}
@@ -0,0 +1,104 @@
+package swapan.springboot.downloadserver.services;
+
+import swapan.springboot.downloadserver.config.FileServerConfigImpl;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BandwidthLimiterTest {
+
+    @Test
+    void testUnlimited() {
+        BandwidthLimiter limiter = new BandwidthLimiter(new FileServerConfigImpl());
+
+        assertNull(limiter.openDownload("10.0.0.1", Paths.get("a.bin")));
+        assertNull(limiter.openUpload("10.0.0.1", Paths.get("a.bin")));
+    }
+
+    @Test
+    void testFairShare() {
+        FileServerConfigImpl config = new FileServerConfigImpl();
+        config.setBandwidthLimit(1000);
+        config.setBandwidthClientLimit(400);
+        config.setBandwidthClientWeights(Map.of("c", 3));
+        BandwidthLimiter limiter = new BandwidthLimiter(config);
+
+        BandwidthLimiter.Transfer a = limiter.openDownload("a", Paths.get("a.bin"));
+        BandwidthLimiter.Transfer a2 = limiter.openDownload("a", Paths.get("b.bin"));
+        assertEquals(400, limiter.getDownloadRate("a"), 0.001);
+
+        BandwidthLimiter.Transfer b = limiter.openDownload("b", Paths.get("a.bin"));
+        BandwidthLimiter.Transfer c = limiter.openDownload("c", Paths.get("a.bin"));
+        // c is capped by client limit, its unused weighted share goes to a and b
+        assertEquals(300, limiter.getDownloadRate("a"), 0.001);
+        assertEquals(300, limiter.getDownloadRate("b"), 0.001);
+        assertEquals(400, limiter.getDownloadRate("c"), 0.001);
+
+        c.close();
+        c.close();
+        assertEquals(400, limiter.getDownloadRate("a"), 0.001);
+        assertEquals(0, limiter.getDownloadRate("c"), 0.001);
+
+        a.close();
+        assertEquals(400, limiter.getDownloadRate("a"), 0.001);
+        a2.close();
+        b.close();
+        assertEquals(0, limiter.getDownloadRate("a"), 0.001);
+    }
+
+    @Test
+    void testPacing() {
+        FileServerConfigImpl config = new FileServerConfigImpl();
+        config.setBandwidthClientLimit(1024 * 1024);
+        BandwidthLimiter limiter = new BandwidthLimiter(config);
+
+        try (BandwidthLimiter.Transfer transfer = limiter.openDownload("a", Paths.get("a.bin"))) {
+            // burst of 100 ms at full rate is available right away
+            assertEquals(0, transfer.reserve(100 * 1024));
+            long delay = transfer.reserve(1024 * 1024);
+            assertTrue(delay > TimeUnit.MILLISECONDS.toNanos(900) && delay <= TimeUnit.MILLISECONDS.toNanos(1000), "" + delay);
+        }
+        // uploads have buckets of their own
+        try (BandwidthLimiter.Transfer transfer = limiter.openUpload("a", Paths.get("a.bin"))) {
+            assertEquals(0, transfer.reserve(100 * 1024));
+        }
+    }
+
+    @Test
+    void testDebtOutlivesTransfer() {
+        FileServerConfigImpl config = new FileServerConfigImpl();
+        config.setBandwidthClientLimit(1024 * 1024);
+        BandwidthLimiter limiter = new BandwidthLimiter(config);
+
+        // multipart upload is charged once the container has received its body
+        try (BandwidthLimiter.Transfer multipart = limiter.openUpload("a", Paths.get("a.bin"))) {
+            multipart.reserve(2 * 1024 * 1024);
+        }
+        try (BandwidthLimiter.Transfer next = limiter.openUpload("a", Paths.get("b.bin"));
+             BandwidthLimiter.Transfer other = limiter.openUpload("b", Paths.get("b.bin"))) {
+            assertTrue(next.reserve(1024) > TimeUnit.MILLISECONDS.toNanos(1500));
+            assertEquals(0, other.reserve(1024));
+        }
+    }
+
+    @Test
+    void testPrefixLimit() {
+        FileServerConfigImpl config = new FileServerConfigImpl();
+        config.setBandwidthPrefixLimits(Map.of("builds/nightly", 1024L * 1024));
+        BandwidthLimiter limiter = new BandwidthLimiter(config);
+
+        assertNull(limiter.openDownload("a", Paths.get("builds/release/app.jar")));
+        try (BandwidthLimiter.Transfer a = limiter.openDownload("a", Paths.get("builds/nightly/app.jar"));
+             BandwidthLimiter.Transfer b = limiter.openDownload("b", Paths.get("builds/nightly/lib/x.jar"))) {
+            assertEquals(0, a.reserve(100 * 1024));
+            // prefix bucket is shared by all clients
+            assertTrue(b.reserve(512 * 1024) > TimeUnit.MILLISECONDS.toNanos(400));
+        }
+    }
+
+}
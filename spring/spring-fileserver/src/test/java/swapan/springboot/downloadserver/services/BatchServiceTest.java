@@ -0,0 +1,99 @@
+package swapan.springboot.downloadserver.services;
+
+import swapan.springboot.downloadserver.config.FileServerConfigImpl;
+import swapan.springboot.downloadserver.dto.BatchOperation;
+import swapan.springboot.downloadserver.dto.BatchRequest;
+import swapan.springboot.downloadserver.dto.BatchResult;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private FileServiceImpl fileService;
+    private BatchServiceImpl batchService;
+
+    @BeforeEach
+    void setUp() {
+        FileServerConfigImpl config = new FileServerConfigImpl();
+        config.setHome(tempDir.toString());
+        config.setBatchParallelism(4);
+        fileService = new FileServiceImpl(config);
+        batchService = new BatchServiceImpl(config, fileService);
+    }
+
+    @AfterEach
+    void tearDown() {
+        batchService.shutdown();
+        fileService.shutdown();
+    }
+
+    @Test
+    void testParallelOperationsReportEachResult() throws IOException {
+        Files.writeString(tempDir.resolve("old.txt"), "old");
+        List<BatchOperation> operations = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            operations.add(new BatchOperation(BatchOperation.Type.CREATEDIR, "dirs/" + i, null));
+        }
+        operations.add(new BatchOperation(BatchOperation.Type.DELETE, "missing.txt", null));
+        operations.add(new BatchOperation(BatchOperation.Type.COPY, "old.txt", "copy.txt"));
+
+        List<BatchResult> results = batchService.run(new BatchRequest(operations, false));
+
+        assertEquals(102, results.size());
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(i, results.get(i).getIndex());
+        }
+        assertEquals(101, results.stream().filter(result -> result.getStatus() == BatchResult.Status.OK).count());
+        assertEquals(BatchResult.Status.FAILED, results.get(100).getStatus());
+        assertNotNull(results.get(100).getError());
+        assertTrue(Files.isDirectory(tempDir.resolve("dirs/99")));
+        assertEquals("old", Files.readString(tempDir.resolve("copy.txt")));
+    }
+
+    @Test
+    void testStopOnErrorSkipsRest() {
+        List<BatchResult> results = batchService.run(new BatchRequest(List.of(
+                new BatchOperation(BatchOperation.Type.CREATEDIR, "a", null),
+                new BatchOperation(BatchOperation.Type.MOVE, "a", "b"),
+                new BatchOperation(BatchOperation.Type.DELETE, "a", null),
+                new BatchOperation(BatchOperation.Type.CREATEDIR, "c", null)), true));
+
+        assertEquals(List.of(BatchResult.Status.OK, BatchResult.Status.OK, BatchResult.Status.FAILED, BatchResult.Status.SKIPPED),
+                results.stream().map(BatchResult::getStatus).toList());
+        assertTrue(Files.isDirectory(tempDir.resolve("b")));
+        assertFalse(Files.exists(tempDir.resolve("c")));
+    }
+
+    @Test
+    void testIncompleteOperationIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> batchService.run(new BatchRequest(List.of(
+                new BatchOperation(BatchOperation.Type.MOVE, "a", null)), false)));
+        assertThrows(IllegalArgumentException.class, () -> batchService.run(new BatchRequest(List.of(
+                new BatchOperation(BatchOperation.Type.DELETE, "", null)), false)));
+        assertFalse(Files.exists(tempDir.resolve("a")));
+    }
+
+    @Test
+    void testPathOutsideRootRejectsWholeBatch() {
+        assertThrows(IllegalArgumentException.class, () -> batchService.run(new BatchRequest(List.of(
+                new BatchOperation(BatchOperation.Type.CREATEDIR, "a", null),
+                new BatchOperation(BatchOperation.Type.MOVE, "b", "../../etc/b")), false)));
+        assertThrows(IllegalArgumentException.class, () -> batchService.run(new BatchRequest(List.of(
+                new BatchOperation(BatchOperation.Type.DELETE, "/etc/passwd", null)), false)));
+        assertFalse(Files.exists(tempDir.resolve("a")));
+    }
+}
@@ -0,0 +1,156 @@
+package swapan.springboot.downloadserver.services;
+
+import swapan.springboot.downloadserver.config.FileServerConfigImpl;
+import swapan.springboot.downloadserver.dto.FileEntry;
+import swapan.springboot.downloadserver.dto.SearchQuery;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class BlobStoreTest {
+
+    private static final byte[] CONTENT = "same dependency jar".getBytes(StandardCharsets.UTF_8);
+    private static final String SHA256 = HexFormat.of().formatHex(BlobStore.newDigest().digest(CONTENT));
+
+    @TempDir
+    Path tempDir;
+
+    private BlobStore blobStore;
+    private FileServiceImpl fileService;
+    private ReactiveFileServiceImpl reactiveFileService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("unix"));
+        FileServerConfigImpl config = new FileServerConfigImpl();
+        config.setHome(tempDir.toString());
+        config.setDedup(true);
+        ListingCache listingCache = new ListingCache(config);
+        blobStore = new BlobStore(config);
+        blobStore.start();
+        MetadataIndex metadataIndex = new MetadataIndex(config);
+        fileService = new FileServiceImpl(config, listingCache, new SidecarCompressor(config), new HotFileCache(config), blobStore,
+                metadataIndex);
+        reactiveFileService = new ReactiveFileServiceImpl(config, fileService, blobStore, metadataIndex);
+        fileService.createDirectory(Paths.get("a"));
+        fileService.createDirectory(Paths.get("b"));
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (fileService != null) {
+            fileService.shutdown();
+        }
+    }
+
+    @Test
+    void testSameContentIsStoredOnce() throws IOException {
+        assertFalse(fileService.hasContent(SHA256));
+        fileService.saveFile(Paths.get("a", "lib.jar"), new ByteArrayInputStream(CONTENT));
+        assertTrue(fileService.hasContent(SHA256));
+        fileService.saveFile(Paths.get("b", "lib.jar"), new ByteArrayInputStream(CONTENT), CONTENT.length);
+        reactiveFileService.saveFile(Paths.get("b", "copy.jar"),
+                Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(CONTENT))).block();
+
+        assertEquals(1, blobCount());
+        assertEquals(fileKey(tempDir.resolve("a/lib.jar")), fileKey(tempDir.resolve("b/lib.jar")));
+        assertEquals(fileKey(tempDir.resolve("a/lib.jar")), fileKey(tempDir.resolve("b/copy.jar")));
+        assertArrayEquals(CONTENT, Files.readAllBytes(tempDir.resolve("b/copy.jar")));
+        assertEquals(4, Files.getAttribute(tempDir.resolve("a/lib.jar"), "unix:nlink"));
+        try (Stream<Path> temp = Files.list(tempDir.resolve(BlobStore.BLOB_DIR).resolve("tmp"))) {
+            assertEquals(0, temp.count());
+        }
+    }
+
+    @Test
+    void testLinkContentWithoutUpload() throws IOException {
+        assertThrows(NoSuchFileException.class, () -> fileService.linkContent(SHA256, Paths.get("b", "lib.jar")));
+        assertThrows(IllegalArgumentException.class, () -> fileService.linkContent("../x", Paths.get("b", "lib.jar")));
+        fileService.saveFile(Paths.get("a", "lib.jar"), new ByteArrayInputStream(CONTENT));
+
+        fileService.linkContent(SHA256, Paths.get("b", "lib.jar"));
+
+        assertArrayEquals(CONTENT, Files.readAllBytes(tempDir.resolve("b/lib.jar")));
+        assertEquals(1, fileService.getFilesInfo(Paths.get("b")).getFileInfo().size());
+    }
+
+    @Test
+    void testOverwriteDoesNotChangeOtherLinks() throws IOException {
+        fileService.saveFile(Paths.get("a", "lib.jar"), new ByteArrayInputStream(CONTENT));
+        FileTime stored = FileTime.fromMillis(1_000_000_000_000L);
+        Files.setLastModifiedTime(tempDir.resolve("a/lib.jar"), stored);
+        fileService.saveFile(Paths.get("b", "lib.jar"), new ByteArrayInputStream(CONTENT));
+        // shared inode keeps its modification time
+        assertEquals(stored, Files.getLastModifiedTime(tempDir.resolve("a/lib.jar")));
+
+        fileService.saveFile(Paths.get("b", "lib.jar"), new ByteArrayInputStream(new byte[10]));
+
+        assertArrayEquals(CONTENT, Files.readAllBytes(tempDir.resolve("a/lib.jar")));
+        assertArrayEquals(new byte[10], Files.readAllBytes(tempDir.resolve("b/lib.jar")));
+        assertEquals(2, blobCount());
+    }
+
+    @Test
+    void testBlobIsRemovedWithLastLink() throws IOException {
+        fileService.saveFile(Paths.get("a", "lib.jar"), new ByteArrayInputStream(CONTENT));
+        fileService.saveFile(Paths.get("b", "lib.jar"), new ByteArrayInputStream(CONTENT));
+        fileService.saveFile(Paths.get("b", "other.jar"), new ByteArrayInputStream(new byte[10]));
+
+        fileService.delete(Paths.get("a", "lib.jar"));
+        assertTrue(fileService.hasContent(SHA256));
+        fileService.saveFile(Paths.get("b", "lib.jar"), new ByteArrayInputStream(new byte[10]));
+        assertFalse(fileService.hasContent(SHA256));
+        assertEquals(1, blobCount());
+
+        fileService.delete(Paths.get("b"));
+        assertEquals(0, blobCount());
+    }
+
+    @Test
+    void testBlobStoreIsNotServed() throws IOException {
+        fileService.saveFile(Paths.get("a", "lib.jar"), new ByteArrayInputStream(CONTENT));
+        Path blob = Paths.get(BlobStore.BLOB_DIR, "sha256", SHA256.substring(0, 2), SHA256);
+
+        assertThrows(IllegalArgumentException.class, () -> fileService.loadFileAsResource(blob));
+        assertThrows(IllegalArgumentException.class, () -> fileService.saveFile(blob, new ByteArrayInputStream(new byte[1])));
+        assertThrows(IllegalArgumentException.class, () -> fileService.getFilesInfo(Paths.get("a", "..", BlobStore.BLOB_DIR)));
+        assertEquals(List.of("a", "b"), fileService.getFilesInfo(Paths.get("")).getDirectoryInfo().stream()
+                .map(FileEntry::getFilePath).sorted().toList());
+        try (Stream<FileEntry> matches = fileService.search(Paths.get(""),
+                new SearchQuery(null, null, null, null, null, null, null, Integer.MAX_VALUE, 100))) {
+            assertEquals(List.of("a", "a/lib.jar", "b"), matches.map(FileEntry::getFilePath).sorted().toList());
+        }
+        assertArrayEquals(CONTENT, Files.readAllBytes(tempDir.resolve("a/lib.jar")));
+    }
+
+    private long blobCount() throws IOException {
+        try (Stream<Path> blobs = Files.walk(tempDir.resolve(BlobStore.BLOB_DIR).resolve("sha256"))) {
+            return blobs.filter(Files::isRegularFile).count();
+        }
+    }
+
+    private static Object fileKey(Path file) throws IOException {
+        return Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+    }
+}
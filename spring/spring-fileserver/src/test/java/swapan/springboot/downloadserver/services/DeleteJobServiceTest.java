@@ -0,0 +1,120 @@
+package swapan.springboot.downloadserver.services;
+
+import swapan.springboot.downloadserver.config.FileServerConfigImpl;
+import swapan.springboot.downloadserver.dto.DeleteJobInfo;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.NoSuchElementException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeleteJobServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private FileServerConfigImpl config;
+    private DeleteJobServiceImpl deleteJobService;
+
+    @BeforeEach
+    void setUp() {
+        config = new FileServerConfigImpl();
+        config.setHome(tempDir.toString());
+        config.setDeleteParallelism(4);
+        deleteJobService = newDeleteJobService();
+    }
+
+    @AfterEach
+    void tearDown() {
+        deleteJobService.shutdown();
+    }
+
+    @Test
+    void testDeleteTree() throws Exception {
+        int files = DeleteJobServiceImpl.BATCH_SIZE * 2 + 10;
+        for (int d = 0; d < 3; d++) {
+            Path directory = Files.createDirectories(tempDir.resolve("tree/dir-" + d + "/sub"));
+            for (int i = 0; i < files; i++) {
+                Files.createFile(directory.resolve("file-" + i));
+            }
+        }
+
+        DeleteJobInfo job = deleteJobService.start(Paths.get("tree"));
+
+        assertFalse(Files.exists(tempDir.resolve("tree")));
+        job = awaitJob(job.getId());
+        assertEquals(DeleteJobInfo.State.COMPLETED, job.getState());
+        assertEquals(3L * files, job.getDeletedFiles());
+        assertEquals(7, job.getDeletedDirectories());
+        try (var entries = Files.list(tempDir.resolve(DeleteJobServiceImpl.TRASH_DIR))) {
+            assertEquals(0, entries.count());
+        }
+    }
+
+    @Test
+    void testPurgeTrashOnStart() throws Exception {
+        Path leftover = Files.createDirectories(tempDir.resolve(DeleteJobServiceImpl.TRASH_DIR).resolve("leftover/sub"));
+        Files.createFile(leftover.resolve("file"));
+
+        deleteJobService.shutdown();
+        deleteJobService = newDeleteJobService();
+        deleteJobService.purgeTrash();
+
+        for (int i = 0; i < 100 && Files.exists(tempDir.resolve(DeleteJobServiceImpl.TRASH_DIR).resolve("leftover")); i++) {
+            Thread.sleep(50);
+        }
+        assertFalse(Files.exists(tempDir.resolve(DeleteJobServiceImpl.TRASH_DIR).resolve("leftover")));
+    }
+
+    @Test
+    void testCancelledJobLeavesNothingInTrash() throws Exception {
+        Path directory = Files.createDirectories(tempDir.resolve("tree/sub"));
+        for (int i = 0; i < DeleteJobServiceImpl.BATCH_SIZE * 4; i++) {
+            Files.createFile(directory.resolve("file-" + i));
+        }
+
+        DeleteJobInfo job = deleteJobService.start(Paths.get("tree"));
+        deleteJobService.cancel(job.getId());
+        job = awaitJob(job.getId());
+
+        assertNotEquals(DeleteJobInfo.State.RUNNING, job.getState());
+        try (var entries = Files.list(tempDir.resolve(DeleteJobServiceImpl.TRASH_DIR))) {
+            assertEquals(0, entries.count());
+        }
+    }
+
+    @Test
+    void testInvalidPaths() {
+        assertThrows(NoSuchFileException.class, () -> deleteJobService.start(Paths.get("missing")));
+        assertThrows(IllegalArgumentException.class, () -> deleteJobService.start(Paths.get("")));
+        assertThrows(IllegalArgumentException.class, () -> deleteJobService.start(Paths.get("..")));
+        assertThrows(IllegalArgumentException.class, () -> deleteJobService.start(Paths.get(DeleteJobServiceImpl.TRASH_DIR)));
+        assertThrows(IllegalArgumentException.class, () -> deleteJobService.start(Paths.get("a", "..", DeleteJobServiceImpl.TRASH_DIR, "x")));
+        assertThrows(NoSuchElementException.class, () -> deleteJobService.getJob("unknown"));
+    }
+
+    private DeleteJobServiceImpl newDeleteJobService() {
+        BlobStore blobStore = new BlobStore(config);
+        return new DeleteJobServiceImpl(config, new FileServiceImpl(config, new ListingCache(config), new SidecarCompressor(config),
+                new HotFileCache(config), blobStore, new MetadataIndex(config)), blobStore);
+    }
+
+    private DeleteJobInfo awaitJob(String jobId) throws InterruptedException {
+        DeleteJobInfo job = deleteJobService.getJob(jobId);
+        for (int i = 0; i < 200 && job.getState() == DeleteJobInfo.State.RUNNING; i++) {
+            Thread.sleep(50);
+            job = deleteJobService.getJob(jobId);
+        }
+        return job;
+    }
+
+}
@@ -0,0 +1,76 @@
+package swapan.springboot.downloadserver.services;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileCopierTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testCopyTree() throws IOException {
+        byte[] content = new byte[(int) FileCopier.REFLINK_MIN_SIZE + 17];
+        new Random(1).nextBytes(content);
+        Path source = createTree(content);
+
+        // reflink falls back to transferTo where the file system cannot share extents
+        new FileCopier(false, true).copy(source, tempDir.resolve("copy"));
+
+        assertArrayEquals(content, Files.readAllBytes(tempDir.resolve("copy/sub/large.bin")));
+        assertEquals("small", Files.readString(tempDir.resolve("copy/small.txt")));
+        assertNotEquals(fileKey(source.resolve("small.txt")), fileKey(tempDir.resolve("copy/small.txt")));
+        assertEquals(Files.getLastModifiedTime(source.resolve("small.txt")),
+                Files.getLastModifiedTime(tempDir.resolve("copy/small.txt")));
+        assertEquals(Files.getLastModifiedTime(source.resolve("sub")),
+                Files.getLastModifiedTime(tempDir.resolve("copy/sub")));
+    }
+
+    @Test
+    void testCopyAsLinks() throws IOException {
+        Path source = createTree(new byte[10]);
+
+        new FileCopier(true, false).copy(source, tempDir.resolve("copy"));
+
+        assertEquals(fileKey(source.resolve("small.txt")), fileKey(tempDir.resolve("copy/small.txt")));
+        assertThrows(FileAlreadyExistsException.class, () -> new FileCopier(true, false).copy(source, tempDir.resolve("copy")));
+    }
+
+    @Test
+    void testMoveIsRename() throws IOException {
+        Path source = createTree(new byte[10]);
+        Object fileKey = fileKey(source.resolve("small.txt"));
+        FileCopier fileCopier = new FileCopier(false, false);
+
+        fileCopier.move(source, tempDir.resolve("moved"));
+
+        assertFalse(Files.exists(source));
+        assertEquals(fileKey, fileKey(tempDir.resolve("moved/small.txt")));
+        Files.createDirectory(source);
+        assertThrows(FileAlreadyExistsException.class, () -> fileCopier.move(source, tempDir.resolve("moved")));
+        assertTrue(Files.exists(tempDir.resolve("moved/small.txt")));
+    }
+
+    private Path createTree(byte[] content) throws IOException {
+        Path source = Files.createDirectories(tempDir.resolve("source/sub")).getParent();
+        Files.write(source.resolve("sub/large.bin"), content);
+        Files.writeString(source.resolve("small.txt"), "small");
+        Files.setLastModifiedTime(source.resolve("small.txt"), FileTime.fromMillis(1_000_000_000_000L));
+        Files.setLastModifiedTime(source.resolve("sub"), FileTime.fromMillis(1_000_000_000_000L));
+        return source;
+    }
+
+    private static Object fileKey(Path file) throws IOException {
+        return Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+    }
+}
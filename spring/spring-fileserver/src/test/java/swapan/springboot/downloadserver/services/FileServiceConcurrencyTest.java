@@ -0,0 +1,122 @@
+package swapan.springboot.downloadserver.services;
+
+import swapan.springboot.downloadserver.config.FileServerConfigImpl;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.Resource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileServiceConcurrencyTest {
+
+    private static final int WRITERS = 4;
+    private static final int READERS = 4;
+    private static final int WRITES_PER_WRITER = 50;
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Every version of the file is one byte value repeated, its length derived from that value, so a reader can
+     * tell a complete version from a mix of two or a truncated one.
+     */
+    @Test
+    void testReadersSeeOldOrNewContent() throws Exception {
+        FileServerConfigImpl config = new FileServerConfigImpl();
+        config.setHome(tempDir.toString());
+        config.setHotCacheMinHits(1);
+        FileServiceImpl fileService = new FileServiceImpl(config);
+        Path filePath = Paths.get("shared.bin");
+        fileService.saveFile(filePath, new ByteArrayInputStream(version(0)));
+
+        ExecutorService executor = Executors.newFixedThreadPool(WRITERS + READERS);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        try {
+            List<Future<?>> writers = new ArrayList<>();
+            for (int w = 0; w < WRITERS; w++) {
+                int writer = w;
+                writers.add(executor.submit(() -> {
+                    for (int i = 0; i < WRITES_PER_WRITER; i++) {
+                        byte[] content = version(1 + (writer * WRITES_PER_WRITER + i) % 255);
+                        fileService.saveFile(filePath, new ByteArrayInputStream(content), content.length);
+                    }
+                    return null;
+                }));
+            }
+            List<Future<Integer>> readers = new ArrayList<>();
+            for (int r = 0; r < READERS; r++) {
+                readers.add(executor.submit(() -> {
+                    int reads = 0;
+                    while (writing.get()) {
+                        assertCompleteVersion(read(fileService.loadFileAsResource(filePath)));
+                        reads++;
+                    }
+                    return reads;
+                }));
+            }
+            for (Future<?> writer : writers) {
+                writer.get(60, TimeUnit.SECONDS);
+            }
+            writing.set(false);
+            for (Future<Integer> reader : readers) {
+                assertTrue(reader.get(60, TimeUnit.SECONDS) > 0);
+            }
+        } finally {
+            writing.set(false);
+            executor.shutdownNow();
+            fileService.shutdown();
+        }
+
+        assertCompleteVersion(Files.readAllBytes(tempDir.resolve(filePath)));
+        try (Stream<Path> files = Files.list(tempDir)) {
+            // no temporary file is left behind
+            assertEquals(List.of(tempDir.resolve(filePath)), files.toList());
+        }
+    }
+
+    private static byte[] version(int value) {
+        byte[] content = new byte[64 * 1024 + value * 1024];
+        Arrays.fill(content, (byte) value);
+        return content;
+    }
+
+    private static void assertCompleteVersion(byte[] content) {
+        assertTrue(content.length > 0);
+        int value = content[0] & 0xff;
+        assertEquals(version(value).length, content.length, "length of version " + value);
+        for (byte b : content) {
+            assertEquals(content[0], b, "mixed versions");
+        }
+    }
+
+    private static byte[] read(Resource resource) throws IOException {
+        if (resource instanceof CachedFileResource cached) {
+            ByteBuffer buffer = cached.getContent();
+            byte[] content = new byte[buffer.remaining()];
+            buffer.get(content);
+            return content;
+        }
+        try (InputStream inputStream = resource.getInputStream()) {
+            return inputStream.readAllBytes();
+        }
+    }
+
+}
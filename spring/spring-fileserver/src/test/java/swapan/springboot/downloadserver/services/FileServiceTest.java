@@ -1,20 +1,40 @@
 package swapan.springboot.downloadserver.services;
 
-import swapan.springboot.downloadserver.config.FileServerConfig;
+import swapan.springboot.downloadserver.config.FileServerConfigImpl;
+import swapan.springboot.downloadserver.dto.FileEntry;
+import swapan.springboot.downloadserver.dto.FileInfo;
 import swapan.springboot.downloadserver.dto.FileList;
+import swapan.springboot.downloadserver.dto.RebalanceStats;
+import swapan.springboot.downloadserver.dto.SearchQuery;
 import swapan.springboot.downloadserver.services.FileServiceImpl;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
 import org.junit.jupiter.api.io.TempDir;
 import org.springframework.core.io.Resource;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -60,6 +80,33 @@ class FileServiceTest {
         assertTrue(resource.exists());
     }
 
+    @Test
+    void testSaveFileLargerThanHeap() throws IOException {
+        long length = Runtime.getRuntime().maxMemory() * 2;
+        fileService.saveFile(testFile, new GeneratedInputStream(length));
+
+        Path savedFile = tempDir.resolve(testFile);
+        assertEquals(length, Files.size(savedFile));
+        try (FileChannel channel = FileChannel.open(savedFile)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1);
+            for (long position : new long[] { 0, length / 3, length / 2, length - 1 }) {
+                buffer.clear();
+                channel.read(buffer, position);
+                assertEquals(GeneratedInputStream.byteAt(position), buffer.get(0));
+            }
+        }
+    }
+
+    @Test
+    void testSaveFileWithSizeHint() throws IOException {
+        fileService.saveFile(testFile, new GeneratedInputStream(1000), 1000);
+        assertEquals(1000, Files.size(tempDir.resolve(testFile)));
+
+        // wrong hint must not leave trailing bytes behind
+        fileService.saveFile(testFile, new GeneratedInputStream(10), 1000);
+        assertEquals(10, Files.size(tempDir.resolve(testFile)));
+    }
+
     @Test
     void testGetFilesInfo() throws IOException {
         // Create test directory and file
@@ -78,6 +125,93 @@ class FileServiceTest {
         assertNotNull(fileList);
         assertEquals(1, fileList.getFileInfo().size());
         assertEquals("test.txt", fileList.getFileInfo().get(0).getFilePath());
+        assertEquals(content.length(), fileList.getFileInfo().get(0).getSize());
+        assertEquals(Files.getLastModifiedTime(tempDir.resolve(testDir).resolve("test.txt")).toInstant(),
+                fileList.getFileInfo().get(0).getLastModified());
+        assertNull(fileList.getFileInfo().get(0).getPermissions());
+        assertFalse(fileList.getLastModified().isBefore(fileList.getFileInfo().get(0).getLastModified()));
+    }
+
+    @Test
+    @DisabledOnOs(OS.WINDOWS)
+    void testGetFilesInfoWithPermissions() throws IOException {
+        TestFileServerConfig config = new TestFileServerConfig(tempDir.toString());
+        config.setListPermissions(true);
+        fileService = new FileServiceImpl(config);
+        fileService.createDirectory(testDir.resolve("subdir"));
+        Files.setPosixFilePermissions(tempDir.resolve(testDir).resolve("subdir"), PosixFilePermissions.fromString("rwxr-x---"));
+
+        FileList fileList = fileService.getFilesInfo(testDir);
+        assertEquals("rwxr-x---", fileList.getDirectoryInfo().get(0).getPermissions());
+        assertNotNull(fileList.getDirectoryInfo().get(0).getLastModified());
+    }
+
+    @Test
+    void testGetFilesInfoOfFile() throws IOException {
+        fileService.saveFile(testFile, new GeneratedInputStream(1));
+        assertTrue(fileService.getFilesInfo(testFile).getFileInfo().isEmpty());
+    }
+
+    @Test
+    void testGetFilesInfoPages() throws IOException {
+        fileService.createDirectory(testDir);
+        for (String name : new String[] { "c.txt", "a.txt", "e.txt", "b.txt" }) {
+            fileService.saveFile(testDir.resolve(name), new GeneratedInputStream(1));
+        }
+        fileService.createDirectory(testDir.resolve("d"));
+
+        FileList first = fileService.getFilesInfo(testDir, null, 2);
+        assertEquals(List.of("a.txt", "b.txt"), first.getFileInfo().stream().map(FileInfo::getFilePath).toList());
+        assertNotNull(first.getNextCursor());
+
+        FileList second = fileService.getFilesInfo(testDir, first.getNextCursor(), 2);
+        assertEquals(List.of("c.txt"), second.getFileInfo().stream().map(FileInfo::getFilePath).toList());
+        assertEquals("d", second.getDirectoryInfo().get(0).getFilePath());
+        assertNotNull(second.getNextCursor());
+
+        FileList last = fileService.getFilesInfo(testDir, second.getNextCursor(), 2);
+        assertEquals(List.of("e.txt"), last.getFileInfo().stream().map(FileInfo::getFilePath).toList());
+        assertNull(last.getNextCursor());
+    }
+
+    @Test
+    void testStreamFilesInfo() throws IOException {
+        fileService.createDirectory(testDir.resolve("subdir"));
+        fileService.saveFile(testDir.resolve("test.txt"), new GeneratedInputStream(1));
+
+        try (Stream<FileEntry> entries = fileService.streamFilesInfo(testDir)) {
+            Map<String, String> types = entries.collect(Collectors.toMap(FileEntry::getFilePath, FileEntry::getType));
+            assertEquals(Map.of("subdir", "directory", "test.txt", "file"), types);
+        }
+    }
+
+    @Test
+    void testSearch() throws IOException {
+        for (int d = 0; d < 5; d++) {
+            Path directory = testDir.resolve("module-" + d + "/target");
+            fileService.createDirectory(directory);
+            fileService.saveFile(directory.resolve("module-" + d + ".jar"), new GeneratedInputStream(d * 100));
+            fileService.saveFile(directory.resolve("module-" + d + ".txt"), new GeneratedInputStream(1));
+        }
+        Files.setLastModifiedTime(tempDir.resolve(testDir).resolve("module-0/target/module-0.jar"),
+                FileTime.from(Instant.now().minus(2, ChronoUnit.DAYS)));
+
+        assertEquals(Set.of("module-1/target/module-1.jar", "module-2/target/module-2.jar", "module-3/target/module-3.jar",
+                        "module-4/target/module-4.jar"),
+                search(new SearchQuery("*.jar", null, null, null, null, Instant.now().minus(1, ChronoUnit.DAYS), null, Integer.MAX_VALUE, 100)));
+        assertEquals(Set.of("module-2/target/module-2.jar", "module-3/target/module-3.jar"),
+                search(new SearchQuery(null, ".*\\.jar", "file", 200L, 300L, null, null, Integer.MAX_VALUE, 100)));
+        assertEquals(Set.of("module-0", "module-1", "module-2", "module-3", "module-4"),
+                search(new SearchQuery(null, null, null, null, null, null, null, 1, 100)));
+        assertEquals(3, search(new SearchQuery(null, null, "file", null, null, null, null, Integer.MAX_VALUE, 3)).size());
+        assertThrows(IllegalArgumentException.class,
+                () -> fileService.search(testDir, new SearchQuery(null, "[", null, null, null, null, null, 1, 100)));
+    }
+
+    private Set<String> search(SearchQuery query) throws IOException {
+        try (Stream<FileEntry> entries = fileService.search(testDir, query)) {
+            return entries.map(FileEntry::getFilePath).collect(Collectors.toSet());
+        }
     }
 
     @Test
@@ -99,7 +233,211 @@ class FileServiceTest {
         assertFalse(Files.exists(tempDir.resolve(testFile)));
     }
 
-    private static class TestFileServerConfig implements FileServerConfig {
+    @Test
+    void testMoveAndCopy() throws IOException {
+        Files.createDirectories(tempDir.resolve("a/sub"));
+        Files.writeString(tempDir.resolve("a/sub/test.txt"), "Test content");
+
+        fileService.copy(Paths.get("a"), Paths.get("b"));
+        fileService.move(Paths.get("a"), Paths.get("c"));
+
+        assertFalse(Files.exists(tempDir.resolve("a")));
+        assertEquals("Test content", Files.readString(tempDir.resolve("b/sub/test.txt")));
+        assertEquals("Test content", Files.readString(tempDir.resolve("c/sub/test.txt")));
+        assertThrows(IllegalArgumentException.class, () -> fileService.copy(Paths.get("b"), Paths.get("b/sub/b")));
+        assertThrows(FileAlreadyExistsException.class, () -> fileService.move(Paths.get("b"), Paths.get("c")));
+    }
+
+    @Test
+    void testSidecarsAreRemovedWithTheirFile() throws IOException {
+        fileService.saveFile(Paths.get("report.json"), new ByteArrayInputStream("{}".getBytes()));
+        Files.write(tempDir.resolve("report.json.gz"), new byte[] { 1 });
+        Files.write(tempDir.resolve("report.json.br"), new byte[] { 2 });
+
+        // replaced content no longer matches
+        fileService.saveFile(Paths.get("report.json"), new ByteArrayInputStream("[]".getBytes()));
+        assertFalse(Files.exists(tempDir.resolve("report.json.gz")));
+        assertFalse(Files.exists(tempDir.resolve("report.json.br")));
+
+        Files.write(tempDir.resolve("report.json.gz"), new byte[] { 1 });
+        fileService.move(Paths.get("report.json"), Paths.get("moved.json"));
+        assertFalse(Files.exists(tempDir.resolve("report.json.gz")));
+
+        Files.write(tempDir.resolve("moved.json.zst"), new byte[] { 3 });
+        fileService.delete(Paths.get("moved.json"));
+        assertFalse(Files.exists(tempDir.resolve("moved.json.zst")));
+    }
+
+    @Test
+    void testServerStateIsNotServed() throws IOException {
+        Files.createDirectories(tempDir.resolve(MetadataIndex.INDEX_DIR));
+        Files.write(tempDir.resolve(MetadataIndex.INDEX_DIR).resolve("metadata.log"), new byte[1]);
+        Files.createDirectories(tempDir.resolve("a"));
+        Files.write(tempDir.resolve("a/.upload.txt.0f8c.part"), new byte[1]);
+        Files.write(tempDir.resolve("a/visible.txt"), new byte[1]);
+
+        assertEquals(List.of("a"), fileService.getFilesInfo(Paths.get("")).getDirectoryInfo().stream()
+                .map(FileEntry::getFilePath).toList());
+        assertEquals(List.of("visible.txt"), fileService.getFilesInfo(Paths.get("a"), null, 10).getFileInfo().stream()
+                .map(FileEntry::getFilePath).toList());
+        try (Stream<FileEntry> entries = fileService.streamFilesInfo(Paths.get("a"))) {
+            assertEquals(List.of("visible.txt"), entries.map(FileEntry::getFilePath).toList());
+        }
+        assertThrows(IllegalArgumentException.class,
+                () -> fileService.loadFileAsResource(Paths.get(MetadataIndex.INDEX_DIR, "metadata.log")));
+        assertThrows(IllegalArgumentException.class, () -> fileService.saveFile(Paths.get(MetadataIndex.INDEX_DIR, "metadata.log"),
+                new ByteArrayInputStream(new byte[1])));
+        assertThrows(IllegalArgumentException.class, () -> fileService.delete(Paths.get("a", ".upload.txt.0f8c.part")));
+    }
+
+    @Test
+    void testPathsOutsideRootAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> fileService.move(Paths.get("a"), Paths.get("../../etc")));
+        assertThrows(IllegalArgumentException.class, () -> fileService.copy(Paths.get("a"), tempDir.resolve("b").toAbsolutePath()));
+        assertThrows(IllegalArgumentException.class, () -> fileService.copy(Paths.get("../a"), Paths.get("b")));
+        assertThrows(IllegalArgumentException.class, () -> fileService.delete(Paths.get("a/../../x")));
+        assertThrows(IllegalArgumentException.class,
+                () -> fileService.saveFile(Paths.get("../x"), new ByteArrayInputStream(new byte[1])));
+    }
+
+    @Test
+    void testStripedRoots() throws IOException {
+        Path first = Files.createDirectory(tempDir.resolve("first"));
+        Path second = Files.createDirectory(tempDir.resolve("second"));
+        FileServiceImpl stripedService = new FileServiceImpl(new TestFileServerConfig(first + "," + second));
+        stripedService.createDirectory(testDir);
+        for (int i = 0; i < 20; i++) {
+            stripedService.saveFile(testDir.resolve("file-" + i + ".txt"), new GeneratedInputStream(i));
+        }
+
+        // both roots hold part of the directory, listings show it as one
+        try (Stream<Path> firstFiles = Files.list(first.resolve(testDir)); Stream<Path> secondFiles = Files.list(second.resolve(testDir))) {
+            long inFirst = firstFiles.count();
+            long inSecond = secondFiles.count();
+            assertTrue(inFirst > 0 && inSecond > 0);
+            assertEquals(20, inFirst + inSecond);
+        }
+        assertEquals(1, stripedService.getFilesInfo(Paths.get("")).getDirectoryInfo().size());
+        assertEquals(20, stripedService.getFilesInfo(testDir).getFileInfo().size());
+        try (Stream<FileEntry> entries = stripedService.streamFilesInfo(Paths.get(""))) {
+            assertEquals(List.of("testdir"), entries.map(FileEntry::getFilePath).toList());
+        }
+        FileList page = stripedService.getFilesInfo(testDir, null, 15);
+        assertEquals(15, page.getFileInfo().size());
+        page = stripedService.getFilesInfo(testDir, page.getNextCursor(), 15);
+        assertEquals(5, page.getFileInfo().size());
+        assertNull(page.getNextCursor());
+        assertEquals(11, stripedService.loadFileAsResource(testDir.resolve("file-11.txt")).contentLength());
+
+        stripedService.move(testDir, Paths.get("moved"));
+        assertEquals(20, stripedService.getFilesInfo(Paths.get("moved")).getFileInfo().size());
+        stripedService.delete(Paths.get("moved"));
+        assertFalse(Files.exists(first.resolve("moved")));
+        assertFalse(Files.exists(second.resolve("moved")));
+        stripedService.shutdown();
+    }
+
+    @Test
+    void testDeleteRemovesCopiesInEveryRoot() throws IOException {
+        Path first = Files.createDirectory(tempDir.resolve("first"));
+        Path second = Files.createDirectory(tempDir.resolve("second"));
+        FileServiceImpl stripedService = new FileServiceImpl(new TestFileServerConfig(first + "," + second));
+        // file caught in the middle of rebalance exists in both roots
+        Files.writeString(first.resolve(testFile), "old");
+        Files.writeString(second.resolve(testFile), "new");
+
+        stripedService.delete(testFile);
+
+        assertFalse(Files.exists(first.resolve(testFile)));
+        assertFalse(Files.exists(second.resolve(testFile)));
+        assertThrows(IOException.class, () -> stripedService.delete(testFile));
+        stripedService.shutdown();
+    }
+
+    @Test
+    void testSweepRemovesStaleTempFiles() throws IOException {
+        fileService.createDirectory(testDir);
+        Path stale = Files.writeString(tempDir.resolve(testDir).resolve(".a.txt.1234.part"), "partial");
+        Files.setLastModifiedTime(stale, FileTime.from(Instant.now().minus(1, ChronoUnit.HOURS)));
+        Path running = fileService.createTempFile(testDir.resolve("b.txt"));
+        Path userFile = Files.writeString(tempDir.resolve(testDir).resolve("c.part"), "data");
+        Files.setLastModifiedTime(userFile, FileTime.from(Instant.now().minus(1, ChronoUnit.HOURS)));
+
+        fileService.sweepTempFiles();
+
+        assertFalse(Files.exists(stale));
+        assertTrue(Files.exists(running));
+        assertTrue(Files.exists(userFile));
+    }
+
+    @Test
+    void testRebalanceAfterRootAdded() throws IOException {
+        Path first = Files.createDirectory(tempDir.resolve("first"));
+        Path second = Files.createDirectory(tempDir.resolve("second"));
+        FileServiceImpl singleService = new FileServiceImpl(new TestFileServerConfig(first.toString()));
+        singleService.createDirectory(testDir);
+        for (int i = 0; i < 20; i++) {
+            singleService.saveFile(testDir.resolve("file-" + i + ".txt"), new GeneratedInputStream(i));
+        }
+        singleService.shutdown();
+
+        FileServiceImpl stripedService = new FileServiceImpl(new TestFileServerConfig(first + "," + second));
+        // files are found before they are moved
+        assertEquals(20, stripedService.getFilesInfo(testDir).getFileInfo().size());
+        stripedService.rebalance();
+
+        RebalanceStats stats = stripedService.getRebalanceStats();
+        // files moved into a root walked later are scanned there again
+        assertEquals(20 + stats.getMovedFiles(), stats.getScannedFiles());
+        assertTrue(stats.getMovedFiles() > 0 && stats.getMovedFiles() < 20);
+        for (int i = 0; i < 20; i++) {
+            Path filePath = testDir.resolve("file-" + i + ".txt");
+            Path resolvedFilePath = stripedService.resolvePath(filePath);
+            assertTrue(resolvedFilePath.startsWith(new StorageRoots(first + "," + second).placement(filePath)));
+            assertEquals(i, Files.size(resolvedFilePath));
+        }
+        assertEquals(20, stripedService.getFilesInfo(testDir).getFileInfo().size());
+        stripedService.shutdown();
+    }
+
+    /**
+     * {@link InputStream} of given length with deterministic content, nothing is held in memory.
+     * {@link InputStream#available()} always returns 0 like a slow network stream.
+     */
+    private static class GeneratedInputStream extends InputStream {
+        private final long length;
+        private long position;
+
+        GeneratedInputStream(long length) {
+            this.length = length;
+        }
+
+        static byte byteAt(long position) {
+            return (byte) (position % 251);
+        }
+
+        @Override
+        public int read() {
+            if (position >= length) {
+                return -1;
+            }
+            return byteAt(position++) & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (position >= length) {
+                return -1;
+            }
+            int count = (int) Math.min(len, length - position);
+            for (int i = 0; i < count; i++) {
+                b[off + i] = byteAt(position++);
+            }
+            return count;
+        }
+    }
+
+    private static class TestFileServerConfig extends FileServerConfigImpl {
         private final String home;
 
         public TestFileServerConfig(String home) {
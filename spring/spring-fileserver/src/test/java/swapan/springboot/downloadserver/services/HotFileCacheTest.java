@@ -0,0 +1,134 @@
+package swapan.springboot.downloadserver.services;
+
+import swapan.springboot.downloadserver.config.FileServerConfigImpl;
+import swapan.springboot.downloadserver.dto.HotCacheStats;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HotFileCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    private HotFileCache hotFileCache;
+    private FileServiceImpl fileService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        FileServerConfigImpl config = new FileServerConfigImpl();
+        config.setHome(tempDir.toString());
+        config.setHotCacheSize(250);
+        config.setHotCacheMaxEntrySize(100);
+        config.setHotCacheMinHits(2);
+        hotFileCache = new HotFileCache(config);
+        fileService = new FileServiceImpl(config, new ListingCache(config), new SidecarCompressor(config), hotFileCache,
+                new BlobStore(config), new MetadataIndex(config));
+        for (String name : new String[] { "a", "b", "c" }) {
+            Files.write(tempDir.resolve(name), content(name.charAt(0), 100));
+        }
+        Files.write(tempDir.resolve("large"), content('l', 101));
+    }
+
+    @AfterEach
+    void tearDown() {
+        fileService.shutdown();
+    }
+
+    @Test
+    void testFileIsCachedOnSecondRequest() throws IOException {
+        assertFalse(fileService.loadFileAsResource(Paths.get("a")) instanceof CachedFileResource);
+        assertTrue(fileService.loadFileAsResource(Paths.get("a")) instanceof CachedFileResource);
+        CachedFileResource cached = (CachedFileResource) fileService.loadFileAsResource(Paths.get("a"));
+
+        assertEquals(ByteBuffer.wrap(content('a', 100)), cached.getContent());
+        HotCacheStats stats = hotFileCache.getStats();
+        assertEquals(1, stats.getHits());
+        assertEquals(2, stats.getMisses());
+        assertEquals(1, stats.getSize());
+        assertEquals(100, stats.getBytes());
+        assertEquals(100, stats.getBytesSaved());
+    }
+
+    @Test
+    void testLargeFileIsNotCached() throws IOException {
+        for (int i = 0; i < 3; i++) {
+            assertFalse(fileService.loadFileAsResource(Paths.get("large")) instanceof CachedFileResource);
+        }
+        assertEquals(0, hotFileCache.getStats().getSize());
+    }
+
+    @Test
+    void testWriteThroughServiceInvalidates() throws IOException {
+        hotFileCache.get(tempDir.resolve("a"));
+        hotFileCache.get(tempDir.resolve("a"));
+        fileService.saveFile(Paths.get("a"), new ByteArrayInputStream(content('x', 10)));
+
+        assertEquals(0, hotFileCache.getStats().getSize());
+        assertNull(hotFileCache.get(tempDir.resolve("a")));
+    }
+
+    @Test
+    void testExternalChangeIsNotServed() throws IOException {
+        Path a = tempDir.resolve("a");
+        hotFileCache.get(a);
+        hotFileCache.get(a);
+        Files.write(a, content('x', 100));
+        Files.setLastModifiedTime(a, FileTime.fromMillis(Files.getLastModifiedTime(a).toMillis() + 1000));
+
+        assertNull(hotFileCache.get(a));
+        assertEquals(0, hotFileCache.getStats().getSize());
+        assertEquals(ByteBuffer.wrap(content('x', 100)), hotFileCache.get(a).getContent());
+    }
+
+    @Test
+    void testLeastRecentlyUsedIsEvicted() {
+        for (String name : new String[] { "a", "a", "b", "b", "a", "c", "c" }) {
+            hotFileCache.get(tempDir.resolve(name));
+        }
+
+        HotCacheStats stats = hotFileCache.getStats();
+        assertEquals(1, stats.getEvictions());
+        assertEquals(2, stats.getSize());
+        assertEquals(200, stats.getBytes());
+        assertNotNull(hotFileCache.get(tempDir.resolve("a")));
+        assertEquals(2, hotFileCache.getStats().getHits());
+    }
+
+    @Test
+    void testStatsAreBoundAsMeters() {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        hotFileCache.bindTo(registry);
+        for (String name : new String[] { "a", "a", "b", "b", "a", "c", "c" }) {
+            hotFileCache.get(tempDir.resolve(name));
+        }
+
+        assertEquals(1, registry.get("fileserver.hotcache.hits").functionCounter().count());
+        assertEquals(6, registry.get("fileserver.hotcache.misses").functionCounter().count());
+        assertEquals(1, registry.get("fileserver.hotcache.evictions").functionCounter().count());
+        assertEquals(100, registry.get("fileserver.hotcache.bytes.saved").functionCounter().count());
+        assertEquals(2, registry.get("fileserver.hotcache.entries").gauge().value());
+        assertEquals(200, registry.get("fileserver.hotcache.size").gauge().value());
+    }
+
+    private static byte[] content(char c, int length) {
+        byte[] bytes = new byte[length];
+        Arrays.fill(bytes, (byte) c);
+        return bytes;
+    }
+}
@@ -0,0 +1,134 @@
+package swapan.springboot.downloadserver.services;
+
+import swapan.springboot.downloadserver.config.FileServerConfigImpl;
+import swapan.springboot.downloadserver.dto.CacheStats;
+import swapan.springboot.downloadserver.dto.FileList;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ListingCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    private ListingCache listingCache;
+    private FileServiceImpl fileService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        FileServerConfigImpl config = new FileServerConfigImpl();
+        config.setHome(tempDir.toString());
+        config.setListCacheSize(2);
+        listingCache = new ListingCache(config);
+        fileService = new FileServiceImpl(config, listingCache, new SidecarCompressor(config), new HotFileCache(config),
+                new BlobStore(config), new MetadataIndex(config));
+        for (String dir : new String[] { "a", "b", "c" }) {
+            fileService.createDirectory(Paths.get(dir));
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        listingCache.close();
+    }
+
+    @Test
+    void testRepeatedListingIsCached() throws IOException {
+        FileList first = fileService.getFilesInfo(Paths.get("a"));
+        FileList second = fileService.getFilesInfo(Paths.get("a"));
+
+        assertSame(first, second);
+        CacheStats stats = listingCache.getStats();
+        assertEquals(1, stats.getHits());
+        assertEquals(1, stats.getMisses());
+    }
+
+    @Test
+    void testLeastRecentlyUsedIsEvicted() throws IOException {
+        fileService.getFilesInfo(Paths.get("a"));
+        fileService.getFilesInfo(Paths.get("b"));
+        fileService.getFilesInfo(Paths.get("a"));
+        fileService.getFilesInfo(Paths.get("c"));
+
+        assertEquals(1, listingCache.getStats().getEvictions());
+        assertEquals(2, listingCache.getStats().getSize());
+        fileService.getFilesInfo(Paths.get("a"));
+        assertEquals(2, listingCache.getStats().getHits());
+        fileService.getFilesInfo(Paths.get("b"));
+        assertEquals(4, listingCache.getStats().getMisses());
+    }
+
+    @Test
+    void testWriteThroughServiceInvalidates() throws IOException {
+        fileService.getFilesInfo(Paths.get("a"));
+        fileService.saveFile(Paths.get("a", "test.txt"), new ByteArrayInputStream(new byte[10]));
+
+        FileList fileList = fileService.getFilesInfo(Paths.get("a"));
+        assertEquals(1, fileList.getFileInfo().size());
+        assertEquals(0, listingCache.getStats().getHits());
+    }
+
+    @Test
+    void testExternalChangeInvalidates() throws Exception {
+        assertTrue(fileService.getFilesInfo(Paths.get("a")).getFileInfo().isEmpty());
+        Files.writeString(tempDir.resolve("a").resolve("external.txt"), "external");
+
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (fileService.getFilesInfo(Paths.get("a")).getFileInfo().isEmpty()) {
+            assertTrue(System.currentTimeMillis() < deadline, "listing was not invalidated");
+            Thread.sleep(20);
+        }
+    }
+
+    @Test
+    void testSlowLoadDoesNotBlockOtherDirectories() throws Exception {
+        Path a = tempDir.resolve("a");
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<FileList> slow = CompletableFuture.supplyAsync(() -> {
+            try {
+                return listingCache.get(a, () -> {
+                    loading.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        throw new InterruptedIOException();
+                    }
+                    return new FileList("a");
+                });
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+
+        FileList b = CompletableFuture.supplyAsync(() -> {
+            try {
+                return fileService.getFilesInfo(Paths.get("b"));
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }).get(5, TimeUnit.SECONDS);
+        listingCache.invalidate(a);
+
+        assertNotNull(b);
+        release.countDown();
+        assertNotNull(slow.get(5, TimeUnit.SECONDS));
+        assertEquals(1, listingCache.getStats().getSize());
+    }
+}
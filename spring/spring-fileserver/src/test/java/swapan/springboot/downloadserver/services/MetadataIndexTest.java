@@ -0,0 +1,208 @@
+package swapan.springboot.downloadserver.services;
+
+import swapan.springboot.downloadserver.config.FileServerConfigImpl;
+import swapan.springboot.downloadserver.dto.DiskUsage;
+import swapan.springboot.downloadserver.dto.FileEntry;
+import swapan.springboot.downloadserver.dto.FileInfo;
+import swapan.springboot.downloadserver.dto.FileList;
+import swapan.springboot.downloadserver.dto.SearchQuery;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetadataIndexTest {
+
+    @TempDir
+    Path tempDir;
+
+    private FileServerConfigImpl config;
+    private MetadataIndex metadataIndex;
+    private FileServiceImpl fileService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        config = new FileServerConfigImpl();
+        config.setHome(tempDir.toString());
+        config.setMetadataIndex(true);
+        // reconciliation is run by the tests
+        config.setMetadataIndexReconcileInterval(Duration.ZERO);
+        Files.createDirectories(tempDir.resolve("a"));
+        Files.write(tempDir.resolve("a").resolve("existing.txt"), new byte[5]);
+        metadataIndex = start();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        metadataIndex.stop();
+    }
+
+    private MetadataIndex start() throws IOException {
+        MetadataIndex index = new MetadataIndex(config);
+        index.start();
+        fileService = new FileServiceImpl(config, new ListingCache(config), new SidecarCompressor(config),
+                new HotFileCache(config), new BlobStore(config), index);
+        return index;
+    }
+
+    @Test
+    void testFirstStartReconciles() throws IOException {
+        metadataIndex.reconcile();
+
+        assertTrue(metadataIndex.isReady());
+        FileList fileList = fileService.getFilesInfo(Paths.get("a"));
+        assertEquals(1, fileList.getFileInfo().size());
+        assertEquals("existing.txt", fileList.getFileInfo().get(0).getFilePath());
+        assertEquals(5L, fileList.getFileInfo().get(0).getSize());
+        // server state is not listed
+        assertEquals(List.of("a"), fileService.getFilesInfo(Paths.get("")).getDirectoryInfo().stream()
+                .map(FileEntry::getFilePath).toList());
+    }
+
+    @Test
+    void testWritesAreIndexed() throws IOException {
+        metadataIndex.reconcile();
+        byte[] content = "hello".getBytes();
+        fileService.createDirectory(Paths.get("a", "b"));
+        fileService.saveFile(Paths.get("a", "b", "new.txt"), new ByteArrayInputStream(content));
+        fileService.createDirectory(Paths.get("c", "d"));
+
+        FileList fileList = fileService.getFilesInfo(Paths.get("a", "b"));
+        FileInfo fileInfo = fileList.getFileInfo().get(0);
+        assertEquals("new.txt", fileInfo.getFilePath());
+        assertEquals(HexFormat.of().formatHex(BlobStore.newDigest().digest(content)), fileInfo.getSha256());
+        // index keeps milliseconds
+        assertEquals(Files.getLastModifiedTime(tempDir.resolve("a/b/new.txt")).toMillis(), fileInfo.getLastModified().toEpochMilli());
+        assertEquals(List.of("d"), fileService.getFilesInfo(Paths.get("c")).getDirectoryInfo().stream()
+                .map(FileEntry::getFilePath).toList());
+
+        fileService.move(Paths.get("a", "b"), Paths.get("c", "b"));
+        assertThrows(NoSuchFileException.class, () -> fileService.getFilesInfo(Paths.get("a", "b")));
+        assertEquals(1, fileService.getFilesInfo(Paths.get("c", "b")).getFileInfo().size());
+
+        fileService.delete(Paths.get("c", "b", "new.txt"));
+        assertTrue(fileService.getFilesInfo(Paths.get("c", "b")).getFileInfo().isEmpty());
+    }
+
+    @Test
+    void testPagedListing() throws IOException {
+        for (int i = 0; i < 5; i++) {
+            fileService.saveFile(Paths.get("a", "f" + i), new ByteArrayInputStream(new byte[i]));
+        }
+        fileService.createDirectory(Paths.get("a", "f2d", "sub"));
+        metadataIndex.reconcile();
+
+        FileList first = fileService.getFilesInfo(Paths.get("a"), null, 3);
+        assertEquals(List.of("existing.txt", "f0", "f1"), first.getFileInfo().stream().map(FileEntry::getFilePath).toList());
+        assertNotNull(first.getNextCursor());
+        FileList second = fileService.getFilesInfo(Paths.get("a"), first.getNextCursor(), 3);
+        assertEquals(List.of("f2", "f3"), second.getFileInfo().stream().map(FileEntry::getFilePath).toList());
+        assertEquals(List.of("f2d"), second.getDirectoryInfo().stream().map(FileEntry::getFilePath).toList());
+        FileList third = fileService.getFilesInfo(Paths.get("a"), second.getNextCursor(), 3);
+        assertEquals(List.of("f4"), third.getFileInfo().stream().map(FileEntry::getFilePath).toList());
+        assertNull(third.getNextCursor());
+    }
+
+    @Test
+    void testSearch() throws IOException {
+        fileService.createDirectory(Paths.get("a", "b"));
+        fileService.saveFile(Paths.get("a", "b", "deep.txt"), new ByteArrayInputStream(new byte[100]));
+        fileService.saveFile(Paths.get("a", "b", "deep.bin"), new ByteArrayInputStream(new byte[100]));
+        metadataIndex.reconcile();
+
+        try (Stream<FileEntry> matches = fileService.search(Paths.get("a"),
+                new SearchQuery("*.txt", null, null, null, null, null, null, Integer.MAX_VALUE, 10))) {
+            assertEquals(List.of("b/deep.txt", "existing.txt"), matches.map(FileEntry::getFilePath).toList());
+        }
+        try (Stream<FileEntry> matches = fileService.search(Paths.get("a"),
+                new SearchQuery(null, null, "file", 50L, null, null, null, Integer.MAX_VALUE, 10))) {
+            assertEquals(List.of("b/deep.bin", "b/deep.txt"), matches.map(FileEntry::getFilePath).toList());
+        }
+        try (Stream<FileEntry> matches = fileService.search(Paths.get("a"),
+                new SearchQuery(null, null, null, null, null, null, null, 1, 10))) {
+            assertEquals(List.of("b", "existing.txt"), matches.map(FileEntry::getFilePath).toList());
+        }
+    }
+
+    @Test
+    void testDiskUsage() throws IOException {
+        metadataIndex.reconcile();
+        fileService.createDirectory(Paths.get("a", "b"));
+        fileService.saveFile(Paths.get("a", "b", "one"), new ByteArrayInputStream(new byte[10]));
+        fileService.saveFile(Paths.get("a", "b", "two"), new ByteArrayInputStream(new byte[20]));
+
+        DiskUsage usage = fileService.getDiskUsage(Paths.get("a"));
+        assertEquals(35, usage.getSize());
+        assertEquals(3, usage.getFiles());
+        assertEquals(1, usage.getDirectories());
+
+        fileService.saveFile(Paths.get("a", "b", "two"), new ByteArrayInputStream(new byte[2]));
+        fileService.delete(Paths.get("a", "existing.txt"));
+        usage = fileService.getDiskUsage(Paths.get(""));
+        assertEquals(12, usage.getSize());
+        assertEquals(2, usage.getFiles());
+        assertEquals(2, usage.getDirectories());
+    }
+
+    @Test
+    void testReconcileFindsExternalChanges() throws IOException {
+        metadataIndex.reconcile();
+        Files.write(tempDir.resolve("a").resolve("external.txt"), new byte[7]);
+        Files.delete(tempDir.resolve("a").resolve("existing.txt"));
+
+        // not visible until reconciled
+        assertEquals(5, fileService.getDiskUsage(Paths.get("a")).getSize());
+        metadataIndex.reconcile();
+
+        FileList fileList = fileService.getFilesInfo(Paths.get("a"));
+        assertEquals(List.of("external.txt"), fileList.getFileInfo().stream().map(FileEntry::getFilePath).toList());
+        assertEquals(7, fileService.getDiskUsage(Paths.get("a")).getSize());
+    }
+
+    @Test
+    void testIndexIsReloaded() throws IOException {
+        metadataIndex.reconcile();
+        fileService.saveFile(Paths.get("a", "logged.txt"), new ByteArrayInputStream(new byte[3]));
+        String sha256 = fileService.getFilesInfo(Paths.get("a")).getFileInfo().get(1).getSha256();
+        metadataIndex.stop();
+
+        // snapshot of reconciliation and log of the write
+        metadataIndex = start();
+        assertTrue(metadataIndex.isReady());
+        FileList fileList = fileService.getFilesInfo(Paths.get("a"));
+        assertEquals(List.of("existing.txt", "logged.txt"), fileList.getFileInfo().stream().map(FileEntry::getFilePath).toList());
+        assertEquals(sha256, fileList.getFileInfo().get(1).getSha256());
+        assertEquals(8, fileService.getDiskUsage(Paths.get("")).getSize());
+
+        metadataIndex.compact();
+        metadataIndex.stop();
+        metadataIndex = start();
+        assertEquals(8, fileService.getDiskUsage(Paths.get("")).getSize());
+        assertEquals(sha256, fileService.getFilesInfo(Paths.get("a")).getFileInfo().get(1).getSha256());
+    }
+
+    @Test
+    void testServerStateIsNotIndexed() {
+        assertTrue(MetadataIndex.isIndexed("a/b.txt"));
+        assertTrue(MetadataIndex.isIndexed(".hidden"));
+        assertFalse(MetadataIndex.isIndexed(".blobs/sha256/ab"));
+        assertFalse(MetadataIndex.isIndexed(".trash"));
+        assertFalse(MetadataIndex.isIndexed(".index/metadata.log"));
+        assertFalse(MetadataIndex.isIndexed("a/.b.txt.0f8c.part"));
+    }
+
+}
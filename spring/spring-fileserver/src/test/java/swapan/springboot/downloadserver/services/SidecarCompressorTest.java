@@ -0,0 +1,65 @@
+package swapan.springboot.downloadserver.services;
+
+import swapan.springboot.downloadserver.config.FileServerConfigImpl;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SidecarCompressorTest {
+
+    @TempDir
+    Path tempDir;
+
+    private SidecarCompressor sidecarCompressor;
+
+    @BeforeEach
+    void setUp() {
+        FileServerConfigImpl config = new FileServerConfigImpl();
+        config.setHome(tempDir.toString());
+        config.setSidecarInterval(Duration.ofMinutes(1));
+        config.setSidecarMinHits(2);
+        sidecarCompressor = new SidecarCompressor(config);
+    }
+
+    @Test
+    void testHotFileIsCompressed() throws IOException {
+        String text = "{\"key\": \"value\"}\n".repeat(100);
+        Path file = Files.writeString(tempDir.resolve("report.json"), text);
+        sidecarCompressor.recordHit(file);
+        sidecarCompressor.recordHit(file);
+
+        sidecarCompressor.compressHotFiles();
+
+        Path sidecar = tempDir.resolve("report.json.gz");
+        assertTrue(Files.exists(sidecar));
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(sidecar))) {
+            assertEquals(text, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void testColdAndBinaryFilesAreSkipped() throws IOException {
+        Path cold = Files.writeString(tempDir.resolve("cold.json"), "{}\n".repeat(1000));
+        Path binary = Files.write(tempDir.resolve("archive.zip"), new byte[4096]);
+        sidecarCompressor.recordHit(cold);
+        sidecarCompressor.recordHit(binary);
+        sidecarCompressor.recordHit(binary);
+
+        sidecarCompressor.compressHotFiles();
+
+        assertFalse(Files.exists(tempDir.resolve("cold.json.gz")));
+        assertFalse(Files.exists(tempDir.resolve("archive.zip.gz")));
+    }
+
+}
@@ -0,0 +1,76 @@
+package swapan.springboot.downloadserver.services;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StorageRootsTest {
+
+    private static final int FILES = 3000;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testParse() {
+        List<Path> roots = StorageRoots.parse(" /data/a, /data/b/../c ,,/data/a");
+        assertEquals(List.of(Paths.get("/data/a"), Paths.get("/data/c")), roots);
+        assertThrows(IllegalArgumentException.class, () -> StorageRoots.parse(" , "));
+    }
+
+    @Test
+    void testPlacementIsSpreadEvenly() {
+        StorageRoots storageRoots = new StorageRoots("/data/a,/data/b,/data/c");
+        Map<Path, Integer> counts = new HashMap<>();
+        for (int i = 0; i < FILES; i++) {
+            counts.merge(storageRoots.placement(Paths.get("dir" + i % 10, "file-" + i + ".bin")), 1, Integer::sum);
+        }
+        assertEquals(3, counts.size());
+        for (int count : counts.values()) {
+            assertTrue(count > FILES / 3 * 0.8 && count < FILES / 3 * 1.2, "uneven share " + counts);
+        }
+    }
+
+    @Test
+    void testAddedRootTakesItsShareOnly() {
+        StorageRoots before = new StorageRoots("/data/a,/data/b,/data/c");
+        StorageRoots after = new StorageRoots("/data/a,/data/b,/data/c,/data/d");
+        int moved = 0;
+        for (int i = 0; i < FILES; i++) {
+            Path filePath = Paths.get("file-" + i + ".bin");
+            Path placement = after.placement(filePath);
+            if (!placement.equals(before.placement(filePath))) {
+                // files only move to the new root, never between the old ones
+                assertEquals(Paths.get("/data/d"), placement);
+                moved++;
+            }
+        }
+        assertTrue(moved > FILES / 4 * 0.8 && moved < FILES / 4 * 1.2, "moved " + moved);
+    }
+
+    @Test
+    void testLocateFindsFileOutsideItsPlacement() throws IOException {
+        Path first = Files.createDirectory(tempDir.resolve("first"));
+        Path second = Files.createDirectory(tempDir.resolve("second"));
+        StorageRoots storageRoots = new StorageRoots(first + "," + second);
+        Path filePath = Paths.get("file.txt");
+        Path placement = storageRoots.placement(filePath);
+        Path other = placement.equals(first) ? second : first;
+
+        assertEquals(placement.resolve(filePath), storageRoots.locate(filePath));
+        Files.writeString(other.resolve(filePath), "data");
+        assertEquals(other.resolve(filePath), storageRoots.locate(filePath));
+        assertEquals(List.of(other.resolve(filePath)), storageRoots.locateAll(filePath));
+        assertEquals(other, storageRoots.rootOf(other.resolve(filePath)));
+    }
+
+}
@@ -0,0 +1,144 @@
+package swapan.springboot.downloadserver.services;
+
+import swapan.springboot.downloadserver.config.FileServerConfigImpl;
+import swapan.springboot.downloadserver.dto.UploadSessionInfo;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UploadSessionServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private UploadSessionServiceImpl uploadSessionService;
+    private Path testFile;
+
+    @BeforeEach
+    void setUp() {
+        FileServerConfigImpl config = new FileServerConfigImpl();
+        config.setHome(tempDir.toString());
+        uploadSessionService = new UploadSessionServiceImpl(config, new FileServiceImpl(config));
+        testFile = Paths.get("test.bin");
+    }
+
+    @Test
+    void testParallelChunksInAnyOrder() throws Exception {
+        byte[] content = new byte[10_000];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        UploadSessionInfo session = uploadSessionService.open(testFile, content.length, 1024);
+        assertEquals(10, session.getChunkCount());
+
+        List<Integer> indexes = new ArrayList<>();
+        for (int i = 0; i < session.getChunkCount(); i++) {
+            indexes.add(i);
+        }
+        Collections.shuffle(indexes);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<UploadSessionInfo>> futures = new ArrayList<>();
+            for (int index : indexes) {
+                int from = index * 1024;
+                byte[] chunk = Arrays.copyOfRange(content, from, Math.min(from + 1024, content.length));
+                futures.add(executor.submit(() -> uploadSessionService.writeChunk(session.getId(), index, new ByteArrayInputStream(chunk))));
+            }
+            for (Future<UploadSessionInfo> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertTrue(uploadSessionService.getSession(session.getId()).isComplete());
+        uploadSessionService.commit(session.getId());
+        assertArrayEquals(content, Files.readAllBytes(tempDir.resolve(testFile)));
+        try (var files = Files.list(tempDir)) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    void testResumeReportsMissingChunks() throws IOException {
+        UploadSessionInfo session = uploadSessionService.open(testFile, 30, 10);
+        uploadSessionService.writeChunk(session.getId(), 2, new ByteArrayInputStream(new byte[10]));
+
+        assertEquals(List.of(2), uploadSessionService.getSession(session.getId()).getReceivedChunks());
+        assertThrows(IllegalStateException.class, () -> uploadSessionService.commit(session.getId()));
+    }
+
+    @Test
+    void testWrongChunkLength() throws IOException {
+        UploadSessionInfo session = uploadSessionService.open(testFile, 30, 10);
+
+        assertThrows(IOException.class, () -> uploadSessionService.writeChunk(session.getId(), 0, new ByteArrayInputStream(new byte[5])));
+        assertThrows(IOException.class, () -> uploadSessionService.writeChunk(session.getId(), 0, new ByteArrayInputStream(new byte[11])));
+        assertThrows(IllegalArgumentException.class, () -> uploadSessionService.writeChunk(session.getId(), 3, new ByteArrayInputStream(new byte[10])));
+        assertTrue(uploadSessionService.getSession(session.getId()).getReceivedChunks().isEmpty());
+    }
+
+    @Test
+    void testAbort() throws IOException {
+        UploadSessionInfo session = uploadSessionService.open(testFile, 30, 10);
+        uploadSessionService.abort(session.getId());
+
+        assertThrows(NoSuchElementException.class, () -> uploadSessionService.getSession(session.getId()));
+        try (var files = Files.list(tempDir)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void testFailedCommitKeepsSession() throws IOException {
+        UploadSessionInfo session = uploadSessionService.open(testFile, 10, 10);
+        uploadSessionService.writeChunk(session.getId(), 0, new ByteArrayInputStream(new byte[10]));
+        // directory in the way of the target makes the rename fail
+        Path blocker = Files.createDirectories(tempDir.resolve(testFile).resolve("blocker"));
+
+        assertThrows(IOException.class, () -> uploadSessionService.commit(session.getId()));
+        assertTrue(uploadSessionService.getSession(session.getId()).isComplete());
+
+        Files.delete(blocker);
+        Files.delete(tempDir.resolve(testFile));
+        uploadSessionService.commit(session.getId());
+        assertEquals(10, Files.size(tempDir.resolve(testFile)));
+        assertThrows(NoSuchElementException.class, () -> uploadSessionService.getSession(session.getId()));
+    }
+
+    @Test
+    void testIdleSessionExpires() throws Exception {
+        FileServerConfigImpl config = new FileServerConfigImpl();
+        config.setHome(tempDir.toString());
+        config.setUploadSessionTimeout(Duration.ofMillis(1));
+        UploadSessionServiceImpl expiringService = new UploadSessionServiceImpl(config, new FileServiceImpl(config));
+        UploadSessionInfo session = expiringService.open(testFile, 30, 10);
+        Thread.sleep(10);
+
+        expiringService.expireSessions();
+
+        assertThrows(NoSuchElementException.class, () -> expiringService.getSession(session.getId()));
+        try (var files = Files.list(tempDir)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+}